@@ -1,10 +1,18 @@
 package com.example.alertservice.config;
 
 import com.example.alertservice.rules.AlertProperties;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 @EnableConfigurationProperties(AlertProperties.class)
-public class AlertConfig {}
+public class AlertConfig {
 
+    // deviceId -> index dense pour l'état par device (module wire-schema, partagé avec sensor-service)
+    @Bean
+    public DeviceIdInterner deviceIdInterner() {
+        return new DeviceIdInterner();
+    }
+}
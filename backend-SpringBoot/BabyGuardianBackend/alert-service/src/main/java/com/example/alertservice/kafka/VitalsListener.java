@@ -1,13 +1,15 @@
 package com.example.alertservice.kafka;
 
-import com.example.alertservice.dto.VitalCleanDto;
-import com.example.alertservice.rules.AlertEvent;
 import com.example.alertservice.service.AlertEvaluator;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
 import com.example.alertservice.websocket.VitalWsHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.babyguardianbackend.wire.AlertEvent;
+import org.babyguardianbackend.wire.VitalsEvent;
+import org.babyguardianbackend.wire.WireCodec;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
@@ -19,26 +21,27 @@ public class VitalsListener {
     private final ObjectMapper om;
     private final AlertEvaluator evaluator;
     private final VitalWsHandler ws;
-
-    private String norm(String s) {
-        return s == null ? null : s.trim().toLowerCase();
-    }
+    private final DeviceIdInterner interner;
 
     // ✅ S’exécute automatiquement quand l'app tourne et qu’un message arrive
     @KafkaListener(topics = "${app.kafka.topic.vitals-cleaned:iot.vitals.cleaned}", groupId = "alert-service")
-    public void onVitals(ConsumerRecord<String, String> rec) {
+    public void onVitals(ConsumerRecord<String, byte[]> rec) {
         try {
-            VitalCleanDto v = om.readValue(rec.value(), VitalCleanDto.class);
+            // binaire wire-schema ; JSON encore accepté (messages antérieurs, spool du sensor-service)
+            VitalsEvent v = WireCodec.isWire(rec.value())
+                    ? WireCodec.decodeVitals(rec.value())
+                    : om.readValue(rec.value(), VitalsEvent.class);
 
-            String deviceId = norm((rec.key() != null && !rec.key().isBlank()) ? rec.key() : v.deviceId());
-            if (deviceId == null || deviceId.isBlank()) return;
+            int device = interner.id((rec.key() != null && !rec.key().isBlank()) ? rec.key() : v.deviceId());
+            if (device == DeviceIdInterner.UNKNOWN) return;
+            String deviceId = interner.name(device);
 
             // 1) Evaluer les alertes
-            for (AlertEvent alert : evaluator.evaluate(v)) {
+            for (AlertEvent alert : evaluator.evaluate(device, deviceId, v)) {
 
                 // 2) Envoyer l’alerte via WebSocket au device concerné
                 String alertJson = om.writeValueAsString(alert);
-                ws.sendToDevice(deviceId, alertJson);
+                ws.sendToDevice(device, alertJson);
 
                 log.info("[ALERT] pushed to ws device={} type={} severity={}",
                         deviceId, alert.type(), alert.severity());
@@ -1,13 +1,13 @@
 package com.example.alertservice.service;
 
-import com.example.alertservice.rules.AlertEvent;
 import com.example.alertservice.rules.AlertProperties;
-import com.example.alertservice.dto.VitalCleanDto;
 import lombok.RequiredArgsConstructor;
+import org.babyguardianbackend.wire.AlertEvent;
+import org.babyguardianbackend.wire.VitalsEvent;
+import org.babyguardianbackend.wire.device.DeviceStateTable;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
@@ -15,44 +15,51 @@ public class AlertEvaluator {
 
     private final AlertProperties p;
 
-    // anti-spam: (deviceId|type) -> lastTimestampMillis
-    private final Map<String, Long> lastSent = new ConcurrentHashMap<>();
+    // index des types dans le tableau de cooldown d'un device
+    private static final int HIGH_TEMP = 0, LOW_SPO2 = 1, HIGH_HR = 2, LOW_HR = 3;
 
-    public List<AlertEvent> evaluate(VitalCleanDto v) {
+    // anti-spam: device (index DeviceIdInterner) -> lastTimestampMillis par type
+    private final DeviceStateTable<long[]> lastSent = new DeviceStateTable<>();
+
+    public List<AlertEvent> evaluate(int device, String deviceId, VitalsEvent v) {
         List<AlertEvent> out = new ArrayList<>();
 
+        // pic isolé signalé par le filtre de Hampel du sensor-service : pas d'alerte
+        if ("OUTLIER".equals(v.quality())) return out;
+
         // Exemple règles (placeholder)
         if (v.temperatureC() >= p.getTempHigh()) {
-            addIfNotInCooldown(out, v, "HIGH_TEMP", "HIGH",
+            addIfNotInCooldown(out, device, deviceId, v, HIGH_TEMP, "HIGH_TEMP", "HIGH",
                     "Temperature above threshold", v.temperatureC(), p.getTempHigh());
         }
         if (v.spo2() <= p.getSpo2Low()) {
-            addIfNotInCooldown(out, v, "LOW_SPO2", "HIGH",
+            addIfNotInCooldown(out, device, deviceId, v, LOW_SPO2, "LOW_SPO2", "HIGH",
                     "SpO2 below threshold", v.spo2(), p.getSpo2Low());
         }
         if (v.heartRate() >= p.getHrHigh()) {
-            addIfNotInCooldown(out, v, "HIGH_HR", "MEDIUM",
+            addIfNotInCooldown(out, device, deviceId, v, HIGH_HR, "HIGH_HR", "MEDIUM",
                     "Heart rate above threshold", v.heartRate(), p.getHrHigh());
         }
         if (v.heartRate() <= p.getHrLow()) {
-            addIfNotInCooldown(out, v, "LOW_HR", "MEDIUM",
+            addIfNotInCooldown(out, device, deviceId, v, LOW_HR, "LOW_HR", "MEDIUM",
                     "Heart rate below threshold", v.heartRate(), p.getHrLow());
         }
 
         return out;
     }
 
-    private void addIfNotInCooldown(List<AlertEvent> out, VitalCleanDto v,
-                                    String type, String severity,
+    private void addIfNotInCooldown(List<AlertEvent> out, int device, String deviceId, VitalsEvent v,
+                                    int slot, String type, String severity,
                                     String msg, double value, double threshold) {
-        String key = v.deviceId() + "|" + type;
         long now = System.currentTimeMillis();
         long cooldownMs = p.getCooldownSeconds() * 1000L;
 
-        Long prev = lastSent.get(key);
-        if (prev != null && (now - prev) < cooldownMs) return;
-
-        lastSent.put(key, now);
-        out.add(new AlertEvent(v.deviceId(), type, severity, msg, value, threshold, v.timestamp()));
+        long[] sent = lastSent.computeIfAbsent(device, k -> new long[4]);
+        synchronized (sent) {
+            long prev = sent[slot];
+            if (prev != 0 && (now - prev) < cooldownMs) return;
+            sent[slot] = now;
+        }
+        out.add(new AlertEvent(deviceId, type, severity, msg, value, threshold, v.timestamp()));
     }
 }
@@ -3,6 +3,8 @@ package com.example.alertservice.websocket;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.babyguardianbackend.wire.device.DeviceStateTable;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
@@ -17,16 +19,13 @@ import java.util.concurrent.ConcurrentMap;
 @RequiredArgsConstructor
 public class VitalWsHandler extends TextWebSocketHandler {
 
-    // deviceId -> sessions abonnés
-    private final ConcurrentMap<String, Set<WebSocketSession>> subs = new ConcurrentHashMap<>();
-    // sessionId -> deviceId
-    private final ConcurrentMap<String, String> sessionDevice = new ConcurrentHashMap<>();
+    // device (index DeviceIdInterner) -> sessions abonnées ; le set reste en place une fois créé
+    private final DeviceStateTable<Set<WebSocketSession>> subs = new DeviceStateTable<>();
+    // sessionId -> device (index DeviceIdInterner)
+    private final ConcurrentMap<String, Integer> sessionDevice = new ConcurrentHashMap<>();
 
     private final ObjectMapper om;
-
-    private String norm(String s) {
-        return s == null ? null : s.trim().toLowerCase();
-    }
+    private final DeviceIdInterner interner;
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
@@ -34,42 +33,39 @@ public class VitalWsHandler extends TextWebSocketHandler {
         String action = j.path("action").asText("");
 
         if ("subscribe".equalsIgnoreCase(action)) {
-            String deviceId = norm(j.path("deviceId").asText(null));
-            if (deviceId == null || deviceId.isBlank()) return;
+            // même interning que VitalsListener : l'abonnement et les alertes se retrouvent par index
+            int device = interner.id(j.path("deviceId").asText(null));
+            if (device == DeviceIdInterner.UNKNOWN) return;
 
-            String prev = sessionDevice.put(session.getId(), deviceId);
+            Integer prev = sessionDevice.put(session.getId(), device);
             if (prev != null) removeSub(prev, session);
 
-            subs.computeIfAbsent(deviceId, k -> ConcurrentHashMap.newKeySet()).add(session);
+            subs.computeIfAbsent(device, k -> ConcurrentHashMap.newKeySet()).add(session);
 
-            session.sendMessage(new TextMessage("{\"type\":\"subscribed\",\"deviceId\":\"" + deviceId + "\"}"));
+            session.sendMessage(new TextMessage("{\"type\":\"subscribed\",\"deviceId\":\"" + interner.name(device) + "\"}"));
             return;
         }
 
         if ("unsubscribe".equalsIgnoreCase(action)) {
-            String prev = sessionDevice.remove(session.getId());
+            Integer prev = sessionDevice.remove(session.getId());
             if (prev != null) removeSub(prev, session);
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        String prev = sessionDevice.remove(session.getId());
+        Integer prev = sessionDevice.remove(session.getId());
         if (prev != null) removeSub(prev, session);
     }
 
-    private void removeSub(String deviceId, WebSocketSession session) {
-        Set<WebSocketSession> set = subs.get(deviceId);
-        if (set != null) {
-            set.remove(session);
-            if (set.isEmpty()) subs.remove(deviceId);
-        }
+    private void removeSub(int device, WebSocketSession session) {
+        Set<WebSocketSession> set = subs.get(device);
+        if (set != null) set.remove(session);
     }
 
-    // ✅ Envoie un JSON (alert) aux apps abonnées à ce deviceId
-    public void sendToDevice(String deviceId, String json) {
-        deviceId = norm(deviceId);
-        Set<WebSocketSession> set = subs.get(deviceId);
+    // ✅ Envoie un JSON (alert) aux apps abonnées à ce device (index DeviceIdInterner)
+    public void sendToDevice(int device, String json) {
+        Set<WebSocketSession> set = subs.get(device);
         if (set == null) return;
 
         for (WebSocketSession s : set) {
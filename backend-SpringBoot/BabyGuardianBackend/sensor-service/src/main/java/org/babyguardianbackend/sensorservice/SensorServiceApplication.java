@@ -1,6 +1,9 @@
 package org.babyguardianbackend.sensorservice;
 
 import org.babyguardianbackend.sensorservice.cleaning.CleaningProperties;
+import org.babyguardianbackend.sensorservice.ingestion.IngestionProperties;
+import org.babyguardianbackend.sensorservice.persistence.WriteBehindProperties;
+import org.babyguardianbackend.sensorservice.service.VitalsProducerProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -9,7 +12,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableDiscoveryClient
-@EnableConfigurationProperties(CleaningProperties.class)
+@EnableConfigurationProperties({CleaningProperties.class, WriteBehindProperties.class, IngestionProperties.class, VitalsProducerProperties.class})
 @EnableScheduling
 public class SensorServiceApplication {
 
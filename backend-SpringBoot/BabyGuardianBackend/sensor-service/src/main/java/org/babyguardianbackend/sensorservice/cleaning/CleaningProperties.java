@@ -19,4 +19,19 @@ public class CleaningProperties {
 
     // REJECT | CLAMP | TEST
     private String mode = "REJECT";
+
+    // filtre de Hampel (pics dus aux mouvements du doigt) => quality OUTLIER
+    private Hampel hampel = new Hampel();
+
+    @Data
+    public static class Hampel {
+        private boolean enabled = true;
+        private int window = 11;  // nombre de mesures par device
+        private double k = 3.0;   // seuil en "écarts-types" robustes
+
+        // écart minimal toléré autour de la médiane (signal très stable => MAD ~ 0)
+        private double hrMinDeviation = 5;
+        private double spo2MinDeviation = 2;
+        private double tempMinDeviation = 0.3;
+    }
 }
@@ -8,16 +8,18 @@ import org.springframework.stereotype.Service;
 public class DataCleaningService {
 
     private final CleaningProperties p;
+    private final HampelFilter hampel;
 
-    public VitalClean cleanOrThrow(VitalRaw raw, String fallbackDeviceId) {
+    /** device = index DeviceIdInterner (état par device du filtre de Hampel) */
+    public VitalClean cleanOrThrow(VitalRaw raw, String fallbackDeviceId, int device) {
 
         String deviceId = (raw.deviceId() != null && !raw.deviceId().isBlank())
                 ? raw.deviceId()
                 : fallbackDeviceId;
 
-        long ts = (raw.timestamp() != null) ? raw.timestamp() : System.currentTimeMillis();
+        long ts = raw.hasTimestamp() ? raw.timestamp() : System.currentTimeMillis();
 
-        if (raw.temperature() == null || raw.spo2() == null || raw.heartRate() == null) {
+        if (!raw.isComplete()) {
             throw new IllegalArgumentException("Missing fields");
         }
 
@@ -36,7 +38,7 @@ public class DataCleaningService {
                     (int) Math.round(spo2),
                     (int) Math.round(hr),
                     ts,
-                    "TEST"
+                    outlier(device, hr, spo2, temp) ? "OUTLIER" : "TEST"
             );
         }
 
@@ -66,10 +68,15 @@ public class DataCleaningService {
                 (int) Math.round(spo2),
                 (int) Math.round(hr),
                 ts,
-                clamped ? "CLAMPED" : "OK"
+                outlier(device, hr, spo2, temp) ? "OUTLIER" : (clamped ? "CLAMPED" : "OK")
         );
     }
 
+    // pic isolé par rapport à la fenêtre récente du device (valeur conservée, seule la qualité change)
+    private boolean outlier(int device, double hr, double spo2, double temp) {
+        return hampel.isEnabled() && hampel.isOutlier(device, hr, spo2, temp);
+    }
+
     private double clamp(double v, double min, double max) {
         return Math.max(min, Math.min(max, v));
     }
@@ -0,0 +1,89 @@
+package org.babyguardianbackend.sensorservice.cleaning;
+
+import org.babyguardianbackend.wire.device.DeviceStateTable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Filtre de Hampel par device (médiane glissante + MAD) sur hr / spo2 / temp.
+ * Une mesure est aberrante si |x - médiane| > k * 1.4826 * MAD (MAD borné par un écart minimal,
+ * sinon un signal parfaitement stable ferait tout passer en OUTLIER).
+ *
+ * Mémoire constante par device : 3 anneaux double[window] + 2 tampons de tri partagés par le device,
+ * aucune allocation par mesure (tri par insertion sur une petite fenêtre).
+ */
+@Component
+public class HampelFilter {
+
+    private static final double MAD_SCALE = 1.4826; // MAD -> écart-type (loi normale)
+
+    private final CleaningProperties.Hampel p;
+    private final DeviceStateTable<DeviceWindow> windows = new DeviceStateTable<>(); // index = DeviceIdInterner
+
+    public HampelFilter(CleaningProperties props) {
+        this.p = props.getHampel();
+    }
+
+    public boolean isEnabled() {
+        return p.isEnabled();
+    }
+
+    /** Ajoute la mesure à la fenêtre du device et indique si elle est aberrante */
+    public boolean isOutlier(int device, double hr, double spo2, double temp) {
+        DeviceWindow w = windows.computeIfAbsent(device, k -> new DeviceWindow(Math.max(3, p.getWindow())));
+        if (w == null) return false; // device inconnu (UNKNOWN) : pas de fenêtre
+        synchronized (w) {
+            // test sur la fenêtre précédente, puis insertion (la valeur brute reste dans la fenêtre)
+            boolean full = w.count >= w.size;
+            boolean outlier = full && (
+                    w.deviates(w.hr, hr, p.getHrMinDeviation())
+                    || w.deviates(w.spo2, spo2, p.getSpo2MinDeviation())
+                    || w.deviates(w.temp, temp, p.getTempMinDeviation()));
+
+            w.hr[w.head] = hr;
+            w.spo2[w.head] = spo2;
+            w.temp[w.head] = temp;
+            w.head = (w.head + 1) % w.size;
+            if (w.count < w.size) w.count++;
+            return outlier;
+        }
+    }
+
+    private final class DeviceWindow {
+        final int size;
+        final double[] hr, spo2, temp;
+        final double[] sorted, dev; // tampons de travail réutilisés
+        int head, count;
+
+        DeviceWindow(int size) {
+            this.size = size;
+            this.hr = new double[size];
+            this.spo2 = new double[size];
+            this.temp = new double[size];
+            this.sorted = new double[size];
+            this.dev = new double[size];
+        }
+
+        boolean deviates(double[] ring, double x, double minDeviation) {
+            double median = median(ring, sorted);
+            for (int i = 0; i < size; i++) dev[i] = Math.abs(ring[i] - median);
+            double mad = median(dev, dev);
+            double threshold = p.getK() * Math.max(MAD_SCALE * mad, minDeviation);
+            return Math.abs(x - median) > threshold;
+        }
+
+        private double median(double[] src, double[] buf) {
+            if (buf != src) System.arraycopy(src, 0, buf, 0, size);
+            for (int i = 1; i < size; i++) {
+                double v = buf[i];
+                int j = i - 1;
+                while (j >= 0 && buf[j] > v) {
+                    buf[j + 1] = buf[j];
+                    j--;
+                }
+                buf[j + 1] = v;
+            }
+            int mid = size >>> 1;
+            return (size & 1) == 1 ? buf[mid] : (buf[mid - 1] + buf[mid]) / 2.0;
+        }
+    }
+}
@@ -7,6 +7,6 @@ public record VitalClean(
         int spo2,
         int heartRate,
         long timestamp,
-        String quality // OK | CLAMPED
+        String quality // OK | CLAMPED | TEST | OUTLIER
 ) {}
 
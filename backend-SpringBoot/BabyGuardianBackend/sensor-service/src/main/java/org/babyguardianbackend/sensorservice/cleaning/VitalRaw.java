@@ -1,11 +1,60 @@
 package org.babyguardianbackend.sensorservice.cleaning;
 
 // cleaning/VitalRaw.java
-public record VitalRaw(
-        String deviceId,
-        Double temperature,
-        Double spo2,
-        Double heartRate,
-        Long timestamp
-) {}
+// Holder mutable, réutilisé par thread (voir VitalsPayloadDecoder) : valeurs primitives, NaN = absent
+public final class VitalRaw {
 
+    private String deviceId;
+    private double temperature;
+    private double spo2;
+    private double heartRate;
+    private long timestamp;
+    private boolean hasTimestamp;
+    private byte finger;      // -1 absent | 0 false | 1 true
+    private boolean realtime;
+
+    public VitalRaw() {
+        reset();
+    }
+
+    public VitalRaw reset() {
+        deviceId = null;
+        temperature = Double.NaN;
+        spo2 = Double.NaN;
+        heartRate = Double.NaN;
+        timestamp = 0L;
+        hasTimestamp = false;
+        finger = -1;
+        realtime = false;
+        return this;
+    }
+
+    public String deviceId()      { return deviceId; }
+    public double temperature()   { return temperature; }
+    public double spo2()          { return spo2; }
+    public double heartRate()     { return heartRate; }
+    public long timestamp()       { return timestamp; }
+    public boolean hasTimestamp() { return hasTimestamp; }
+    public boolean realtime()     { return realtime; }
+
+    /** null si absent du payload (colonne finger nullable) */
+    public Boolean finger() {
+        return finger < 0 ? null : finger == 1;
+    }
+
+    public boolean isComplete() {
+        return !Double.isNaN(temperature) && !Double.isNaN(spo2) && !Double.isNaN(heartRate);
+    }
+
+    public void setDeviceId(String deviceId)   { this.deviceId = deviceId; }
+    public void setTemperature(double v)       { this.temperature = v; }
+    public void setSpo2(double v)              { this.spo2 = v; }
+    public void setHeartRate(double v)         { this.heartRate = v; }
+    public void setFinger(boolean v)           { this.finger = (byte) (v ? 1 : 0); }
+    public void setRealtime(boolean v)         { this.realtime = v; }
+
+    public void setTimestamp(long ts) {
+        this.timestamp = ts;
+        this.hasTimestamp = true;
+    }
+}
@@ -0,0 +1,132 @@
+package org.babyguardianbackend.sensorservice.cleaning;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Décodage streaming du payload vitals (byte[] MQTT) en une seule passe.
+ * Remplace om.readTree() + firstDouble()/firstLong() : pas d'arbre JsonNode, pas de String intermédiaire,
+ * les alias de clés sont résolus via une table précalculée.
+ */
+@Component
+public class VitalsPayloadDecoder {
+
+    private static final int DEVICE_ID = 0, TEMP = 1, SPO2 = 2, HR = 3, TS = 4, FINGER = 5, REALTIME = 6;
+    private static final int NB_FIELDS = 7;
+
+    /** clé JSON -> (champ, rang de l'alias). Rang plus petit = prioritaire (même ordre qu'avant). */
+    private static final Map<String, int[]> FIELDS = new HashMap<>();
+
+    static {
+        alias(DEVICE_ID, "deviceId");
+        alias(TEMP, "temp", "temperature", "tempC");
+        alias(SPO2, "spo2", "SpO2");
+        alias(HR, "heartRate", "hr", "bpm");
+        alias(TS, "timestamp", "ts", "time");
+        alias(FINGER, "finger");
+        alias(REALTIME, "realtime");
+    }
+
+    private static void alias(int field, String... keys) {
+        for (int rank = 0; rank < keys.length; rank++) {
+            FIELDS.put(keys[rank], new int[]{field, rank});
+        }
+    }
+
+    private final JsonFactory factory = new JsonFactory();
+
+    // un holder par thread d'ingestion : aucune allocation de VitalRaw par message
+    private final ThreadLocal<VitalRaw> holder = ThreadLocal.withInitial(VitalRaw::new);
+    private final ThreadLocal<int[]> ranks = ThreadLocal.withInitial(() -> new int[NB_FIELDS]);
+
+    /**
+     * Le holder retourné est réutilisé au prochain appel sur le même thread :
+     * ne pas le conserver au-delà du traitement du message.
+     */
+    public VitalRaw decode(byte[] payload) throws IOException {
+        VitalRaw raw = holder.get().reset();
+        int[] seen = ranks.get();
+        Arrays.fill(seen, Integer.MAX_VALUE);
+
+        try (JsonParser p = factory.createParser(payload)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Payload vitals: objet JSON attendu");
+            }
+
+            String name;
+            while ((name = p.nextFieldName()) != null) {
+                JsonToken t = p.nextToken();
+                int[] f = FIELDS.get(name);
+
+                if (f == null || t == JsonToken.VALUE_NULL) {
+                    p.skipChildren(); // no-op pour un scalaire
+                    continue;
+                }
+                if (f[1] >= seen[f[0]]) {
+                    p.skipChildren(); // un alias prioritaire a déjà été lu
+                    continue;
+                }
+                if (read(p, t, f[0], raw)) seen[f[0]] = f[1];
+            }
+        }
+        return raw;
+    }
+
+    /** @return true si la valeur a été retenue */
+    private boolean read(JsonParser p, JsonToken t, int field, VitalRaw raw) throws IOException {
+        switch (field) {
+            case DEVICE_ID -> {
+                if (!t.isScalarValue()) { p.skipChildren(); return false; }
+                raw.setDeviceId(p.getText());
+                return true;
+            }
+            case TEMP, SPO2, HR -> {
+                double v = readDouble(p, t);
+                if (Double.isNaN(v)) return false;
+                if (field == TEMP) raw.setTemperature(v);
+                else if (field == SPO2) raw.setSpo2(v);
+                else raw.setHeartRate(v);
+                return true;
+            }
+            case TS -> {
+                if (t.isNumeric()) { raw.setTimestamp(p.getValueAsLong()); return true; }
+                if (t == JsonToken.VALUE_STRING) {
+                    try { raw.setTimestamp(Long.parseLong(p.getText().trim())); return true; }
+                    catch (NumberFormatException ignored) { return false; }
+                }
+                p.skipChildren();
+                return false;
+            }
+            case FINGER, REALTIME -> {
+                if (!t.isScalarValue()) { p.skipChildren(); return false; }
+                // même sémantique que JsonNode.asBoolean()
+                boolean b = p.getValueAsBoolean(false);
+                if (field == FINGER) raw.setFinger(b);
+                else raw.setRealtime(b);
+                return true;
+            }
+            default -> {
+                p.skipChildren();
+                return false;
+            }
+        }
+    }
+
+    // support nombre OU string "36.7"
+    private double readDouble(JsonParser p, JsonToken t) throws IOException {
+        if (t.isNumeric()) return p.getDoubleValue();
+        if (t == JsonToken.VALUE_STRING) {
+            try { return Double.parseDouble(p.getText().trim()); }
+            catch (NumberFormatException ignored) { return Double.NaN; }
+        }
+        p.skipChildren();
+        return Double.NaN;
+    }
+}
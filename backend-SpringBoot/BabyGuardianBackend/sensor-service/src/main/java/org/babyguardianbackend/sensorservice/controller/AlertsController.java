@@ -51,7 +51,7 @@ public class AlertsController {
                 throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Vous n'êtes pas propriétaire de ce device");
             }
             SseEmitter emitter = new SseEmitter(TimeUnit.HOURS.toMillis(1));
-            monitor.addAlertEmitter(emitter, id -> id.equals(deviceId));
+            monitor.addAlertEmitterWhitelisted(emitter, Set.of(deviceId));
 
             try {
                 emitter.send(SseEmitter.event()
@@ -101,11 +101,9 @@ public class AlertsController {
         if (userId == null || userId.isBlank()) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "JWT manquant ou invalide");
         }
-        // filtrage minimal côté contrôleur
-        Map<String, Boolean> all = monitor.getAllStatuses();
+        // uniquement les devices du user (index mémoire), sans copier les statuts de tous les devices
         Set<String> mine = ownershipService.findDeviceIdsByOwner(userId); // ✳︎
-        all.keySet().retainAll(mine);
-        return ResponseEntity.ok(all);
+        return ResponseEntity.ok(monitor.getStatuses(mine));
     }
 
     /** { deviceId, connected } si device appartient au user */
@@ -2,14 +2,20 @@ package org.babyguardianbackend.sensorservice.controller;
 
 import lombok.RequiredArgsConstructor;
 import org.babyguardianbackend.sensorservice.entities.SensorReading;
-import org.babyguardianbackend.sensorservice.mqttConfig.MqttGateway;
-import org.babyguardianbackend.sensorservice.mqttConfig.MqttInboundHandler;
+import org.babyguardianbackend.sensorservice.service.RealtimeReadingService;
+import org.babyguardianbackend.sensorservice.service.RecentReadingsService;
+import org.babyguardianbackend.sensorservice.service.RecentReadingsStore.RecentReading;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 
@@ -18,27 +24,57 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class SensorController {
 
-    private final MqttGateway mqttGateway;
-    private final MqttInboundHandler inboundHandler;
+    private final RealtimeReadingService realtimeService;
+    private final RecentReadingsService recentReadings;
 
+    /**
+     * Mesures récentes d'un device, servies depuis la mémoire (base seulement pour la partie plus ancienne).
+     * ex: GET /api/sensors/esp32-C00AA81F8A3C/recent?minutes=10
+     *     GET /api/sensors/esp32-C00AA81F8A3C/recent?from=2025-01-01T10:00:00&to=2025-01-01T11:00:00
+     * Plage bornée (400 au-delà de app.recent.max-window-minutes), résultat limité à app.recent.max-results.
+     */
+    @GetMapping("/{deviceId}/recent")
+    public List<RecentReading> getRecent(@PathVariable String deviceId,
+                                         @RequestParam(name = "minutes", defaultValue = "5") int minutes,
+                                         @RequestParam(name = "from", required = false)
+                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                         @RequestParam(name = "to", required = false)
+                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        String id = deviceId.trim().toLowerCase();
+        LocalDateTime end = (to != null) ? to : LocalDateTime.now();
+        LocalDateTime start = (from != null) ? from : end.minusMinutes(minutes);
+        try {
+            return recentReadings.range(id, start, end);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Réponse asynchrone : le thread servlet est libéré pendant l'attente du device.
+     * maxAgeMs (optionnel) : accepte la dernière mesure realtime si elle a moins de maxAgeMs.
+     */
     @GetMapping("/realtime/{deviceId}")
-    public ResponseEntity<?> getRealtime(@PathVariable String deviceId) throws InterruptedException {
+    public CompletableFuture<ResponseEntity<?>> getRealtime(@PathVariable String deviceId,
+                                                            @RequestParam(name = "maxAgeMs", required = false) Long maxAgeMs) {
 
         String id = deviceId.trim().toLowerCase();
-        mqttGateway.sendToMqtt("read", "iot/commands/" + id);
 
-        SensorReading reading = inboundHandler.waitForRealtimeReading(id, 6, TimeUnit.SECONDS);
+        // demandes simultanées sur le même device => une seule commande "read"
+        CompletableFuture<SensorReading> reading = realtimeService.requestReading(id, maxAgeMs);
 
-        if (reading == null) {
-            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
-                    .body(Map.of(
-                            "message", "Timeout: aucune réponse du device",
-                            "deviceId", id
-                    ));
-        }
+        return reading.<ResponseEntity<?>>thenApply(r -> {
+            if (r == null) {
+                return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                        .body(Map.of(
+                                "message", "Timeout: aucune réponse du device",
+                                "deviceId", id
+                        ));
+            }
 
-        // ⚠️ évite de renvoyer l'entité JPA directement (voir Fix 2)
-        return ResponseEntity.ok(SensorReadingDto.from(reading, id));
+            // ⚠️ évite de renvoyer l'entité JPA directement (voir Fix 2)
+            return ResponseEntity.ok(SensorReadingDto.from(r, id));
+        });
     }
 
     public record SensorReadingDto(
@@ -1,9 +1,12 @@
 package org.babyguardianbackend.sensorservice.dao;
 
 import org.babyguardianbackend.sensorservice.entities.SensorReading;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -12,4 +15,8 @@ public interface SensorReadingRepository extends JpaRepository<SensorReading, UU
 
     // lookup par device.deviceId (string : esp32-<MAC>)
     Optional<SensorReading> findFirstByDevice_DeviceIdOrderByCreatedAtDesc(String deviceId);
+
+    // historique au-delà de ce qui est gardé en mémoire (RecentReadingsStore), borné par limit
+    List<SensorReading> findByDevice_DeviceIdAndCreatedAtBetweenOrderByCreatedAtAsc(
+            String deviceId, LocalDateTime from, LocalDateTime to, Limit limit);
 }
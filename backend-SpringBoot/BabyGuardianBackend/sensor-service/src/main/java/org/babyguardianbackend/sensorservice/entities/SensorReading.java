@@ -8,7 +8,10 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "sensor_readings")
+@Table(name = "sensor_readings", indexes = {
+        // historique d'un device dans l'ordre de mesure
+        @Index(name = "idx_sensor_readings_device_measured", columnList = "device_id, measured_at")
+})
 @Data
 public class SensorReading {
 
@@ -30,6 +33,9 @@ public class SensorReading {
     private Double temp;
     private Boolean finger;
 
+    // heure de mesure côté device (ramenée à l'horloge serveur), createdAt = heure d'insertion
+    private LocalDateTime measuredAt;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 }
@@ -0,0 +1,186 @@
+package org.babyguardianbackend.sensorservice.ingestion;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Répartition des devices entre réplicas (app.mqtt.cluster.*).
+ *
+ * Les abonnements partagés MQTT ($share/...) répartissent message par message : deux mesures
+ * d'un même device peuvent arriver sur deux réplicas, ce qui casse l'ordre par device et l'état
+ * local (dédup, Hampel, remise en ordre, anneau récent). Mosquitto n'offre pas de stratégie
+ * collante par client. Chaque réplica reçoit donc tout en broadcast et ne traite que les devices
+ * dont il est propriétaire.
+ *
+ * Propriétaire = hachage de rendez-vous sur les réplicas vivants (ClusterMembership) : à la mort d'un
+ * réplica, seuls ses devices changent de propriétaire, répartis entre les survivants ; à son retour,
+ * il les reprend. Les messages des devices non possédés sont gardés app.mqtt.cluster.handover-window-ms
+ * (au-delà du délai de détection du broker, keepalive x 1,5) : à la reprise, ceux des devices hérités
+ * sont rejoués dans l'ordre de réception. Livraison au moins une fois : une mesure déjà persistée
+ * par le réplica mort juste avant sa chute peut l'être une seconde fois.
+ */
+@Slf4j
+@Component
+public class DevicePartitioner {
+
+    private final boolean enabled;
+    private final String self;
+    private final long handoverWindowMs;
+    private final int handoverCapacity;
+    private final LongSupplier clock;
+
+    /** Réplicas vivants (dont soi-même une fois annoncé) ; vide => aucun device possédé, tout est gardé */
+    private volatile Member[] members = new Member[0];
+
+    /** Messages de devices non possédés, du plus ancien au plus récent ; protégé par this */
+    private final ArrayDeque<Held> held = new ArrayDeque<>();
+
+    private volatile BiConsumer<String, byte[]> handover = (topic, payload) -> {};
+
+    private record Member(String id, long seed) {}
+
+    private record Held(long receivedAtMillis, String deviceId, String topic, byte[] payload) {}
+
+    public DevicePartitioner(@Value("${app.mqtt.cluster.enabled:false}") boolean enabled,
+                             @Value("${app.mqtt.cluster.member-id:sensor-${random.uuid}}") String memberId,
+                             @Value("${app.mqtt.cluster.handover-window-ms:60000}") long handoverWindowMs,
+                             @Value("${app.mqtt.cluster.handover-capacity:100000}") int handoverCapacity) {
+        this(enabled, memberId, handoverWindowMs, handoverCapacity, System::currentTimeMillis);
+    }
+
+    DevicePartitioner(boolean enabled, String memberId, long handoverWindowMs, int handoverCapacity, LongSupplier clock) {
+        if (enabled && (memberId == null || memberId.isBlank())) {
+            throw new IllegalStateException("app.mqtt.cluster.member-id vide");
+        }
+        this.enabled = enabled;
+        this.self = memberId;
+        this.handoverWindowMs = handoverWindowMs;
+        this.handoverCapacity = handoverCapacity;
+        this.clock = clock;
+        if (enabled) log.info("[CLUSTER] réplica {} : devices répartis par rendez-vous sur les réplicas vivants", memberId);
+    }
+
+    public String memberId() {
+        return self;
+    }
+
+    public boolean isClustered() {
+        return enabled;
+    }
+
+    /** Cible des messages rejoués quand ce réplica hérite des devices d'un réplica disparu */
+    public void onHandover(BiConsumer<String, byte[]> handover) {
+        this.handover = handover;
+    }
+
+    /** true si ce réplica traite (et persiste) les messages du device */
+    public boolean owns(String deviceId) {
+        if (!enabled) return true;
+        return deviceId != null && self.equals(ownerOf(deviceId, members));
+    }
+
+    /**
+     * true si le device est possédé (le message est à traiter) ; sinon le message est gardé
+     * pour une éventuelle reprise. Atomique avec membersChanged : aucun message ne passe entre les deux.
+     */
+    public boolean acceptOrHold(String deviceId, String topic, byte[] payload) {
+        if (!enabled) return true;
+        synchronized (this) {
+            if (owns(deviceId)) return true;
+            if (deviceId == null) return false;
+
+            long now = clock.getAsLong();
+            evict(now);
+            if (held.size() >= handoverCapacity) held.pollFirst();
+            held.addLast(new Held(now, deviceId, topic, payload));
+            return false;
+        }
+    }
+
+    /**
+     * Nouvelle vue des réplicas vivants. Les messages gardés des devices dont le propriétaire a disparu
+     * et qui reviennent à ce réplica sont rejoués (sous le verrou : ils passent avant les suivants).
+     */
+    public void membersChanged(Collection<String> live) {
+        apply(live, true);
+    }
+
+    /** Départ annoncé (arrêt propre) : le réplica sortant a traité ce qu'il a reçu, reprise sans rejeu */
+    public void memberLeft(Collection<String> live) {
+        apply(live, false);
+    }
+
+    private synchronized void apply(Collection<String> live, boolean replayRemoved) {
+        Member[] before = members;
+        Member[] after = live.stream().distinct().sorted().map(DevicePartitioner::member).toArray(Member[]::new);
+        members = after;
+
+        Set<String> removed = new HashSet<>();
+        for (Member m : before) removed.add(m.id());
+        for (Member m : after) removed.remove(m.id());
+        log.info("[CLUSTER] réplicas vivants={} partis={}", live, removed);
+
+        evict(clock.getAsLong());
+        List<Held> replay = new ArrayList<>();
+        for (Iterator<Held> it = held.iterator(); it.hasNext(); ) {
+            Held h = it.next();
+            if (!self.equals(ownerOf(h.deviceId(), after))) continue;
+            it.remove();
+            // device repris à un réplica parti ; sinon son ancien propriétaire, toujours vivant, l'a déjà traité
+            if (replayRemoved && removed.contains(ownerOf(h.deviceId(), before))) replay.add(h);
+        }
+        if (!replay.isEmpty()) log.warn("[CLUSTER] reprise de {} messages des réplicas {}", replay.size(), removed);
+        for (Held h : replay) handover.accept(h.topic(), h.payload());
+    }
+
+    int heldCount() {
+        synchronized (this) {
+            return held.size();
+        }
+    }
+
+    private void evict(long now) {
+        while (!held.isEmpty() && now - held.peekFirst().receivedAtMillis() > handoverWindowMs) held.pollFirst();
+    }
+
+    private static Member member(String id) {
+        return new Member(id, Utils.murmur2(id.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // rendez-vous : score(réplica, device) maximal ; hash indépendant de String.hashCode
+    // (déjà utilisé pour choisir la lane d'ingestion, sinon chaque réplica n'occuperait qu'une partie des lanes)
+    private static String ownerOf(String deviceId, Member[] members) {
+        if (members.length == 0) return null;
+        long h = Utils.murmur2(deviceId.getBytes(StandardCharsets.UTF_8));
+        String best = null;
+        long bestScore = Long.MIN_VALUE;
+        for (Member m : members) {
+            long score = mix(m.seed() * 0x9E3779B97F4A7C15L ^ h);
+            if (best == null || score > bestScore) {
+                best = m.id();
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** Finaliseur 64 bits (splitmix64) */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,109 @@
+package org.babyguardianbackend.sensorservice.ingestion;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.babyguardianbackend.wire.device.DeviceStateTable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Détection des mesures rejouées (redelivery QoS1 après reconnexion, retry de l'ESP32).
+ * Clé = timestamp device si présent, sinon hash du payload (valable app.ingestion.dedup.hash-ttl-ms,
+ * inférieur à la période d'envoi du firmware : deux mesures identiques successives ne sont pas des doublons).
+ * Fenêtre bornée par device : anneau de N clés, parcours linéaire, aucune allocation par message.
+ *
+ * Le timestamp device est millis() (repart de 0 au reboot) : un recul de plus de
+ * app.ingestion.dedup.clock-reset-ms vide la fenêtre du device, comme dans ReorderBuffer,
+ * sinon les mesures d'après reboot qui retombent sur une clé encore en fenêtre seraient jetées.
+ */
+@Component
+public class DuplicateFilter {
+
+    private final IngestionProperties.Dedup p;
+    private final DeviceStateTable<Window> windows = new DeviceStateTable<>(); // index = DeviceIdInterner
+
+    private final Counter unique;
+    private final Counter duplicates;
+    private final Counter clockResets;
+
+    public DuplicateFilter(IngestionProperties props, MeterRegistry meters) {
+        this.p = props.getDedup();
+        // taux de doublons = duplicate / (unique + duplicate)
+        this.unique = meters.counter("sensor.ingestion.dedup", "result", "unique");
+        this.duplicates = meters.counter("sensor.ingestion.dedup", "result", "duplicate");
+        this.clockResets = meters.counter("sensor.ingestion.dedup.clock.resets");
+    }
+
+    /** true si la mesure a déjà été vue : à ignorer (la mesure est mémorisée sinon) */
+    public boolean isDuplicate(int device, boolean hasTimestamp, long timestamp, byte[] payload) {
+        if (!p.isEnabled()) return false;
+
+        long key = hasTimestamp ? timestamp : hash(payload);
+        long now = System.currentTimeMillis();
+
+        Window w = windows.computeIfAbsent(device, k -> new Window(Math.max(1, p.getWindow())));
+        if (w == null) return false; // device inconnu (UNKNOWN) : pas de fenêtre
+        boolean dup;
+        synchronized (w) {
+            if (hasTimestamp) {
+                if (w.maxTs != Long.MIN_VALUE && timestamp < w.maxTs - p.getClockResetMs()) {
+                    // redémarrage du device : les clés d'avant ne peuvent plus être rejouées
+                    clockResets.increment();
+                    w.clear();
+                }
+                if (timestamp > w.maxTs) w.maxTs = timestamp;
+            }
+            dup = w.contains(key, hasTimestamp, now, p.getHashTtlMs());
+            if (!dup) w.add(key, hasTimestamp, now);
+        }
+        (dup ? duplicates : unique).increment();
+        return dup;
+    }
+
+    /** FNV-1a 64 bits */
+    private static long hash(byte[] b) {
+        long h = 0xcbf29ce484222325L;
+        for (byte x : b) {
+            h ^= (x & 0xff);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static final class Window {
+        final long[] keys;
+        final long[] seenAt;
+        final boolean[] byTimestamp;
+        int head, count;
+        long maxTs = Long.MIN_VALUE; // plus grand timestamp device vu depuis le dernier reset
+
+        Window(int size) {
+            keys = new long[size];
+            seenAt = new long[size];
+            byTimestamp = new boolean[size];
+        }
+
+        boolean contains(long key, boolean ts, long now, long hashTtlMs) {
+            for (int i = 0; i < count; i++) {
+                if (keys[i] != key || byTimestamp[i] != ts) continue;
+                // un timestamp device ne revient pas légitimement tant que l'horloge n'a pas reculé ;
+                // un hash seulement après le TTL
+                if (ts || now - seenAt[i] <= hashTtlMs) return true;
+            }
+            return false;
+        }
+
+        void clear() {
+            head = 0;
+            count = 0;
+            maxTs = Long.MIN_VALUE;
+        }
+
+        void add(long key, boolean ts, long now) {
+            keys[head] = key;
+            seenAt[head] = now;
+            byTimestamp[head] = ts;
+            head = (head + 1) % keys.length;
+            if (count < keys.length) count++;
+        }
+    }
+}
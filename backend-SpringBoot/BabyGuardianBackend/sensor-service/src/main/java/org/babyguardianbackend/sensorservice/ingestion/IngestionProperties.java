@@ -0,0 +1,63 @@
+package org.babyguardianbackend.sensorservice.ingestion;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.ingestion")
+public class IngestionProperties {
+
+    // false => traitement direct sur le thread callback Paho (comportement historique)
+    private boolean enabled = true;
+
+    // nombre de lanes (0 => nombre de coeurs)
+    private int lanes = 0;
+
+    // profondeur max de la file de chaque lane
+    private int queueCapacity = 1000;
+
+    // BLOCK | DROP_OLDEST | REJECT
+    private OverflowPolicy overflow = OverflowPolicy.BLOCK;
+
+    // déduplication des redeliveries QoS1 / retries ESP32
+    private Dedup dedup = new Dedup();
+
+    @Data
+    public static class Dedup {
+        private boolean enabled = true;
+        // nombre de clés mémorisées par device
+        private int window = 64;
+        // mesure sans timestamp : même payload reçu dans ce délai => doublon
+        // (sous la période d'envoi du firmware, 4 s : une mesure stable répétée n'est pas un doublon)
+        private long hashTtlMs = 3000;
+        // recul du timestamp device au-delà duquel la fenêtre est vidée (reboot : millis() remis à 0)
+        private long clockResetMs = 10000;
+    }
+
+    // remise en ordre des mesures selon l'horloge device (watermark)
+    private Reorder reorder = new Reorder();
+
+    @Data
+    public static class Reorder {
+        private boolean enabled = true;
+        // retard toléré : une mesure est émise quand le device a envoyé plus récent de lateness-ms,
+        // ou après lateness-ms sans nouvelle mesure (0 => émission immédiate, pas de remise en ordre)
+        private long latenessMs = 500;
+        // période de vérification des devices silencieux (latence max = lateness-ms + flush-interval-ms)
+        private long flushIntervalMs = 100;
+        // mesures max en attente par device (au-delà, la plus ancienne est émise)
+        private int maxBuffered = 32;
+        // recul d'horloge au-delà duquel on considère un redémarrage du device (millis() remis à 0)
+        private long clockResetMs = 60000;
+    }
+
+    public enum OverflowPolicy {
+        BLOCK,        // le thread MQTT attend => backpressure vers le broker
+        DROP_OLDEST,  // on jette le message le plus ancien de la lane
+        REJECT        // on jette le nouveau message (compté en métrique)
+    }
+
+    public int effectiveLanes() {
+        return lanes > 0 ? lanes : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,169 @@
+package org.babyguardianbackend.sensorservice.ingestion;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Étage d'ingestion partitionné : chaque message est routé par hash(deviceId) vers une lane
+ * mono-thread. L'ordre est conservé par device, les devices différents sont traités en parallèle.
+ *
+ * SmartLifecycle (phase basse) : démarre avant l'adaptateur MQTT et s'arrête après lui,
+ * ce qui laisse les lanes se vider avant le flush final du write-behind.
+ *
+ * Test de running + mise en file atomiques vis-à-vis de stop() (verrou lecture/écriture) :
+ * une tâche acceptée par une lane est toujours exécutée avant la fin de stop(),
+ * une tâche soumise après stop() est exécutée directement sur le thread appelant.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PartitionedIngestionExecutor implements SmartLifecycle {
+
+    private final IngestionProperties p;
+    private final MeterRegistry meters;
+
+    private Lane[] lanes;
+    private volatile boolean running;
+    // lecture : soumission d'une tâche | écriture : arrêt (plus aucune mise en file après)
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+
+    @Override
+    public void start() {
+        if (!p.isEnabled()) return;
+
+        int n = p.effectiveLanes();
+        lanes = new Lane[n];
+        for (int i = 0; i < n; i++) lanes[i] = new Lane(i);
+        Gauge.builder("sensor.ingestion.lanes", () -> lanes.length)
+                .description("Nombre de lanes d'ingestion")
+                .register(meters);
+
+        running = true;
+        for (Lane l : lanes) l.thread.start();
+        log.info("[INGESTION] {} lanes, queueCapacity={} overflow={}", n, p.getQueueCapacity(), p.getOverflow());
+    }
+
+    /** Exécute la tâche sur la lane du device (ou directement si l'étage est désactivé/arrêté) */
+    public void execute(String deviceId, Runnable task) {
+        gate.readLock().lock();
+        try {
+            if (running) {
+                int idx = (deviceId == null) ? 0 : Math.floorMod(deviceId.hashCode(), lanes.length);
+                lanes[idx].submit(new Task(System.nanoTime(), task));
+                return;
+            }
+        } finally {
+            gate.readLock().unlock();
+        }
+        task.run();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        // plus de nouvelles tâches : attend les mises en file en cours, puis les lanes vident leur file et s'arrêtent
+        gate.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            gate.writeLock().unlock();
+        }
+        for (Lane l : lanes) {
+            try {
+                l.thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("[INGESTION] lanes arrêtées");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private record Task(long enqueuedNanos, Runnable runnable) {}
+
+    private final class Lane {
+        final BlockingQueue<Task> queue = new ArrayBlockingQueue<>(p.getQueueCapacity());
+        final Thread thread;
+        final Timer latency;
+        final Counter dropped;
+        final Counter rejected;
+
+        Lane(int index) {
+            String lane = String.valueOf(index);
+            thread = new Thread(this::loop, "ingestion-lane-" + index);
+            thread.setDaemon(true);
+
+            Gauge.builder("sensor.ingestion.lane.queue.depth", queue, BlockingQueue::size)
+                    .tag("lane", lane)
+                    .register(meters);
+            latency = Timer.builder("sensor.ingestion.lane.latency")
+                    .description("Attente en file + traitement d'un message")
+                    .tag("lane", lane)
+                    .register(meters);
+            dropped  = meters.counter("sensor.ingestion.overflow", "lane", lane, "policy", "DROP_OLDEST");
+            rejected = meters.counter("sensor.ingestion.overflow", "lane", lane, "policy", "REJECT");
+        }
+
+        void submit(Task t) {
+            switch (p.getOverflow()) {
+                case BLOCK -> {
+                    try {
+                        queue.put(t);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                case DROP_OLDEST -> {
+                    while (!queue.offer(t)) {
+                        if (queue.poll() != null) dropped.increment();
+                    }
+                }
+                case REJECT -> {
+                    if (!queue.offer(t)) rejected.increment();
+                }
+            }
+        }
+
+        void loop() {
+            while (running || !queue.isEmpty()) {
+                try {
+                    Task t = queue.poll(200, TimeUnit.MILLISECONDS);
+                    if (t != null) run(t);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        void run(Task t) {
+            try {
+                t.runnable().run();
+            } catch (Exception e) {
+                log.error("[INGESTION] erreur lane {} : {}", thread.getName(), e.toString());
+            } finally {
+                latency.record(System.nanoTime() - t.enqueuedNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
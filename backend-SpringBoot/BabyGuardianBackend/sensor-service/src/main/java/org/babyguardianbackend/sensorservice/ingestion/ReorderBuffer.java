@@ -0,0 +1,141 @@
+package org.babyguardianbackend.sensorservice.ingestion;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.babyguardianbackend.wire.device.DeviceStateTable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.PriorityQueue;
+import java.util.function.LongConsumer;
+
+/**
+ * Remise en ordre des mesures par device selon le timestamp device.
+ * - watermark = plus grand timestamp reçu - lateness-ms : tout ce qui est en dessous est émis, dans l'ordre
+ * - une mesure plus ancienne que la dernière émise arrive trop tard : elle est jetée (compteur)
+ * - device silencieux depuis lateness-ms : on vide son tampon
+ *
+ * Latence ajoutée : une mesure attend soit une mesure plus récente de lateness-ms, soit lateness-ms de
+ * silence (vérifié toutes les flush-interval-ms). Avec le firmware (une mesure toutes les 4 s), c'est le
+ * silence qui libère : lateness-ms + au plus flush-interval-ms avant persistance et alerte.
+ * lateness-ms=0 => émission immédiate, une mesure arrivée dans le désordre est alors jetée.
+ *
+ * L'ESP32 envoie millis() (temps depuis le boot) : l'heure réelle de mesure est estimée par un
+ * décalage device -> horloge serveur (plus petit écart observé), transmis à l'émission.
+ */
+@Slf4j
+@Component
+public class ReorderBuffer {
+
+    private final IngestionProperties.Reorder p;
+    private final PartitionedIngestionExecutor ingestion;
+    private final DeviceIdInterner interner;
+    private final DeviceStateTable<DeviceBuffer> buffers = new DeviceStateTable<>();
+
+    private final Counter reordered;
+    private final Counter lateDropped;
+    private final Counter clockResets;
+
+    public ReorderBuffer(IngestionProperties props, PartitionedIngestionExecutor ingestion,
+                         DeviceIdInterner interner, MeterRegistry meters) {
+        this.p = props.getReorder();
+        this.ingestion = ingestion;
+        this.interner = interner;
+        this.reordered = meters.counter("sensor.ingestion.reorder", "result", "reordered");
+        this.lateDropped = meters.counter("sensor.ingestion.reorder", "result", "late_dropped");
+        this.clockResets = meters.counter("sensor.ingestion.reorder", "result", "clock_reset");
+    }
+
+    private record Entry(long ts, long seq, LongConsumer emit) {}
+
+    private static final class DeviceBuffer {
+        final PriorityQueue<Entry> queue = new PriorityQueue<>((a, b) ->
+                a.ts != b.ts ? Long.compare(a.ts, b.ts) : Long.compare(a.seq, b.seq));
+        long seq;
+        long maxTs = Long.MIN_VALUE;
+        long lastEmittedTs = Long.MIN_VALUE;
+        // lus sans verrou par flushIdle
+        volatile long lastArrivalMillis;
+        volatile int pending;
+        long offset = Long.MAX_VALUE; // heure serveur - horloge device (ms)
+
+        void reset() {
+            maxTs = Long.MIN_VALUE;
+            lastEmittedTs = Long.MIN_VALUE;
+            offset = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Dépose une mesure ; emit reçoit l'heure de mesure estimée (epoch ms) quand la mesure est libérée.
+     * Les émissions d'un même device sont faites sous verrou, donc toujours dans l'ordre device.
+     */
+    public void offer(int device, long deviceTs, LongConsumer emit) {
+        long now = System.currentTimeMillis();
+        if (!p.isEnabled()) {
+            emit.accept(now);
+            return;
+        }
+
+        DeviceBuffer b = buffers.computeIfAbsent(device, k -> new DeviceBuffer());
+        synchronized (b) {
+            b.lastArrivalMillis = now;
+
+            // millis() remis à zéro : on vide ce qui reste de l'ancienne session puis on repart
+            if (b.maxTs != Long.MIN_VALUE && deviceTs < b.maxTs - p.getClockResetMs()) {
+                clockResets.increment();
+                log.info("[REORDER] horloge device {} réinitialisée ({} -> {})", interner.name(device), b.maxTs, deviceTs);
+                drain(b, Long.MAX_VALUE, 0);
+                b.reset();
+            }
+
+            if (deviceTs < b.lastEmittedTs) {
+                lateDropped.increment();
+                log.debug("[REORDER] mesure tardive ignorée device={} ts={} dernier={}", interner.name(device), deviceTs, b.lastEmittedTs);
+                return;
+            }
+            if (deviceTs < b.maxTs) reordered.increment();
+
+            b.offset = Math.min(b.offset, now - deviceTs);
+            b.maxTs = Math.max(b.maxTs, deviceTs);
+            b.queue.add(new Entry(deviceTs, b.seq++, emit));
+            b.pending = b.queue.size();
+
+            drain(b, b.maxTs - p.getLatenessMs(), p.getMaxBuffered());
+        }
+    }
+
+    /** Émet dans l'ordre tout ce qui est sous le watermark, ou au-delà de la capacité */
+    private void drain(DeviceBuffer b, long watermark, int keep) {
+        Entry e;
+        while ((e = b.queue.peek()) != null && (e.ts() <= watermark || b.queue.size() > keep)) {
+            b.queue.poll();
+            b.lastEmittedTs = e.ts();
+            try {
+                e.emit().accept(e.ts() + b.offset);
+            } catch (Exception ex) {
+                log.error("[REORDER] émission échouée ts={} err={}", e.ts(), ex.toString());
+            }
+        }
+        b.pending = b.queue.size();
+    }
+
+    /** Devices silencieux : plus rien ne fera avancer le watermark, on vide leur tampon (dans leur lane) */
+    @Scheduled(fixedDelayString = "${app.ingestion.reorder.flush-interval-ms:100}")
+    public void flushIdle() {
+        long now = System.currentTimeMillis();
+        buffers.forEach((device, b) -> {
+            // pending / lastArrivalMillis volatiles : pas de lecture de la PriorityQueue hors verrou
+            if (b.pending == 0 || now - b.lastArrivalMillis < p.getLatenessMs()) return;
+            ingestion.execute(interner.name(device), () -> {
+                synchronized (b) {
+                    if (System.currentTimeMillis() - b.lastArrivalMillis >= p.getLatenessMs()) {
+                        drain(b, Long.MAX_VALUE, 0);
+                    }
+                }
+            });
+        });
+    }
+}
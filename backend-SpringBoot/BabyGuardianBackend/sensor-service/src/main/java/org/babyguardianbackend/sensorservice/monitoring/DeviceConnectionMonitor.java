@@ -1,19 +1,35 @@
 // src/main/java/org/babyguardianbackend/sensorservice/monitoring/DeviceConnectionMonitor.java
 package org.babyguardianbackend.sensorservice.monitoring;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.babyguardianbackend.sensorservice.presence.DevicePresenceService;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.babyguardianbackend.wire.device.DeviceStateTable;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 import java.util.function.Predicate;
 
 @Slf4j
@@ -23,30 +39,89 @@ public class DeviceConnectionMonitor {
     @Value("${monitoring.device-timeout-seconds:30}")
     private long deviceTimeoutSeconds;
 
-    private final Map<String, DeviceStatus> devices = new ConcurrentHashMap<>();
+    // taille de la file sortante de chaque client SSE
+    @Value("${monitoring.sse.queue-capacity:64}")
+    private int sseQueueCapacity;
 
-    /** Chaque abonné SSE peut être filtré par un predicate sur deviceId */
-    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // DROP : on jette l'event pour ce client | DISCONNECT : on ferme le client lent
+    @Value("${monitoring.sse.overflow:DROP}")
+    private String sseOverflow;
+
+    /** Envoi SSE hors du thread d'ingestion : un client lent ne bloque plus les devices */
+    private final ExecutorService sseDispatcher = Executors.newVirtualThreadPerTaskExecutor();
+
+    // au plus un event "ping" d'activité par device et par intervalle (0 => un par mesure)
+    @Value("${monitoring.sse.ping-interval-ms:5000}")
+    private long pingIntervalMs;
+
+    private final Counter sseDropped;
+    private final Counter sseSlowConsumers;
+    private final Counter pingsSent;
+    private final Counter pingsSuppressed;
+
+    private final DeviceStateTable<DeviceStatus> devices = new DeviceStateTable<>(); // index = DeviceIdInterner
+
+    /** Tous les abonnés SSE (broadcast, comptage) */
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /** Abonnés à liste blanche, indexés par deviceId : un event ne touche que les clients concernés */
+    private final ConcurrentMap<String, Set<Subscriber>> subscribersByDevice = new ConcurrentHashMap<>();
+
+    /** Abonnés sans liste blanche (predicate libre ou tout accepter) : évalués à chaque event */
+    private final CopyOnWriteArrayList<Subscriber> filteredSubscribers = new CopyOnWriteArrayList<>();
+
+    /** Vue de présence partagée entre réplicas (source des statuts exposés) */
+    private final DevicePresenceService presence;
+
+    private final DeviceIdInterner interner;
+
+    public DeviceConnectionMonitor(MeterRegistry meters, DevicePresenceService presence, DeviceIdInterner interner) {
+        this.presence = presence;
+        this.interner = interner;
+        this.sseDropped = meters.counter("sensor.sse.dropped");
+        this.sseSlowConsumers = meters.counter("sensor.sse.slow.consumers");
+        this.pingsSent = meters.counter("sensor.sse.activity.pings", "result", "sent");
+        this.pingsSuppressed = meters.counter("sensor.sse.activity.pings", "result", "suppressed");
+        // transitions observées par un autre réplica : relayées aux clients SSE de cette instance
+        presence.onRemoteTransition(this::emitConnectionStatus);
+    }
+
+    /* ---- Roue temporelle (hashed timer wheel) des timeouts, tick = 1s, horloge monotone ---- */
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    LongSupplier nanoClock = System::nanoTime; // remplaçable par les tests
+    private ConcurrentLinkedQueue<DeviceStatus>[] wheel;
+    private long timeoutNanos;
+    private volatile long lastTick; // dernier tick traité
 
     private static class DeviceStatus {
         final String deviceId;
-        volatile LocalDateTime lastSeen;
+        volatile long lastSeenNanos; // nanoClock
         volatile boolean connected;
+        volatile long lastPingMillis;
+        final AtomicBoolean inWheel = new AtomicBoolean(); // présent dans un slot de la roue
 
-        DeviceStatus(String deviceId) {
+        DeviceStatus(String deviceId, long nowNanos) {
             this.deviceId = deviceId;
-            this.lastSeen = LocalDateTime.now();
+            this.lastSeenNanos = nowNanos;
             this.connected = true;
         }
     }
 
+    private record SseEvent(String name, String data) {}
+
     private static class Subscriber {
         final SseEmitter emitter;
         final Predicate<String> acceptsDeviceId; // null => tout accepter
+        final Set<String> deviceIds;             // non null => abonné indexé
+        final BlockingQueue<SseEvent> outbox;     // file sortante bornée
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile boolean slow;
 
-        Subscriber(SseEmitter emitter, Predicate<String> acceptsDeviceId) {
+        Subscriber(SseEmitter emitter, Predicate<String> acceptsDeviceId, Set<String> deviceIds, int capacity) {
             this.emitter = emitter;
             this.acceptsDeviceId = acceptsDeviceId;
+            this.deviceIds = deviceIds;
+            this.outbox = new ArrayBlockingQueue<>(capacity);
         }
 
         boolean accepts(String deviceId) {
@@ -58,45 +133,67 @@ public class DeviceConnectionMonitor {
 
     /** Appelé quand on reçoit des vitals/online : rafraîchit lastSeen et (re)connecte si besoin */
     public void recordDeviceActivity(String deviceId) {
-        DeviceStatus prev = devices.get(deviceId);
-        boolean wasDisconnected = (prev == null || !prev.connected);
-
-        DeviceStatus now = devices.computeIfAbsent(deviceId, DeviceStatus::new);
-        now.lastSeen = LocalDateTime.now();
+        int device = interner.id(deviceId);
+        DeviceStatus prev = devices.get(device);
+        // la vue partagée doit aussi refléter "connecté" (anti-entropie si une publication a été perdue) ;
+        // device jamais vu ici mais connecté dans la vue partagée : repris d'un autre réplica, pas une reconnexion
+        boolean wasDisconnected = (prev == null ? !presence.isConnected(deviceId)
+                : !prev.connected || !presence.isConnected(deviceId));
+
+        DeviceStatus now = devices.computeIfAbsent(device, this::newStatus);
+        now.lastSeenNanos = nanoClock.getAsLong();
         now.connected = true;
+        schedule(now); // O(1) : no-op si le device est déjà dans la roue
 
         if (wasDisconnected) {
             log.info("✅ Device {} RECONNECTÉ", deviceId);
             sendConnectionAlert(deviceId, true);
         } else {
-            // ping fonctionnel (optionnel)
-            emit(deviceId, "ping", String.format(
-                    "{\"type\":\"PING\",\"deviceId\":\"%s\",\"ts\":%d}", deviceId, System.currentTimeMillis()));
+            // ping fonctionnel (optionnel), limité à un par intervalle et par device
+            long ts = System.currentTimeMillis();
+            if (ts - now.lastPingMillis < pingIntervalMs) {
+                pingsSuppressed.increment();
+                return;
+            }
+            now.lastPingMillis = ts;
+            pingsSent.increment();
+            emit(deviceId, "ping", "{\"type\":\"PING\",\"deviceId\":\"" + deviceId + "\",\"ts\":" + ts + "}");
         }
     }
 
     /** Forçage d’état (LWT offline) */
     public void markDisconnected(String deviceId) {
-        DeviceStatus st = devices.computeIfAbsent(deviceId, DeviceStatus::new);
+        DeviceStatus st = devices.computeIfAbsent(interner.id(deviceId), this::newStatus);
         st.connected = false;
         log.warn("❌ Device {} DÉCONNECTÉ (LWT/offline)", deviceId);
         sendConnectionAlert(deviceId, false);
     }
 
+    private DeviceStatus newStatus(int device) {
+        return new DeviceStatus(interner.name(device), nanoClock.getAsLong());
+    }
+
     public void markConnected(String deviceId) {
         recordDeviceActivity(deviceId);
     }
 
-    /** Statuts exposés */
+    /** Statuts exposés : vue cluster (tous réplicas confondus) */
     public Map<String, Boolean> getAllStatuses() {
-        Map<String, Boolean> out = new ConcurrentHashMap<>();
-        devices.forEach((id, st) -> out.put(id, st.connected));
-        return out;
+        return presence.getAllStatuses();
     }
 
     public boolean isConnected(String deviceId) {
-        DeviceStatus st = devices.get(deviceId);
-        return st != null && st.connected;
+        return presence.isConnected(deviceId);
+    }
+
+    /** Statut d'une sélection de devices (ceux jamais vus sont absents du résultat) */
+    public Map<String, Boolean> getStatuses(Set<String> deviceIds) {
+        Map<String, Boolean> out = new HashMap<>();
+        for (String id : deviceIds) {
+            Boolean connected = presence.findConnected(id);
+            if (connected != null) out.put(id, connected);
+        }
+        return out;
     }
 
     /* ================== SSE : abonnements ================== */
@@ -108,46 +205,116 @@ public class DeviceConnectionMonitor {
 
     /** Abonnement filtré par Predicate deviceId -> boolean */
     public void addAlertEmitter(SseEmitter emitter, Predicate<String> acceptsDeviceId) {
-        Subscriber sub = new Subscriber(emitter, acceptsDeviceId);
+        Subscriber sub = new Subscriber(emitter, acceptsDeviceId, null, sseQueueCapacity);
+        register(sub);
+        filteredSubscribers.add(sub);
+
+        // État initial pour les devices autorisés par le filtre
+        presence.getAllStatuses().forEach((deviceId, connected) -> {
+            if (sub.accepts(deviceId)) sendInitialStatus(sub, deviceId, connected);
+        });
+    }
+
+    /** Surcharge pour une liste blanche explicite de devices (indexée par deviceId) */
+    public void addAlertEmitterWhitelisted(SseEmitter emitter, Set<String> allowedDeviceIds) {
+        if (allowedDeviceIds == null) {
+            addAlertEmitter(emitter, (Predicate<String>) null);
+            return;
+        }
+        Set<String> ids = Set.copyOf(allowedDeviceIds);
+        Subscriber sub = new Subscriber(emitter, ids::contains, ids, sseQueueCapacity);
+        register(sub);
+        for (String id : ids) {
+            subscribersByDevice.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(sub);
+        }
+
+        // État initial : uniquement les devices de la liste blanche
+        Map<String, Boolean> statuses = presence.getAllStatuses();
+        for (String id : ids) {
+            Boolean connected = statuses.get(id);
+            if (connected != null) sendInitialStatus(sub, id, connected);
+        }
+    }
+
+    private void register(Subscriber sub) {
         subscribers.add(sub);
 
-        emitter.onCompletion(() -> subscribers.remove(sub));
-        emitter.onTimeout(() -> subscribers.remove(sub));
-        emitter.onError(e -> subscribers.remove(sub));
+        sub.emitter.onCompletion(() -> unregister(sub));
+        sub.emitter.onTimeout(() -> unregister(sub));
+        sub.emitter.onError(e -> unregister(sub));
 
         log.info("➕ Client SSE alertes : {} abonnés", subscribers.size());
+    }
 
-        // État initial pour les devices autorisés par le filtre
-        devices.forEach((deviceId, st) -> {
-            if (sub.accepts(deviceId)) {
-                String init = String.format(
-                        "{\"type\":\"INITIAL_STATUS\",\"deviceId\":\"%s\",\"connected\":%b}",
-                        deviceId, st.connected
-                );
-                safeSend(sub.emitter, "initial-status", init);
-            }
-        });
+    private void unregister(Subscriber sub) {
+        if (!subscribers.remove(sub)) return;
+        if (sub.deviceIds == null) {
+            filteredSubscribers.remove(sub);
+            return;
+        }
+        for (String id : sub.deviceIds) {
+            subscribersByDevice.computeIfPresent(id, (k, set) -> {
+                set.remove(sub);
+                return set.isEmpty() ? null : set;
+            });
+        }
     }
 
-    /** Surcharge pour une liste blanche explicite de devices */
-    public void addAlertEmitterWhitelisted(SseEmitter emitter, Set<String> allowedDeviceIds) {
-        Predicate<String> p = (allowedDeviceIds == null ? null : allowedDeviceIds::contains);
-        addAlertEmitter(emitter, p);
+    private void sendInitialStatus(Subscriber sub, String deviceId, boolean connected) {
+        String init = String.format(
+                "{\"type\":\"INITIAL_STATUS\",\"deviceId\":\"%s\",\"connected\":%b}",
+                deviceId, connected
+        );
+        send(sub, "initial-status", init);
     }
 
     /* ================== Tâches planifiées ================== */
 
-    @Scheduled(fixedRate = 5000)
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    void initWheel() {
+        timeoutNanos = TimeUnit.SECONDS.toNanos(deviceTimeoutSeconds);
+        // une échéance est toujours < timeout + 1 tick => pas de "tours" à gérer
+        int size = (int) Math.max(8, deviceTimeoutSeconds + 2);
+        wheel = new ConcurrentLinkedQueue[size];
+        for (int i = 0; i < size; i++) wheel[i] = new ConcurrentLinkedQueue<>();
+        lastTick = Math.floorDiv(nanoClock.getAsLong(), TICK_NANOS);
+    }
+
+    /**
+     * Traite uniquement les slots échus depuis le dernier passage.
+     * Un device vu entre-temps est simplement replacé à sa nouvelle échéance (lazy reschedule),
+     * un device expiré (> monitoring.device-timeout-seconds sans activité) passe déconnecté.
+     */
+    @Scheduled(fixedRate = 1000)
     public void checkTimeouts() {
-        LocalDateTime now = LocalDateTime.now();
-        devices.forEach((id, st) -> {
-            long delta = Duration.between(st.lastSeen, now).getSeconds();
-            if (st.connected && delta > deviceTimeoutSeconds) {
-                st.connected = false;
-                log.warn("❌ Device {} DÉCONNECTÉ (timeout > {}s)", id, deviceTimeoutSeconds);
-                sendConnectionAlert(id, false);
+        long nowNanos = nanoClock.getAsLong();
+        long current = Math.floorDiv(nowNanos, TICK_NANOS);
+
+        for (long t = lastTick + 1; t <= current; t++) {
+            lastTick = t;
+            ConcurrentLinkedQueue<DeviceStatus> slot = wheel[(int) Math.floorMod(t, (long) wheel.length)];
+            DeviceStatus st;
+            while ((st = slot.poll()) != null) {
+                st.inWheel.set(false);
+                if (!st.connected) continue; // déjà déconnecté (LWT) : sort de la roue
+
+                if (nowNanos - st.lastSeenNanos > timeoutNanos) {
+                    st.connected = false;
+                    log.warn("❌ Device {} DÉCONNECTÉ (timeout > {}s)", st.deviceId, deviceTimeoutSeconds);
+                    sendConnectionAlert(st.deviceId, false);
+                } else {
+                    schedule(st);
+                }
             }
-        });
+        }
+    }
+
+    private void schedule(DeviceStatus st) {
+        if (!st.connected || !st.inWheel.compareAndSet(false, true)) return;
+        long deadlineTick = Math.floorDiv(st.lastSeenNanos + timeoutNanos, TICK_NANOS) + 1;
+        long tick = Math.max(deadlineTick, lastTick + 1);
+        wheel[(int) Math.floorMod(tick, (long) wheel.length)].add(st);
     }
 
     @Scheduled(fixedRate = 20000)
@@ -158,6 +325,11 @@ public class DeviceConnectionMonitor {
     /* ================== Internes ================== */
 
     private void sendConnectionAlert(String deviceId, boolean connected) {
+        presence.publishConnection(deviceId, connected);
+        emitConnectionStatus(deviceId, connected);
+    }
+
+    private void emitConnectionStatus(String deviceId, boolean connected) {
         String json = String.format(
                 "{\"type\":\"CONNECTION_STATUS\",\"deviceId\":\"%s\",\"connected\":%b,\"timestamp\":\"%s\"}",
                 deviceId, connected, LocalDateTime.now()
@@ -165,26 +337,69 @@ public class DeviceConnectionMonitor {
         emit(deviceId, connected ? "device-connected" : "device-disconnected", json);
     }
 
-    /** Émet uniquement aux abonnés qui acceptent ce deviceId */
-    private void emit(String deviceId, String event, String data) {
-        subscribers.removeIf(sub -> {
-            if (!sub.accepts(deviceId)) return false; // on garde l'abonné mais on ne lui envoie pas cet event
-            if (!safeSend(sub.emitter, event, data)) {
-                try { sub.emitter.complete(); } catch (Exception ignore) {}
-                return true; // retire l'émetteur cassé
-            }
-            return false;
-        });
+    /** Émet uniquement aux abonnés qui acceptent ce deviceId (package-private : tests et benchmark) */
+    void emit(String deviceId, String event, String data) {
+        Set<Subscriber> indexed = subscribersByDevice.get(deviceId);
+        if (indexed != null) {
+            for (Subscriber sub : indexed) send(sub, event, data);
+        }
+        for (Subscriber sub : filteredSubscribers) {
+            if (sub.accepts(deviceId)) send(sub, event, data); // on garde l'abonné mais on ne lui envoie pas cet event
+        }
     }
 
     private void broadcast(String event, String data) {
-        subscribers.removeIf(sub -> {
-            if (!safeSend(sub.emitter, event, data)) {
-                try { sub.emitter.complete(); } catch (Exception ignore) {}
-                return true;
+        for (Subscriber sub : subscribers) send(sub, event, data);
+    }
+
+    /** Dépose l'event dans la file du client ; l'envoi réel se fait sur le dispatcher */
+    private void send(Subscriber sub, String event, String data) {
+        if (!sub.outbox.offer(new SseEvent(event, data))) {
+            onOverflow(sub);
+            return;
+        }
+        if (sub.draining.compareAndSet(false, true)) {
+            sseDispatcher.execute(() -> drain(sub));
+        }
+    }
+
+    private void drain(Subscriber sub) {
+        try {
+            SseEvent ev;
+            while ((ev = sub.outbox.poll()) != null) {
+                if (!safeSend(sub.emitter, ev.name(), ev.data())) {
+                    close(sub); // retire l'émetteur cassé
+                    return;
+                }
             }
-            return false;
-        });
+        } finally {
+            sub.draining.set(false);
+        }
+        // un event a pu arriver entre le dernier poll et la libération du flag
+        if (!sub.outbox.isEmpty() && sub.draining.compareAndSet(false, true)) {
+            sseDispatcher.execute(() -> drain(sub));
+        }
+    }
+
+    private void onOverflow(Subscriber sub) {
+        sseDropped.increment();
+        if (!sub.slow) {
+            sub.slow = true;
+            sseSlowConsumers.increment();
+            log.warn("SSE client lent (file pleine, {} events), politique={}", sseQueueCapacity, sseOverflow);
+        }
+        if ("DISCONNECT".equalsIgnoreCase(sseOverflow)) close(sub);
+    }
+
+    private void close(Subscriber sub) {
+        try { sub.emitter.complete(); } catch (Exception ignore) {}
+        sub.outbox.clear();
+        unregister(sub);
+    }
+
+    @PreDestroy
+    void shutdownDispatcher() {
+        sseDispatcher.shutdownNow();
     }
 
     private boolean safeSend(SseEmitter em, String event, String data) {
@@ -0,0 +1,216 @@
+package org.babyguardianbackend.sensorservice.mqttConfig;
+
+import lombok.extern.slf4j.Slf4j;
+import org.babyguardianbackend.sensorservice.ingestion.DevicePartitioner;
+import org.eclipse.paho.client.mqttv3.IMqttClient;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Réplicas vivants du mode cluster, tenus par le broker MQTT lui-même :
+ * - chaque réplica publie un message retenu app/cluster/members/<member-id> (payload "UP")
+ * - son testament (LWT) est un message retenu vide sur le même topic : le broker le publie quand la
+ *   connexion tombe sans DISCONNECT (crash, kill -9, réseau), au plus keepalive x 1,5 après
+ * - chaque réplica suit app/cluster/members/+ et passe la vue à DevicePartitioner, qui réattribue
+ *   les devices du réplica disparu et rejoue ses messages gardés
+ *
+ * Arrêt propre (ContextClosedEvent, avant l'arrêt de l'adaptateur MQTT) : "LEFT" puis retenu vide.
+ * Les survivants reprennent les devices sans rejeu (le réplica sortant traite encore ce qu'il reçoit).
+ *
+ * SmartLifecycle (phase entre les lanes d'ingestion et l'adaptateur MQTT) : start() attend de se voir
+ * dans la vue (au plus app.mqtt.cluster.join-timeout-ms) avant que les premières mesures n'arrivent.
+ * Connexion dédiée : le testament ne doit pas dépendre du client de publication ni de l'adaptateur.
+ */
+@Slf4j
+@Component
+public class ClusterMembership implements SmartLifecycle, MqttCallback {
+
+    static final String MEMBERS_TOPIC = "app/cluster/members/";
+    private static final byte[] UP = "UP".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LEFT = "LEFT".getBytes(StandardCharsets.UTF_8);
+
+    private final DevicePartitioner partitioner;
+    private final MqttPahoClientFactory factory;
+
+    @Value("${app.mqtt.cluster.keepalive-seconds:10}")
+    private int keepAliveSeconds = 10;
+
+    @Value("${app.mqtt.cluster.join-timeout-ms:5000}")
+    private long joinTimeoutMs = 5000;
+
+    /** Réplicas annoncés (member-id) */
+    private final Set<String> live = ConcurrentHashMap.newKeySet();
+
+    private volatile IMqttClient client;
+    private volatile boolean running;
+    private volatile CountDownLatch joined = new CountDownLatch(1);
+
+    public ClusterMembership(DevicePartitioner partitioner, MqttPahoClientFactory factory) {
+        this.partitioner = partitioner;
+        this.factory = factory;
+    }
+
+    @Override
+    public void start() {
+        if (!partitioner.isClustered() || running) return;
+        running = true;
+        try {
+            join();
+        } catch (MqttException e) {
+            // pas de vue : ce réplica garde tout sans rien traiter, nouvelle tentative en tâche de fond
+            log.warn("[CLUSTER] connexion membership impossible err={}", e.toString());
+            reconnectLater();
+        }
+    }
+
+    private void join() throws MqttException {
+        String self = partitioner.memberId();
+        String topic = MEMBERS_TOPIC + self;
+
+        MqttConnectOptions base = factory.getConnectionOptions();
+        MqttConnectOptions opts = new MqttConnectOptions();
+        opts.setServerURIs(base.getServerURIs());
+        if (base.getUserName() != null) opts.setUserName(base.getUserName());
+        if (base.getPassword() != null) opts.setPassword(base.getPassword());
+        if (base.getSocketFactory() != null) opts.setSocketFactory(base.getSocketFactory());
+        if (base.getSSLProperties() != null) opts.setSSLProperties(base.getSSLProperties());
+        opts.setConnectionTimeout(base.getConnectionTimeout());
+        opts.setKeepAliveInterval(keepAliveSeconds);
+        opts.setCleanSession(true);
+        opts.setAutomaticReconnect(false);
+        opts.setWill(topic, new byte[0], 1, true);
+
+        IMqttClient c = factory.getClientInstance(base.getServerURIs()[0], "members-" + self);
+        c.setCallback(this);
+        c.connect(opts);
+        client = c;
+
+        joined = new CountDownLatch(1);
+        c.subscribe(MEMBERS_TOPIC + "+", 1);
+        c.publish(topic, UP, 1, true);
+        try {
+            if (!joined.await(joinTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("[CLUSTER] {} absent de la vue après {} ms", self, joinTimeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Départ annoncé tant que l'adaptateur reçoit encore : les survivants reprennent sans trou */
+    @EventListener(ContextClosedEvent.class)
+    public void leave() {
+        IMqttClient c = client;
+        if (!running || c == null || !c.isConnected()) return;
+        String topic = MEMBERS_TOPIC + partitioner.memberId();
+        try {
+            c.publish(topic, LEFT, 1, false);
+            c.publish(topic, new byte[0], 1, true);
+        } catch (MqttException e) {
+            log.warn("[CLUSTER] annonce de départ échouée err={}", e.toString());
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        IMqttClient c = client;
+        client = null;
+        closeQuietly(c);
+    }
+
+    private static void closeQuietly(IMqttClient c) {
+        if (c == null) return;
+        try {
+            if (c.isConnected()) c.disconnect();
+            c.close();
+        } catch (MqttException e) {
+            log.debug("[CLUSTER] fermeture membership err={}", e.toString());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 10; // après les lanes d'ingestion (0), avant l'adaptateur MQTT
+    }
+
+    /* ================== Callbacks Paho ================== */
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) {
+        if (!topic.startsWith(MEMBERS_TOPIC)) return;
+        String member = topic.substring(MEMBERS_TOPIC.length());
+        String state = new String(message.getPayload(), StandardCharsets.UTF_8);
+        // notre propre départ : on continue de traiter nos devices jusqu'à l'arrêt de l'adaptateur
+        // (recouvrement bref avec le repreneur plutôt qu'un trou)
+        if (member.equals(partitioner.memberId()) && !state.equals("UP")) return;
+
+        boolean changed;
+        if (state.equals("UP")) {
+            changed = live.add(member);
+        } else if (state.equals("LEFT")) {
+            // départ propre : reprise sans rejeu
+            if (live.remove(member)) partitioner.memberLeft(List.copyOf(live));
+            return;
+        } else {
+            // retenu vide : testament (crash) ou nettoyage après LEFT
+            changed = live.remove(member);
+        }
+        if (changed) partitioner.membersChanged(List.copyOf(live));
+        if (live.contains(partitioner.memberId())) joined.countDown();
+    }
+
+    @Override
+    public void connectionLost(Throwable cause) {
+        // les autres vont recevoir notre testament et reprendre nos devices : on cesse d'en posséder
+        log.warn("[CLUSTER] connexion membership perdue err={}", String.valueOf(cause));
+        live.clear();
+        partitioner.membersChanged(List.of());
+        reconnectLater();
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+    }
+
+    private void reconnectLater() {
+        Thread t = new Thread(() -> {
+            while (running) {
+                try {
+                    Thread.sleep(1000);
+                    closeQuietly(client);
+                    join();
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (MqttException e) {
+                    log.debug("[CLUSTER] reconnexion membership échouée err={}", e.toString());
+                }
+            }
+        }, "cluster-membership-reconnect");
+        t.setDaemon(true);
+        t.start();
+    }
+}
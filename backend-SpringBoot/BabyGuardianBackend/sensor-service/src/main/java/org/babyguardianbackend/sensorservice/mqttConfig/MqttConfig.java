@@ -9,6 +9,7 @@ import org.springframework.integration.core.MessageProducer;
 import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
 import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.mqtt.outbound.MqttPahoMessageHandler;
@@ -62,6 +63,7 @@ public class MqttConfig {
             @Value("${app.mqtt.qos:1}") int qos) {
 
         // nettoie la liste au cas où
+        // mode cluster : abonnements en broadcast, le tri par device est fait par DevicePartitioner (vue ClusterMembership)
         String[] subs = Arrays.stream(topics.split(","))
                 .map(String::trim)
                 .filter(s -> !s.isEmpty())
@@ -70,6 +72,11 @@ public class MqttConfig {
         MqttPahoMessageDrivenChannelAdapter adapter =
                 new MqttPahoMessageDrivenChannelAdapter(id, factory, subs);
 
+        // payload brut (byte[]) : décodé en streaming par VitalsPayloadDecoder, sans String intermédiaire
+        DefaultPahoMessageConverter converter = new DefaultPahoMessageConverter();
+        converter.setPayloadAsBytes(true);
+        adapter.setConverter(converter);
+
         adapter.setQos(qos);
         adapter.setCompletionTimeout(5000);   // attente SUBACK
         adapter.setOutputChannel(mqttInputChannel());
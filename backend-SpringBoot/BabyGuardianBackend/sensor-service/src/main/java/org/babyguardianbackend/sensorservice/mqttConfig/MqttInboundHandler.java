@@ -1,24 +1,38 @@
 package org.babyguardianbackend.sensorservice.mqttConfig;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.babyguardianbackend.sensorservice.cleaning.DataCleaningService;
 import org.babyguardianbackend.sensorservice.cleaning.VitalClean;
 import org.babyguardianbackend.sensorservice.cleaning.VitalRaw;
-import org.babyguardianbackend.sensorservice.dao.DeviceRepository;
-import org.babyguardianbackend.sensorservice.dao.SensorReadingRepository;
+import org.babyguardianbackend.sensorservice.cleaning.VitalsPayloadDecoder;
 import org.babyguardianbackend.sensorservice.entities.Device;
 import org.babyguardianbackend.sensorservice.entities.SensorReading;
+import org.babyguardianbackend.sensorservice.ingestion.DevicePartitioner;
+import org.babyguardianbackend.sensorservice.ingestion.DuplicateFilter;
+import org.babyguardianbackend.sensorservice.ingestion.PartitionedIngestionExecutor;
+import org.babyguardianbackend.sensorservice.ingestion.ReorderBuffer;
 import org.babyguardianbackend.sensorservice.monitoring.DeviceConnectionMonitor;
-import org.babyguardianbackend.sensorservice.service.VitalsProducer;
-import org.babyguardianbackend.sensorservice.webSocket.handler.VitalWsHandler;
+import org.babyguardianbackend.sensorservice.persistence.RollupAggregator;
+import org.babyguardianbackend.sensorservice.persistence.SensorReadingWriter;
+import org.babyguardianbackend.sensorservice.presence.DevicePresenceService;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.babyguardianbackend.sensorservice.service.DeviceOwnershipService;
+import org.babyguardianbackend.sensorservice.service.DeviceRegistry;
+import org.babyguardianbackend.wire.device.DeviceStateTable;
+import org.babyguardianbackend.sensorservice.service.RecentReadingsStore;
+import org.babyguardianbackend.sensorservice.service.VitalsFanout;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.mqtt.support.MqttHeaders;
 import org.springframework.messaging.Message;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Set;
 import java.util.concurrent.*;
 
 @Slf4j
@@ -26,57 +40,111 @@ import java.util.concurrent.*;
 @RequiredArgsConstructor
 public class MqttInboundHandler {
 
-    private final DeviceRepository deviceRepo;
-    private final SensorReadingRepository readingRepo;
+    private final DeviceRegistry deviceRegistry;
+    private final SensorReadingWriter readingWriter;
+    private final RollupAggregator rollups;
+    private final RecentReadingsStore recentReadings;
     private final DeviceConnectionMonitor monitor;
     private final DataCleaningService cleaningService;
-    private final VitalsProducer vitalsProducer;
-    private final VitalWsHandler wsHandler;
+    private final VitalsPayloadDecoder decoder;
+    private final DuplicateFilter duplicates;
+    private final ReorderBuffer reorder;
+    private final VitalsFanout vitalsFanout;
+    private final PartitionedIngestionExecutor ingestion;
+    private final DevicePresenceService presence;
+    private final DeviceIdInterner interner;
+    private final DevicePartitioner partitioner;
+    private final DeviceOwnershipService ownership;
 
-    private final ObjectMapper om = new ObjectMapper();
+    // device (index DeviceIdInterner) -> waiters realtime en attente (plusieurs appelants possibles par device) ;
+    // le set reste en place une fois créé, chaque waiter en sort à sa complétion
+    private final DeviceStateTable<Set<CompletableFuture<SensorReading>>> realtimeWaiters = new DeviceStateTable<>();
 
-    private final ConcurrentMap<String, String> statusByDevice = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, CompletableFuture<SensorReading>> realtimeWaiters = new ConcurrentHashMap<>();
+    // device (index DeviceIdInterner) -> dernière mesure realtime reçue (servie via maxAgeMs sans contacter le device)
+    private final DeviceStateTable<RealtimeSnapshot> lastRealtime = new DeviceStateTable<>();
 
-    private String norm(String deviceId) {
-        return deviceId == null ? null : deviceId.trim().toLowerCase();
-    }
+    public record RealtimeSnapshot(SensorReading reading, long receivedAtMillis) {}
 
     public String getStatus(String deviceId) {
-        return statusByDevice.getOrDefault(norm(deviceId), "unknown");
+        // vue de présence partagée entre réplicas, indexée par deviceId normalisé
+        return presence.getMqttStatus(DeviceIdInterner.normalize(deviceId));
+    }
+
+    public RealtimeSnapshot getLastRealtimeReading(String deviceId) {
+        return lastRealtime.get(interner.find(deviceId));
     }
 
-    public SensorReading waitForRealtimeReading(String deviceId, long timeout, TimeUnit unit) throws InterruptedException {
-        String id = norm(deviceId);
+    /**
+     * Future complétée par le callback MQTT à la prochaine mesure realtime du device,
+     * ou avec null après le timeout (géré de façon asynchrone : aucun thread bloqué).
+     */
+    public CompletableFuture<SensorReading> awaitRealtimeReading(String deviceId, long timeout, TimeUnit unit) {
+        // une commande "read" part vers ce device : on l'interne comme le fera sa réponse MQTT
+        int device = interner.id(deviceId);
         CompletableFuture<SensorReading> fut = new CompletableFuture<>();
+        if (device == DeviceIdInterner.UNKNOWN) return fut.completeOnTimeout(null, timeout, unit);
 
-        CompletableFuture<SensorReading> prev = realtimeWaiters.put(id, fut);
-        if (prev != null && !prev.isDone()) {
-            prev.completeExceptionally(new CancellationException("Replaced by a new realtime waiter"));
-        }
+        Set<CompletableFuture<SensorReading>> waiters =
+                realtimeWaiters.computeIfAbsent(device, k -> ConcurrentHashMap.newKeySet());
+        waiters.add(fut);
+        fut.whenComplete((r, e) -> waiters.remove(fut));
+        return fut.completeOnTimeout(null, timeout, unit);
+    }
 
-        try {
-            return fut.get(timeout, unit);
-        } catch (TimeoutException e) {
-            return null;
-        } catch (ExecutionException e) {
-            log.warn("Realtime waiter error: {}", e.getMessage());
-            return null;
-        } finally {
-            realtimeWaiters.remove(id, fut);
+    private boolean hasRealtimeWaiters(int device) {
+        Set<CompletableFuture<SensorReading>> waiters = realtimeWaiters.get(device);
+        return waiters != null && !waiters.isEmpty();
+    }
+
+    /** une seule mesure répond à tous les appelants en attente (chacun n'est complété qu'une fois) */
+    private void completeRealtimeWaiters(int device, SensorReading r) {
+        Set<CompletableFuture<SensorReading>> waiters = realtimeWaiters.get(device);
+        if (waiters == null) return;
+        for (CompletableFuture<SensorReading> f : waiters) {
+            if (waiters.remove(f)) f.complete(r);
         }
     }
 
+    @PostConstruct
+    void registerHandover() {
+        // messages gardés d'un réplica disparu : rejoués par le même chemin que la réception
+        partitioner.onHandover(this::dispatch);
+    }
+
     @ServiceActivator(inputChannel = "mqttInputChannel")
     public void handle(Message<?> msg) {
         String topic = (String) msg.getHeaders().get(MqttHeaders.RECEIVED_TOPIC);
-        String payload = String.valueOf(msg.getPayload());
+        byte[] payload = payloadBytes(msg.getPayload());
         if (topic == null) return;
 
+        // mode cluster : tout est reçu en broadcast, seul le réplica propriétaire traite et persiste ;
+        // les autres gardent le message (reprise si le propriétaire tombe) sans interning ni activité device
+        // et répondent seulement à leurs appelants HTTP en attente d'une mesure /realtime
+        String deviceId = DeviceIdInterner.normalize(extractDeviceId(topic));
+        if (isPartitioned(topic) && !partitioner.acceptOrHold(deviceId, topic, payload)) {
+            int device = interner.find(deviceId); // déjà interné si un appelant attend ce device
+            if (topic.endsWith("/realtime") && hasRealtimeWaiters(device)) {
+                ingestion.execute(deviceId, () -> answerRealtimeWaiters(device, interner.name(device), payload));
+            }
+            return;
+        }
+        dispatch(topic, payload);
+    }
+
+    private void dispatch(String topic, byte[] payload) {
+        // même device => même lane (ordre conservé), devices différents => en parallèle
+        ingestion.execute(DeviceIdInterner.normalize(extractDeviceId(topic)), () -> process(topic, payload));
+    }
+
+    private static boolean isPartitioned(String topic) {
+        return topic.startsWith("iot/vitals/") || topic.startsWith("app/vitals/") || topic.startsWith("app/owner/");
+    }
+
+    private void process(String topic, byte[] payload) {
         try {
             // Supporte iot/status/* ET app/status/* (au cas où)
             if (topic.startsWith("iot/status/") || topic.startsWith("app/status/")) {
-                handleStatus(topic, payload);
+                handleStatus(topic, new String(payload, StandardCharsets.UTF_8));
                 return;
             }
 
@@ -87,19 +155,30 @@ public class MqttInboundHandler {
                 return;
             }
 
+            // app/owner/<deviceId> : propriétaire déclaré par le device (payload vide => détaché)
+            if (topic.startsWith("app/owner/")) {
+                handleOwner(topic, new String(payload, StandardCharsets.UTF_8));
+                return;
+            }
+
             log.debug("MQTT ignored topic={}", topic);
         } catch (Exception e) {
-            log.error("MQTT handler error topic={} payload={} err={}", topic, payload, e.toString());
+            log.error("MQTT handler error topic={} payload={} err={}",
+                    topic, new String(payload, StandardCharsets.UTF_8), e.toString());
         }
     }
 
+    private byte[] payloadBytes(Object payload) {
+        if (payload instanceof byte[] b) return b;
+        return String.valueOf(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
     private void handleStatus(String topic, String payload) {
-        String deviceId = extractDeviceId(topic);
+        String deviceId = interner.canonical(extractDeviceId(topic));
         if (deviceId == null) return;
-        deviceId = norm(deviceId);
 
         String st = (payload == null ? "unknown" : payload.trim().toUpperCase());
-        statusByDevice.put(deviceId, st);
+        presence.publishMqttStatus(deviceId, st); // vue partagée entre réplicas
 
         if ("ONLINE".equals(st)) monitor.markConnected(deviceId);
         else if ("OFFLINE".equals(st)) monitor.markDisconnected(deviceId);
@@ -107,78 +186,140 @@ public class MqttInboundHandler {
         log.info("[MQTT] status {} => {}", deviceId, st);
     }
 
-    private void handleVitals(String topic, String payload, boolean topicRealtime) throws Exception {
-        String deviceIdFromTopic = extractDeviceId(topic);
-        if (deviceIdFromTopic == null) return;
-        deviceIdFromTopic = norm(deviceIdFromTopic);
+    private void handleOwner(String topic, String payload) {
+        String deviceId = interner.canonical(extractDeviceId(topic));
+        if (deviceId == null) return;
+        // traité par le seul réplica propriétaire (cf. handle) : une seule écriture en base par message,
+        // les autres réplicas l'apprennent par DeviceOwnershipSync
+
+        String owner = payload.trim();
+        ownership.setOwnerFromDevice(deviceId, owner.isEmpty() ? null : owner);
+        log.info("[MQTT] owner {} => {}", deviceId, owner.isEmpty() ? "(aucun)" : owner);
+    }
 
-        // dès qu'on reçoit une mesure => activité device (même si on rejette la valeur après)
+    private void handleVitals(String topic, byte[] payload, boolean topicRealtime) throws Exception {
+        // interning une seule fois ici : la suite travaille sur l'index dense et l'instance canonique
+        int topicDevice = interner.id(extractDeviceId(topic));
+        if (topicDevice == DeviceIdInterner.UNKNOWN) return;
+        String deviceIdFromTopic = interner.name(topicDevice);
+
+        // dès qu'on reçoit une mesure => activité device (même si on rejette la valeur après) ;
+        // réplica propriétaire uniquement, la vue partagée (DevicePresenceService) sert les autres
         monitor.recordDeviceActivity(deviceIdFromTopic);
 
-        JsonNode j = om.readTree(payload);
+        // décodage streaming (alias temp/temperature/tempC, hr/bpm... résolus en une passe)
+        VitalRaw raw = decoder.decode(payload);
 
         // deviceId peut exister dans le JSON, sinon fallback sur topic
-        String deviceIdFromPayload = readText(j, "deviceId");
-        String effectiveDeviceId = norm((deviceIdFromPayload != null && !deviceIdFromPayload.isBlank())
-                ? deviceIdFromPayload
-                : deviceIdFromTopic);
-
-        // Récupération flexible des champs (plusieurs clés possibles)
-        Double temp = firstDouble(j, "temp", "temperature", "tempC");
-        Double spo2 = firstDouble(j, "spo2", "SpO2");
-        Double hr   = firstDouble(j, "heartRate", "hr", "bpm");
-        Long ts     = firstLong(j, "timestamp", "ts", "time");
+        String deviceIdFromPayload = raw.deviceId();
+        int payloadDevice = (deviceIdFromPayload != null) ? interner.id(deviceIdFromPayload) : DeviceIdInterner.UNKNOWN;
+        int device = (payloadDevice != DeviceIdInterner.UNKNOWN) ? payloadDevice : topicDevice;
+        String effectiveDeviceId = interner.name(device);
+        raw.setDeviceId(effectiveDeviceId);
+
+        // redelivery QoS1 / retry device : déjà traitée => ni ligne, ni event Kafka, ni alerte
+        if (duplicates.isDuplicate(device, raw.hasTimestamp(), raw.timestamp(), payload)) {
+            log.debug("[MQTT] vitals DUPLICATE device={} ts={}", effectiveDeviceId, raw.timestamp());
+            return;
+        }
 
         // Nettoyage (REJECT ou CLAMP selon app.cleaning.mode)
         VitalClean clean;
         try {
-            VitalRaw raw = new VitalRaw(effectiveDeviceId, temp, spo2, hr, ts);
-            clean = cleaningService.cleanOrThrow(raw, effectiveDeviceId);
-            // Envoi vers Kafka
-            vitalsProducer.sendCleanVitals(deviceIdFromTopic,clean);
-            wsHandler.sendToDevice(deviceIdFromTopic, om.writeValueAsString(clean));
+            clean = cleaningService.cleanOrThrow(raw, effectiveDeviceId, device);
         } catch (IllegalArgumentException ex) {
             // mode REJECT => on ignore la mesure
-            log.warn("[MQTT] vitals REJECTED device={} reason={} payload={}", effectiveDeviceId, ex.getMessage(), payload);
+            log.warn("[MQTT] vitals REJECTED device={} reason={} payload={}",
+                    effectiveDeviceId, ex.getMessage(), new String(payload, StandardCharsets.UTF_8));
+            return;
+        }
+
+        // raw est réutilisé par le décodeur : on copie ce qui sert après une éventuelle mise en attente
+        Boolean finger = raw.finger();
+        boolean realtime = topicRealtime || raw.realtime();
+        if (realtime) {
+            // un appelant HTTP attend cette mesure : pas de remise en ordre
+            emitReading(topicDevice, device, clean, finger, true, System.currentTimeMillis());
+        } else {
+            // émission dans l'ordre de l'horloge device (watermark app.ingestion.reorder.lateness-ms)
+            reorder.offer(device, clean.timestamp(),
+                    measuredAt -> emitReading(topicDevice, device, clean, finger, false, measuredAt));
+        }
+    }
+
+    /**
+     * Réplica non propriétaire : nettoyage sans état device (ni dédup, ni Hampel) et mesure transitoire,
+     * non persistée (le propriétaire enregistre la même mesure), pour compléter les waiters locaux.
+     */
+    private void answerRealtimeWaiters(int device, String deviceId, byte[] payload) {
+        VitalRaw raw;
+        try {
+            raw = decoder.decode(payload);
+        } catch (Exception e) {
+            log.warn("[MQTT] realtime illisible device={} err={}", deviceId, e.toString());
+            return;
+        }
+        VitalClean clean;
+        try {
+            clean = cleaningService.cleanOrThrow(raw, deviceId, DeviceIdInterner.UNKNOWN);
+        } catch (IllegalArgumentException ex) {
+            log.warn("[MQTT] realtime REJECTED device={} reason={}", deviceId, ex.getMessage());
             return;
         }
 
-        Device device = upsertDevice(effectiveDeviceId);
+        SensorReading r = new SensorReading();
+        r.setDevice(deviceRegistry.find(deviceId).orElse(null));
+        r.setTemp(clean.temperatureC());
+        r.setSpo2(clean.spo2());
+        r.setHeartRate(clean.heartRate());
+        r.setFinger(raw.finger());
+        r.setMeasuredAt(LocalDateTime.now());
+        r.setCreatedAt(LocalDateTime.now());
+
+        lastRealtime.set(device, new RealtimeSnapshot(r, System.currentTimeMillis()));
+        completeRealtimeWaiters(device, r);
+    }
+
+    private void emitReading(int topicDevice, int device, VitalClean clean, Boolean finger,
+                             boolean realtime, long measuredAtMillis) {
+        String deviceId = interner.name(device);
+
+        // Envoi vers Kafka + WebSocket (un seul encodage JSON)
+        vitalsFanout.publish(interner.name(topicDevice), topicDevice, clean);
 
-        Boolean finger = readBool(j, "finger");
+        // lookup mémoire (création atomique si device inconnu)
+        Device entity = deviceRegistry.getOrRegister(deviceId);
 
         SensorReading r = new SensorReading();
-        r.setDevice(device);
+        r.setDevice(entity);
         r.setTemp(clean.temperatureC());
         r.setSpo2(clean.spo2());
         r.setHeartRate(clean.heartRate());
         r.setFinger(finger);
+        r.setMeasuredAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(measuredAtMillis), ZoneId.systemDefault()));
 
-        // Si ton entity a un champ timestamp/createdAt, décommente et adapte :
-        // r.setTimestamp(clean.timestamp());
+        // save direct ou write-behind (batch JDBC) selon app.persistence.write-behind.enabled
+        SensorReading saved = readingWriter.write(r);
 
-        SensorReading saved = readingRepo.save(r);
+        // anneau mémoire des mesures récentes (statut device, /api/sensors/{id}/recent)
+        long createdAtMillis = saved.getCreatedAt() != null
+                ? saved.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : System.currentTimeMillis();
+        recentReadings.record(device, createdAtMillis, measuredAtMillis,
+                clean.heartRate(), clean.spo2(), clean.temperatureC(), finger);
 
-        boolean payloadRealtime = j.has("realtime") && j.get("realtime").asBoolean(false);
-        boolean realtime = topicRealtime || payloadRealtime;
+        // agrégats minute/heure (les pics OUTLIER fausseraient min/max)
+        if (!"OUTLIER".equals(clean.quality())) {
+            rollups.record(deviceId, measuredAtMillis, clean.heartRate(), clean.spo2(), clean.temperatureC());
+        }
 
         if (realtime) {
-            CompletableFuture<SensorReading> fut = realtimeWaiters.get(effectiveDeviceId);
-            if (fut != null && !fut.isDone()) fut.complete(saved);
+            lastRealtime.set(device, new RealtimeSnapshot(saved, System.currentTimeMillis()));
+            completeRealtimeWaiters(device, saved);
         }
 
         log.debug("[MQTT] vitals {} quality={} realtime={} hr={} spo2={} temp={}",
-                effectiveDeviceId, clean.quality(), realtime, clean.heartRate(), clean.spo2(), clean.temperatureC());
-    }
-
-    private Device upsertDevice(String deviceId) {
-        return deviceRepo.findByDeviceId(deviceId)
-                .orElseGet(() -> {
-                    Device d = new Device();
-                    d.setDeviceId(deviceId);
-                    d.setMacAddress(macFromDeviceId(deviceId)); // NOT NULL
-                    return deviceRepo.save(d);
-                });
+                deviceId, clean.quality(), realtime, clean.heartRate(), clean.spo2(), clean.temperatureC());
     }
 
     private String extractDeviceId(String topic) {
@@ -189,65 +330,4 @@ public class MqttInboundHandler {
         if (parts.length < 3) return null;
         return parts[2];
     }
-
-    private String macFromDeviceId(String deviceId) {
-        int idx = deviceId.indexOf("-");
-        String hex = (idx >= 0 ? deviceId.substring(idx + 1) : deviceId);
-        hex = hex.replace(":", "").trim().toUpperCase();
-        if (hex.length() != 12) return hex;
-
-        return hex.substring(0,2)+":"+hex.substring(2,4)+":"+hex.substring(4,6)+":"+
-                hex.substring(6,8)+":"+hex.substring(8,10)+":"+hex.substring(10,12);
-    }
-
-    // --------- Helpers robustes ---------
-
-    private String readText(JsonNode j, String k) {
-        JsonNode n = j.get(k);
-        return (n == null || n.isNull()) ? null : n.asText(null);
-    }
-
-    private Double firstDouble(JsonNode j, String... keys) {
-        for (String k : keys) {
-            Double v = readDouble(j, k);
-            if (v != null) return v;
-        }
-        return null;
-    }
-
-    private Long firstLong(JsonNode j, String... keys) {
-        for (String k : keys) {
-            Long v = readLong(j, k);
-            if (v != null) return v;
-        }
-        return null;
-    }
-
-    private Double readDouble(JsonNode j, String k) {
-        JsonNode n = j.get(k);
-        if (n == null || n.isNull()) return null;
-        // support nombre OU string "36.7"
-        if (n.isNumber()) return n.asDouble();
-        if (n.isTextual()) {
-            try { return Double.parseDouble(n.asText().trim()); }
-            catch (Exception ignored) { return null; }
-        }
-        return null;
-    }
-
-    private Long readLong(JsonNode j, String k) {
-        JsonNode n = j.get(k);
-        if (n == null || n.isNull()) return null;
-        if (n.isNumber()) return n.asLong();
-        if (n.isTextual()) {
-            try { return Long.parseLong(n.asText().trim()); }
-            catch (Exception ignored) { return null; }
-        }
-        return null;
-    }
-
-    private Boolean readBool(JsonNode j, String k) {
-        JsonNode n = j.get(k);
-        return (n == null || n.isNull()) ? null : n.asBoolean();
-    }
 }
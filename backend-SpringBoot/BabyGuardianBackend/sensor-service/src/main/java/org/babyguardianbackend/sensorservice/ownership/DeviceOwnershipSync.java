@@ -0,0 +1,203 @@
+package org.babyguardianbackend.sensorservice.ownership;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.babyguardianbackend.sensorservice.entities.Device;
+import org.babyguardianbackend.sensorservice.service.DeviceRegistry;
+import org.babyguardianbackend.wire.OwnershipEvent;
+import org.babyguardianbackend.wire.WireCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Ownership des devices partagé entre réplicas (index DeviceRegistry).
+ * - chaque bind/unbind/setOwnerFromDevice commité ici est publié sur un topic Kafka compacté (clé = deviceId)
+ * - chaque réplica relit ce topic en entier et applique les changements plus récents (@Version) que son registre
+ * Sans cela, un unbind fait sur A laisse B servir SSE et statuts à l'ancien propriétaire,
+ * et un bind fait sur A renvoie 403 sur B jusqu'au prochain redémarrage.
+ *
+ * Même lecture que DevicePresenceService (assign manuel, pas de consumer group, aucun offset commité),
+ * démarrée après DeviceRegistry.warmUp() : les events plus anciens que le chargement initial sont ignorés.
+ *
+ * Actif par défaut en mode cluster (app.mqtt.cluster.enabled) ; sinon registre purement local.
+ */
+@Slf4j
+@Service
+public class DeviceOwnershipSync {
+
+    private final DeviceRegistry registry;
+    private final KafkaTemplate<String, byte[]> kafka;
+    private final Supplier<Consumer<String, byte[]>> consumerSupplier;
+
+    @Autowired
+    public DeviceOwnershipSync(DeviceRegistry registry,
+                               ProducerFactory<String, byte[]> producerFactory,
+                               ConsumerFactory<?, ?> consumerFactory) {
+        this(registry,
+                new KafkaTemplate<>(producerFactory,
+                        Map.of(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class)),
+                () -> new KafkaConsumer<>(readerConfig(consumerFactory.getConfigurationProperties())));
+    }
+
+    DeviceOwnershipSync(DeviceRegistry registry,
+                        KafkaTemplate<String, byte[]> kafka,
+                        Supplier<Consumer<String, byte[]>> consumerSupplier) {
+        this.registry = registry;
+        this.kafka = kafka;
+        this.consumerSupplier = consumerSupplier;
+        registry.onOwnershipCommitted(this::publish);
+    }
+
+    /** Config du consumer Boot (bootstrap, sécurité...) sans group.id ni commit : simple lecteur du topic */
+    static Map<String, Object> readerConfig(Map<String, Object> base) {
+        Map<String, Object> cfg = new HashMap<>(base);
+        cfg.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        cfg.remove(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG);
+        cfg.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        cfg.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        cfg.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        cfg.put(ConsumerConfig.CLIENT_ID_CONFIG, "sensor-ownership-reader");
+        return cfg;
+    }
+
+    @Value("${app.ownership.sync.enabled:${app.mqtt.cluster.enabled:false}}")
+    private boolean enabled;
+
+    @Value("${app.kafka.topic.ownership:iot.device.ownership}")
+    private String ownershipTopic;
+
+    /* ================== Publication (changements commités localement) ================== */
+
+    void publish(Device d) {
+        if (!enabled) return;
+        long version = d.getVersion() != null ? d.getVersion() : 0L;
+        OwnershipEvent ev = new OwnershipEvent(d.getDeviceId(), d.getOwnerUserId(), version);
+
+        kafka.send(ownershipTopic, ev.deviceId(), WireCodec.encode(ev))
+                .whenComplete((r, e) -> {
+                    if (e != null) log.warn("[OWNERSHIP] publication échouée device={} err={}", ev.deviceId(), e.toString());
+                });
+    }
+
+    /* ================== Relecture du topic compacté ================== */
+
+    private volatile boolean running;
+    private volatile Thread reader;
+    private volatile Consumer<String, byte[]> consumer;
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || running) return;
+        running = true;
+        Thread t = new Thread(this::readLoop, "ownership-reader");
+        t.setDaemon(true);
+        reader = t;
+        t.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Consumer<String, byte[]> c = consumer;
+        if (c != null) c.wakeup();
+        Thread t = reader;
+        if (t != null) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void readLoop() {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try (Consumer<String, byte[]> c = consumerSupplier.get()) {
+                consumer = c;
+                List<TopicPartition> partitions = assign(c);
+                if (partitions.isEmpty()) {
+                    sleepBeforeRetry();
+                    continue;
+                }
+                log.info("[OWNERSHIP] relecture de {} partitions de {}", partitions.size(), ownershipTopic);
+
+                while (running) {
+                    for (ConsumerRecord<String, byte[]> rec : c.poll(Duration.ofMillis(500))) {
+                        onOwnership(rec);
+                    }
+                }
+            } catch (WakeupException e) {
+                // stop()
+            } catch (Exception e) {
+                if (!running) break;
+                log.warn("[OWNERSHIP] lecture du topic {} en échec, nouvelle tentative err={}", ownershipTopic, e.toString());
+                sleepBeforeRetry();
+            } finally {
+                consumer = null;
+            }
+        }
+    }
+
+    /** Toutes les partitions du topic, sans consumer group ; vide si le topic n'existe pas (encore) */
+    private List<TopicPartition> assign(Consumer<String, byte[]> c) {
+        List<PartitionInfo> infos = c.partitionsFor(ownershipTopic);
+        if (infos == null || infos.isEmpty()) {
+            log.warn("[OWNERSHIP] topic {} introuvable, nouvelle tentative", ownershipTopic);
+            return List.of();
+        }
+        List<TopicPartition> partitions = infos.stream()
+                .map(i -> new TopicPartition(i.topic(), i.partition()))
+                .toList();
+        c.assign(partitions);
+        c.seekToBeginning(partitions);
+        return partitions;
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void onOwnership(ConsumerRecord<String, byte[]> rec) {
+        if (rec.value() == null) return;
+        try {
+            OwnershipEvent ev = WireCodec.decodeOwnership(rec.value());
+            if (registry.applyRemoteOwner(ev.deviceId(), ev.ownerUserId(), ev.version())) {
+                log.info("[OWNERSHIP] device={} owner={} version={} (réplica distant)",
+                        ev.deviceId(), ev.ownerUserId(), ev.version());
+            }
+        } catch (Exception e) {
+            log.warn("[OWNERSHIP] event illisible key={} err={}", rec.key(), e.getMessage());
+        }
+    }
+}
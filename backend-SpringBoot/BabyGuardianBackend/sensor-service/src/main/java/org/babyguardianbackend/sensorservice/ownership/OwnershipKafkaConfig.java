@@ -0,0 +1,22 @@
+package org.babyguardianbackend.sensorservice.ownership;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+@ConditionalOnExpression("${app.ownership.sync.enabled:${app.mqtt.cluster.enabled:false}}")
+public class OwnershipKafkaConfig {
+
+    // log-compacted : chaque réplica retrouve le dernier propriétaire de chaque device en relisant le topic
+    @Bean
+    public NewTopic ownershipTopic(@Value("${app.kafka.topic.ownership:iot.device.ownership}") String topic) {
+        return TopicBuilder.name(topic)
+                .partitions(3)
+                .compact()
+                .build();
+    }
+}
@@ -0,0 +1,112 @@
+package org.babyguardianbackend.sensorservice.persistence;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintenance des partitions journalières de sensor_readings (cf. db/migration/V2) :
+ * - crée à l'avance les partitions des prochains jours (lignes déjà tombées dans la partition default
+ *   déplacées dans la nouvelle partition, cf. db/migration/V4)
+ * - rétention : supprime les partitions entières plus anciennes que app.persistence.retention-days
+ *   (DROP TABLE instantané, pas de DELETE ligne à ligne ni de VACUUM derrière)
+ *
+ * SmartLifecycle (phase plus basse que l'ingestion et l'adaptateur MQTT) : la première passe se termine
+ * avant la première mesure reçue, la partition du jour existe donc déjà.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReadingPartitionMaintenance implements SmartLifecycle {
+
+    private static final Pattern PARTITION = Pattern.compile("sensor_readings_p(\\d{8})");
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbc;
+
+    // partitions créées à l'avance (jours)
+    @Value("${app.persistence.partitions.ahead-days:7}")
+    private int aheadDays;
+
+    // 0 => pas de rétention (on garde tout)
+    @Value("${app.persistence.retention-days:0}")
+    private int retentionDays;
+
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        maintain();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return -100; // avant PartitionedIngestionExecutor (0) et l'adaptateur MQTT
+    }
+
+    @Scheduled(cron = "${app.persistence.partitions.cron:0 15 0 * * *}")
+    public void maintain() {
+        LocalDate today = LocalDate.now();
+        // un jour en échec n'empêche pas de créer les suivants
+        for (int i = 0; i <= aheadDays; i++) {
+            LocalDate day = today.plusDays(i);
+            try {
+                jdbc.queryForList("select sensor_readings_ensure_partition(?)", Date.valueOf(day));
+            } catch (Exception e) {
+                log.error("[PARTITIONS] partition du {} non créée err={}", day, e.toString());
+            }
+        }
+        if (retentionDays > 0) {
+            try {
+                dropOlderThan(today.minusDays(retentionDays));
+            } catch (Exception e) {
+                log.error("[PARTITIONS] rétention échouée err={}", e.toString());
+            }
+        }
+    }
+
+    private void dropOlderThan(LocalDate cutoff) {
+        List<String> partitions = jdbc.queryForList(
+                "select c.relname from pg_inherits i " +
+                "join pg_class c on c.oid = i.inhrelid " +
+                "join pg_class p on p.oid = i.inhparent " +
+                "where p.relname = 'sensor_readings'", String.class);
+
+        for (String name : partitions) {
+            Matcher m = PARTITION.matcher(name);
+            if (!m.matches()) continue; // partition default
+            LocalDate day = LocalDate.parse(m.group(1), DAY);
+            if (!day.isBefore(cutoff)) continue;
+
+            try {
+                jdbc.execute("drop table if exists " + name);
+            } catch (Exception e) {
+                log.error("[PARTITIONS] partition {} non supprimée err={}", name, e.toString());
+                continue;
+            }
+            log.info("[PARTITIONS] partition {} supprimée (rétention {} jours)", name, retentionDays);
+        }
+    }
+}
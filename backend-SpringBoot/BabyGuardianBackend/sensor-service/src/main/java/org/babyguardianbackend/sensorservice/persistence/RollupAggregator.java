@@ -0,0 +1,200 @@
+package org.babyguardianbackend.sensorservice.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agrégats 1 minute / 1 heure par device (tables sensor_rollups_1m / sensor_rollups_1h, cf. V3).
+ * Les mesures sont cumulées en mémoire puis écrites en batch toutes les flush-interval-ms :
+ * chaque flush est un delta fusionné par upsert (n/sum/sumsq additionnés, min/max, first/last
+ * selon leurs instants), donc un bucket peut être écrit plusieurs fois sans attendre sa fin.
+ * Un flush en échec remet ses deltas dans la map (fusionnés avec ce qui a été reçu entre-temps) :
+ * ils repartent au flush suivant au lieu d'être perdus. Le batch part en une seule exécution
+ * (une transaction implicite côté PostgreSQL) : en cas d'échec rien n'a été fusionné en base.
+ */
+@Slf4j
+@Component
+public class RollupAggregator {
+
+    private static final String[] METRICS = {"hr", "spo2", "temp"};
+    private static final String SQL_1M = upsertSql("sensor_rollups_1m");
+    private static final String SQL_1H = upsertSql("sensor_rollups_1h");
+
+    private final JdbcTemplate jdbc;
+
+    @Value("${app.persistence.rollups.enabled:true}")
+    private boolean enabled;
+
+    private final ConcurrentMap<BucketKey, Acc> minutes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<BucketKey, Acc> hours = new ConcurrentHashMap<>();
+
+    private final Timer flushTimer;
+    private final Counter flushedRows;
+    private final Counter retriedRows;
+
+    public RollupAggregator(JdbcTemplate jdbc, MeterRegistry meters) {
+        this.jdbc = jdbc;
+        this.flushTimer = meters.timer("sensor.rollups.flush");
+        this.flushedRows = meters.counter("sensor.rollups.rows", "result", "ok");
+        this.retriedRows = meters.counter("sensor.rollups.rows", "result", "retried");
+    }
+
+    record BucketKey(String deviceId, LocalDateTime bucketStart) {}
+
+    /** Cumul d'un bucket : [sum, sumsq, min, max, first, last] par métrique */
+    static final class Acc {
+        long n;
+        LocalDateTime firstAt, lastAt;
+        final double[][] m = new double[METRICS.length][6];
+
+        void add(LocalDateTime at, double[] values) {
+            boolean first = n == 0 || at.isBefore(firstAt);
+            boolean last = n == 0 || !at.isBefore(lastAt);
+            for (int i = 0; i < values.length; i++) {
+                double v = values[i];
+                double[] s = m[i];
+                s[0] += v;
+                s[1] += v * v;
+                s[2] = n == 0 ? v : Math.min(s[2], v);
+                s[3] = n == 0 ? v : Math.max(s[3], v);
+                if (first) s[4] = v;
+                if (last) s[5] = v;
+            }
+            if (first) firstAt = at;
+            if (last) lastAt = at;
+            n++;
+        }
+
+        /** Même fusion que l'upsert SQL : o est un cumul non vide du même bucket */
+        Acc merge(Acc o) {
+            boolean first = o.firstAt.isBefore(firstAt);
+            boolean last = !o.lastAt.isBefore(lastAt);
+            for (int i = 0; i < m.length; i++) {
+                double[] s = m[i];
+                double[] t = o.m[i];
+                s[0] += t[0];
+                s[1] += t[1];
+                s[2] = Math.min(s[2], t[2]);
+                s[3] = Math.max(s[3], t[3]);
+                if (first) s[4] = t[4];
+                if (last) s[5] = t[5];
+            }
+            if (first) firstAt = o.firstAt;
+            if (last) lastAt = o.lastAt;
+            n += o.n;
+            return this;
+        }
+    }
+
+    public void record(String deviceId, long measuredAtMillis, int hr, int spo2, double temp) {
+        if (!enabled) return;
+        LocalDateTime at = LocalDateTime.ofInstant(Instant.ofEpochMilli(measuredAtMillis), ZoneId.systemDefault());
+        double[] values = {hr, spo2, temp};
+
+        // compute : atomique vis-à-vis du remove() fait par le flush
+        minutes.compute(new BucketKey(deviceId, at.truncatedTo(ChronoUnit.MINUTES)), (k, acc) -> add(acc, at, values));
+        hours.compute(new BucketKey(deviceId, at.truncatedTo(ChronoUnit.HOURS)), (k, acc) -> add(acc, at, values));
+    }
+
+    private static Acc add(Acc acc, LocalDateTime at, double[] values) {
+        if (acc == null) acc = new Acc();
+        acc.add(at, values);
+        return acc;
+    }
+
+    @Scheduled(fixedDelayString = "${app.persistence.rollups.flush-interval-ms:5000}")
+    public void flush() {
+        flush(minutes, SQL_1M);
+        flush(hours, SQL_1H);
+    }
+
+    private void flush(ConcurrentMap<BucketKey, Acc> buckets, String sql) {
+        if (buckets.isEmpty()) return;
+
+        List<Map.Entry<BucketKey, Acc>> batch = new ArrayList<>(buckets.size());
+        for (BucketKey k : buckets.keySet()) {
+            Acc acc = buckets.remove(k);
+            if (acc != null) batch.add(Map.entry(k, acc));
+        }
+
+        long t0 = System.nanoTime();
+        try {
+            jdbc.batchUpdate(sql, batch, batch.size(), (ps, e) -> bind(ps, e.getKey(), e.getValue()));
+            flushedRows.increment(batch.size());
+        } catch (Exception e) {
+            // le delta échoué est plus ancien que ce qui est arrivé depuis : le "last" reçu entre-temps l'emporte
+            for (Map.Entry<BucketKey, Acc> en : batch) {
+                buckets.merge(en.getKey(), en.getValue(), (current, failed) -> failed.merge(current));
+            }
+            retriedRows.increment(batch.size());
+            log.error("[ROLLUPS] flush échoué, deltas remis en attente rows={} err={}", batch.size(), e.toString());
+        } finally {
+            flushTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static void bind(PreparedStatement ps, BucketKey k, Acc acc) throws SQLException {
+        int i = 1;
+        ps.setString(i++, k.deviceId());
+        ps.setTimestamp(i++, Timestamp.valueOf(k.bucketStart()));
+        ps.setLong(i++, acc.n);
+        ps.setTimestamp(i++, Timestamp.valueOf(acc.firstAt));
+        ps.setTimestamp(i++, Timestamp.valueOf(acc.lastAt));
+        for (double[] s : acc.m) {
+            for (double v : s) ps.setDouble(i++, v);
+        }
+    }
+
+    /** insert ... on conflict do update : fusion du delta avec le bucket déjà en base */
+    static String upsertSql(String table) {
+        StringBuilder cols = new StringBuilder("device_id, bucket_start, n, first_at, last_at");
+        StringBuilder merge = new StringBuilder()
+                .append("n = t.n + excluded.n, ")
+                .append("first_at = least(t.first_at, excluded.first_at), ")
+                .append("last_at = greatest(t.last_at, excluded.last_at)");
+        int params = 5;
+        for (String m : METRICS) {
+            cols.append(", ").append(m).append("_sum, ").append(m).append("_sumsq, ")
+                .append(m).append("_min, ").append(m).append("_max, ")
+                .append(m).append("_first, ").append(m).append("_last");
+            params += 6;
+            merge.append(", ").append(m).append("_sum = t.").append(m).append("_sum + excluded.").append(m).append("_sum")
+                 .append(", ").append(m).append("_sumsq = t.").append(m).append("_sumsq + excluded.").append(m).append("_sumsq")
+                 .append(", ").append(m).append("_min = least(t.").append(m).append("_min, excluded.").append(m).append("_min)")
+                 .append(", ").append(m).append("_max = greatest(t.").append(m).append("_max, excluded.").append(m).append("_max)")
+                 .append(", ").append(m).append("_first = case when excluded.first_at < t.first_at then excluded.")
+                     .append(m).append("_first else t.").append(m).append("_first end")
+                 .append(", ").append(m).append("_last = case when excluded.last_at >= t.last_at then excluded.")
+                     .append(m).append("_last else t.").append(m).append("_last end");
+        }
+        return "insert into " + table + " as t (" + cols + ") values (" + "?, ".repeat(params - 1) + "?) "
+                + "on conflict (device_id, bucket_start) do update set " + merge;
+    }
+
+    /** Dernier flush à l'arrêt */
+    @PreDestroy
+    void stop() {
+        flush();
+    }
+}
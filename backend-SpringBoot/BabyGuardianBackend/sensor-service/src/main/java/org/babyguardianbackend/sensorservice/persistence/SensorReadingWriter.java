@@ -0,0 +1,213 @@
+package org.babyguardianbackend.sensorservice.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.babyguardianbackend.sensorservice.dao.SensorReadingRepository;
+import org.babyguardianbackend.sensorservice.entities.SensorReading;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistance des mesures :
+ * - mode synchrone (par défaut) : readingRepo.save() comme avant
+ * - mode write-behind : file bornée + flush en batch JDBC (taille OU délai)
+ *
+ * En write-behind, l'id et createdAt sont attribués ici pour que l'appelant
+ * (ex: waiter realtime) récupère une SensorReading complète sans attendre le flush.
+ *
+ * Batch en échec : un seul nouvel essai (erreur transitoire), puis insertion ligne par ligne
+ * pour que seule la ligne fautive soit perdue, pas tout le batch.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SensorReadingWriter {
+
+    private static final String INSERT_SQL =
+            "insert into sensor_readings (id, device_id, heart_rate, spo2, temp, finger, measured_at, created_at) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?) " +
+            // id attribué ici : rejouer une ligne déjà commitée (retry) est sans effet
+            "on conflict (id, created_at) do nothing";
+
+    private final WriteBehindProperties p;
+    private final SensorReadingRepository readingRepo;
+    private final JdbcTemplate jdbc;
+    private final MeterRegistry meters;
+
+    private BlockingQueue<SensorReading> queue;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private Timer flushTimer;
+    private Counter flushedRows;
+    private Counter failedRows;
+    private Counter batchRetries;
+    private final AtomicLong lastFlushMs = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        if (!p.isEnabled()) return;
+
+        queue = new ArrayBlockingQueue<>(p.getQueueCapacity());
+
+        Gauge.builder("sensor.readings.writebehind.queue.depth", queue, BlockingQueue::size)
+                .description("Mesures en attente d'écriture")
+                .register(meters);
+        Gauge.builder("sensor.readings.writebehind.flush.last.ms", lastFlushMs, AtomicLong::get)
+                .description("Durée du dernier flush batch (ms)")
+                .register(meters);
+        flushTimer = Timer.builder("sensor.readings.writebehind.flush")
+                .description("Latence des flush batch JDBC")
+                .register(meters);
+        flushedRows = meters.counter("sensor.readings.writebehind.rows", "result", "ok");
+        failedRows  = meters.counter("sensor.readings.writebehind.rows", "result", "failed");
+        batchRetries = meters.counter("sensor.readings.writebehind.batch.retries");
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "readings-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        log.info("[WRITE-BEHIND] actif capacity={} batchSize={} flushIntervalMs={}",
+                p.getQueueCapacity(), p.getBatchSize(), p.getFlushIntervalMs());
+    }
+
+    /** Retourne la mesure "persistée" (immédiatement en write-behind, après save sinon) */
+    public SensorReading write(SensorReading r) {
+        if (!p.isEnabled()) return readingRepo.save(r);
+
+        if (r.getId() == null) r.setId(UUID.randomUUID());
+        if (r.getCreatedAt() == null) r.setCreatedAt(LocalDateTime.now());
+
+        try {
+            if (queue.offer(r, p.getOfferTimeoutMs(), TimeUnit.MILLISECONDS)) return r;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // file pleine : on écrit directement plutôt que de perdre la mesure
+        log.warn("[WRITE-BEHIND] file pleine ({}), écriture directe device={}",
+                queue.size(), r.getDevice() != null ? r.getDevice().getDeviceId() : null);
+        insertBatch(List.of(r));
+        return r;
+    }
+
+    private void flushLoop() {
+        List<SensorReading> batch = new ArrayList<>(p.getBatchSize());
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(p.getFlushIntervalMs());
+
+        while (running || !queue.isEmpty()) {
+            long deadline = System.nanoTime() + intervalNanos;
+            try {
+                // on accumule jusqu'à batchSize ou jusqu'à l'échéance
+                while (batch.size() < p.getBatchSize()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    SensorReading r = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (r == null) break;
+                    batch.add(r);
+                    queue.drainTo(batch, p.getBatchSize() - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // arrêt demandé : on sort après avoir vidé la file
+                queue.drainTo(batch);
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                insertBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void insertBatch(List<SensorReading> rows) {
+        long t0 = System.nanoTime();
+        try {
+            if (tryBatch(rows)) return;
+            if (batchRetries != null) batchRetries.increment();
+            if (tryBatch(rows)) return;
+            insertRowByRow(rows);
+        } finally {
+            long nanos = System.nanoTime() - t0;
+            if (flushTimer != null) flushTimer.record(nanos, TimeUnit.NANOSECONDS);
+            lastFlushMs.set(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    private boolean tryBatch(List<SensorReading> rows) {
+        try {
+            jdbc.batchUpdate(INSERT_SQL, rows, p.getBatchSize(), SensorReadingWriter::bind);
+            if (flushedRows != null) flushedRows.increment(rows.size());
+            return true;
+        } catch (Exception e) {
+            log.warn("[WRITE-BEHIND] flush batch échoué rows={} err={}", rows.size(), e.toString());
+            return false;
+        }
+    }
+
+    /** Repli après deux échecs du batch : chaque ligne dans sa propre instruction */
+    private void insertRowByRow(List<SensorReading> rows) {
+        int failed = 0;
+        for (SensorReading r : rows) {
+            try {
+                jdbc.update(INSERT_SQL, ps -> bind(ps, r));
+                if (flushedRows != null) flushedRows.increment();
+            } catch (Exception e) {
+                failed++;
+                if (failedRows != null) failedRows.increment();
+                log.error("[WRITE-BEHIND] ligne rejetée id={} device={} err={}",
+                        r.getId(), r.getDevice() != null ? r.getDevice().getDeviceId() : null, e.toString());
+            }
+        }
+        log.warn("[WRITE-BEHIND] batch rejoué ligne par ligne rows={} failed={}", rows.size(), failed);
+    }
+
+    private static void bind(PreparedStatement ps, SensorReading r) throws SQLException {
+        ps.setObject(1, r.getId());
+        ps.setString(2, r.getDevice().getDeviceId());
+        ps.setObject(3, r.getHeartRate(), Types.INTEGER);
+        ps.setObject(4, r.getSpo2(), Types.INTEGER);
+        ps.setObject(5, r.getTemp(), Types.DOUBLE);
+        ps.setObject(6, r.getFinger(), Types.BOOLEAN);
+        ps.setTimestamp(7, r.getMeasuredAt() != null ? Timestamp.valueOf(r.getMeasuredAt()) : null);
+        ps.setTimestamp(8, Timestamp.valueOf(r.getCreatedAt()));
+    }
+
+    /** Flush final à l'arrêt (appelé avant la fermeture du DataSource) */
+    @PreDestroy
+    void stop() {
+        if (flusher == null) return;
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // si le thread n'a pas tout vidé à temps, on termine ici
+        List<SensorReading> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) insertBatch(rest);
+        log.info("[WRITE-BEHIND] arrêté, file vidée");
+    }
+}
@@ -0,0 +1,24 @@
+package org.babyguardianbackend.sensorservice.persistence;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.persistence.write-behind")
+public class WriteBehindProperties {
+
+    // false => readingRepo.save() synchrone à chaque message (comportement historique)
+    private boolean enabled = false;
+
+    // taille max de la file en mémoire avant backpressure
+    private int queueCapacity = 10_000;
+
+    // flush dès que N mesures sont en attente ...
+    private int batchSize = 500;
+
+    // ... ou au plus tard toutes les X ms
+    private long flushIntervalMs = 1000;
+
+    // attente max pour déposer dans une file pleine avant écriture directe
+    private long offerTimeoutMs = 50;
+}
@@ -0,0 +1,305 @@
+package org.babyguardianbackend.sensorservice.presence;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.babyguardianbackend.wire.PresenceEvent;
+import org.babyguardianbackend.wire.WireCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Vue matérialisée de la présence des devices, partagée entre réplicas.
+ * - chaque transition locale (connecté/déconnecté, status MQTT) est publiée sur un topic Kafka compacté (clé = deviceId)
+ * - chaque réplica relit ce topic en entier et maintient la même vue locale
+ * - les lectures (/api/alerts/devices/status...) restent des lectures mémoire
+ *
+ * Lecture sans consumer group : toutes les partitions sont assignées à la main (assign + seekToBeginning),
+ * aucun offset n'est commité, un redémarrage ne laisse donc pas de groupe orphelin sur le broker.
+ * SmartLifecycle (phase plus basse que l'adaptateur MQTT et le serveur web) : start() attend que la relecture
+ * atteigne les end offsets relevés à l'assignation (au plus app.presence.bootstrap-timeout-ms), les statuts ne
+ * sont donc pas servis depuis une vue vide ; tant que ce n'est pas le cas, isReady() est faux
+ * (health "presence" OUT_OF_SERVICE, incluse dans le groupe readiness).
+ *
+ * Sans app.presence.enabled, la vue est simplement locale (comportement mono-instance).
+ */
+@Slf4j
+@Service
+public class DevicePresenceService implements SmartLifecycle {
+
+    private final KafkaTemplate<String, byte[]> kafka;
+    private final ObjectMapper om;
+    private final Supplier<Consumer<String, byte[]>> consumerSupplier;
+
+    @Autowired
+    public DevicePresenceService(ProducerFactory<String, byte[]> producerFactory,
+                                 ConsumerFactory<?, ?> consumerFactory,
+                                 ObjectMapper om) {
+        // valeur encodée par WireCodec ; om ne sert plus qu'à relire les anciens events JSON du topic compacté
+        this(new KafkaTemplate<>(producerFactory,
+                        Map.of(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class)),
+                () -> new KafkaConsumer<>(readerConfig(consumerFactory.getConfigurationProperties())),
+                om);
+    }
+
+    DevicePresenceService(KafkaTemplate<String, byte[]> kafka,
+                          Supplier<Consumer<String, byte[]>> consumerSupplier,
+                          ObjectMapper om) {
+        this.kafka = kafka;
+        this.consumerSupplier = consumerSupplier;
+        this.om = om;
+    }
+
+    /** Config du consumer Boot (bootstrap, sécurité...) sans group.id ni commit : simple lecteur du topic */
+    static Map<String, Object> readerConfig(Map<String, Object> base) {
+        Map<String, Object> cfg = new HashMap<>(base);
+        cfg.remove(ConsumerConfig.GROUP_ID_CONFIG);
+        cfg.remove(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG);
+        cfg.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        cfg.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        cfg.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        cfg.put(ConsumerConfig.CLIENT_ID_CONFIG, "sensor-presence-reader");
+        return cfg;
+    }
+
+    @Value("${app.presence.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.kafka.topic.presence:iot.device.presence}")
+    private String presenceTopic;
+
+    // attente max de la relecture initiale dans start() ; au-delà, démarrage quand même (isReady() reste faux)
+    @Value("${app.presence.bootstrap-timeout-ms:30000}")
+    private long bootstrapTimeoutMs;
+
+    private final ConcurrentMap<String, PresenceEvent> view = new ConcurrentHashMap<>();
+
+    // (deviceId, connected) : notifié quand un event distant change l'état connecté
+    private volatile BiConsumer<String, Boolean> remoteTransitionListener = (id, c) -> {};
+
+    public void onRemoteTransition(BiConsumer<String, Boolean> listener) {
+        this.remoteTransitionListener = listener;
+    }
+
+    /* ================== Écritures (transitions locales) ================== */
+
+    public void publishConnection(String deviceId, boolean connected) {
+        PresenceEvent cur = view.get(deviceId);
+        publish(new PresenceEvent(deviceId, connected,
+                cur != null ? cur.mqttStatus() : "unknown", System.currentTimeMillis()));
+    }
+
+    public void publishMqttStatus(String deviceId, String mqttStatus) {
+        PresenceEvent cur = view.get(deviceId);
+        publish(new PresenceEvent(deviceId, cur != null && cur.connected(),
+                mqttStatus, System.currentTimeMillis()));
+    }
+
+    private void publish(PresenceEvent ev) {
+        // application locale immédiate : pas d'attente de l'aller-retour Kafka
+        apply(ev);
+        if (!enabled) return;
+
+        kafka.send(presenceTopic, ev.deviceId(), WireCodec.encode(ev))
+                .whenComplete((r, e) -> {
+                    if (e != null) log.warn("[PRESENCE] publication échouée device={} err={}", ev.deviceId(), e.toString());
+                });
+    }
+
+    /* ================== Relecture du topic compacté ================== */
+
+    private volatile boolean running;
+    private volatile boolean ready;
+    private volatile Thread reader;
+    private volatile Consumer<String, byte[]> consumer;
+    private final CountDownLatch caughtUp = new CountDownLatch(1);
+
+    @Override
+    public void start() {
+        running = true;
+        if (!enabled) {
+            ready = true; // vue locale : rien à relire
+            return;
+        }
+        Thread t = new Thread(this::readLoop, "presence-reader");
+        t.setDaemon(true);
+        reader = t;
+        t.start();
+        try {
+            if (!caughtUp.await(bootstrapTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("[PRESENCE] relecture du topic {} non terminée après {} ms, démarrage sans vue complète",
+                        presenceTopic, bootstrapTimeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Consumer<String, byte[]> c = consumer;
+        if (c != null) c.wakeup();
+        Thread t = reader;
+        if (t != null) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return -50; // avant l'adaptateur MQTT et le serveur web
+    }
+
+    /** Vue complète : topic relu jusqu'aux end offsets relevés au démarrage (toujours vrai sans app.presence.enabled) */
+    public boolean isReady() {
+        return ready;
+    }
+
+    private void readLoop() {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try (Consumer<String, byte[]> c = consumerSupplier.get()) {
+                consumer = c;
+                List<TopicPartition> partitions = assign(c);
+                if (partitions.isEmpty()) {
+                    sleepBeforeRetry();
+                    continue;
+                }
+                Map<TopicPartition, Long> end = c.endOffsets(partitions);
+                log.info("[PRESENCE] relecture de {} partitions de {} end={}", partitions.size(), presenceTopic, end.values());
+
+                while (running) {
+                    for (ConsumerRecord<String, byte[]> rec : c.poll(Duration.ofMillis(500))) {
+                        onPresence(rec);
+                    }
+                    if (!ready && reached(c, end)) {
+                        ready = true;
+                        caughtUp.countDown();
+                        log.info("[PRESENCE] vue chargée : {} devices", view.size());
+                    }
+                }
+            } catch (WakeupException e) {
+                // stop()
+            } catch (Exception e) {
+                if (!running) break;
+                log.warn("[PRESENCE] lecture du topic {} en échec, nouvelle tentative err={}", presenceTopic, e.toString());
+                sleepBeforeRetry();
+            } finally {
+                consumer = null;
+            }
+        }
+    }
+
+    /** Toutes les partitions du topic, sans consumer group ; vide si le topic n'existe pas (encore) */
+    private List<TopicPartition> assign(Consumer<String, byte[]> c) {
+        List<PartitionInfo> infos = c.partitionsFor(presenceTopic);
+        if (infos == null || infos.isEmpty()) {
+            log.warn("[PRESENCE] topic {} introuvable, nouvelle tentative", presenceTopic);
+            return List.of();
+        }
+        List<TopicPartition> partitions = infos.stream()
+                .map(i -> new TopicPartition(i.topic(), i.partition()))
+                .toList();
+        c.assign(partitions);
+        c.seekToBeginning(partitions);
+        return partitions;
+    }
+
+    private static boolean reached(Consumer<String, byte[]> c, Map<TopicPartition, Long> end) {
+        for (Map.Entry<TopicPartition, Long> e : end.entrySet()) {
+            if (c.position(e.getKey()) < e.getValue()) return false;
+        }
+        return true;
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void onPresence(ConsumerRecord<String, byte[]> rec) {
+        if (rec.value() == null) return;
+        try {
+            // binaire depuis wire-schema ; JSON pour les events publiés avant (conservés par la compaction)
+            PresenceEvent ev = WireCodec.isWire(rec.value())
+                    ? WireCodec.decodePresence(rec.value())
+                    : om.readValue(rec.value(), PresenceEvent.class);
+            PresenceEvent before = view.get(ev.deviceId());
+            PresenceEvent after = apply(ev);
+            // nos propres events reviennent aussi : état déjà appliqué => pas de transition
+            if (after == ev && (before == null || before.connected() != ev.connected())) {
+                remoteTransitionListener.accept(ev.deviceId(), ev.connected());
+            }
+        } catch (Exception e) {
+            log.warn("[PRESENCE] event illisible key={} err={}", rec.key(), e.getMessage());
+        }
+    }
+
+    private PresenceEvent apply(PresenceEvent ev) {
+        // last-writer-wins sur le timestamp : l'ordre d'arrivée entre réplicas n'importe pas
+        return view.merge(ev.deviceId(), ev, (old, nw) -> nw.timestamp() >= old.timestamp() ? nw : old);
+    }
+
+    /* ================== Lectures (mémoire locale) ================== */
+
+    public boolean isConnected(String deviceId) {
+        PresenceEvent ev = view.get(deviceId);
+        return ev != null && ev.connected();
+    }
+
+    /** null si le device n'a jamais été vu */
+    public Boolean findConnected(String deviceId) {
+        PresenceEvent ev = view.get(deviceId);
+        return ev == null ? null : ev.connected();
+    }
+
+    public String getMqttStatus(String deviceId) {
+        PresenceEvent ev = view.get(deviceId);
+        return ev != null ? ev.mqttStatus() : "unknown";
+    }
+
+    /** Copie modifiable deviceId -> connected */
+    public Map<String, Boolean> getAllStatuses() {
+        Map<String, Boolean> out = new HashMap<>();
+        view.forEach((id, ev) -> out.put(id, ev.connected()));
+        return out;
+    }
+}
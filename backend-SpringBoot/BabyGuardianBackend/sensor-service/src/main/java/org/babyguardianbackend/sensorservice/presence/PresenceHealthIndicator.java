@@ -0,0 +1,25 @@
+package org.babyguardianbackend.sensorservice.presence;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Health "presence" : OUT_OF_SERVICE tant que le topic de présence n'a pas été relu jusqu'au bout.
+ * Incluse dans le groupe readiness (application.properties) : le réplica ne reçoit pas de trafic
+ * avant d'avoir la vue complète des devices.
+ */
+@Component
+@RequiredArgsConstructor
+public class PresenceHealthIndicator implements HealthIndicator {
+
+    private final DevicePresenceService presence;
+
+    @Override
+    public Health health() {
+        return (presence.isReady() ? Health.up() : Health.outOfService())
+                .withDetail("devices", presence.getAllStatuses().size())
+                .build();
+    }
+}
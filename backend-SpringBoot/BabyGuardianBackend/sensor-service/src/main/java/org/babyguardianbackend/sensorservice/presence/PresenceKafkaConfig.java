@@ -0,0 +1,22 @@
+package org.babyguardianbackend.sensorservice.presence;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+
+@Configuration
+@ConditionalOnProperty(name = "app.presence.enabled", havingValue = "true")
+public class PresenceKafkaConfig {
+
+    // log-compacted : chaque réplica reconstruit la vue complète en relisant le topic au démarrage
+    @Bean
+    public NewTopic presenceTopic(@Value("${app.kafka.topic.presence:iot.device.presence}") String topic) {
+        return TopicBuilder.name(topic)
+                .partitions(3)
+                .compact()
+                .build();
+    }
+}
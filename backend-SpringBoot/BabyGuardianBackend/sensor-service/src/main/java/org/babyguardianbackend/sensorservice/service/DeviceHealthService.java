@@ -2,10 +2,9 @@ package org.babyguardianbackend.sensorservice.service;
 
 import lombok.RequiredArgsConstructor;
 import org.babyguardianbackend.sensorservice.dao.DeviceRepository;
-import org.babyguardianbackend.sensorservice.dao.SensorReadingRepository;
 import org.babyguardianbackend.sensorservice.entities.Device;
-import org.babyguardianbackend.sensorservice.entities.SensorReading;
 import org.babyguardianbackend.sensorservice.mqttConfig.MqttInboundHandler;
+import org.babyguardianbackend.sensorservice.service.RecentReadingsStore.RecentReading;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -20,14 +19,17 @@ public class DeviceHealthService {
     private static final long DATA_FRESH_THRESHOLD_SEC = 30; // 30s
 
     private final DeviceRepository deviceRepo;
-    private final SensorReadingRepository readingRepo;
+    private final DeviceRegistry deviceRegistry;
+    private final RecentReadingsService recentReadings;
     private final MqttInboundHandler mqttHandler;
 
     /** PathVariable = deviceId logique "esp32-<MAC>" */
     public Map<String, Object> checkDeviceConnectionByDeviceId(String deviceId) {
         Map<String, Object> result = new HashMap<>();
 
-        Device device = deviceRepo.findByDeviceId(deviceId).orElse(null);
+        Device device = deviceRegistry.find(deviceId)
+                .or(() -> deviceRepo.findByDeviceId(deviceId))
+                .orElse(null);
         if (device == null) {
             result.put("exists", false);
             result.put("connected", false);
@@ -35,9 +37,8 @@ public class DeviceHealthService {
             return result;
         }
 
-        SensorReading lastReading = readingRepo
-                .findFirstByDevice_DeviceIdOrderByCreatedAtDesc(deviceId)
-                .orElse(null);
+        // mémoire d'abord : pas de requête SQL tant que le device envoie des mesures
+        RecentReading lastReading = recentReadings.latest(deviceId).orElse(null);
 
         if (lastReading == null) {
             result.put("exists", true);
@@ -49,7 +50,7 @@ public class DeviceHealthService {
             return result;
         }
 
-        long seconds = ChronoUnit.SECONDS.between(lastReading.getCreatedAt(), LocalDateTime.now());
+        long seconds = ChronoUnit.SECONDS.between(lastReading.createdAt(), LocalDateTime.now());
         boolean dataFresh = seconds <= DATA_FRESH_THRESHOLD_SEC;
 
         String mqttStatus = mqttHandler.getStatus(deviceId); // ONLINE | OFFLINE | unknown
@@ -61,15 +62,15 @@ public class DeviceHealthService {
         result.put("connected", isConnected);
         result.put("deviceId", deviceId);
         result.put("macAddress", device.getMacAddress());
-        result.put("lastSeen", lastReading.getCreatedAt());
+        result.put("lastSeen", lastReading.createdAt());
         result.put("secondsSinceLastReading", seconds);
         result.put("dataFresh", dataFresh);
         result.put("mqttStatus", mqttStatus);
         result.put("lastReading", Map.of(
-                "heartRate", lastReading.getHeartRate() == null ? 0 : lastReading.getHeartRate(),
-                "spo2", lastReading.getSpo2() == null ? 0 : lastReading.getSpo2(),
-                "temperature", lastReading.getTemp() == null ? 0 : lastReading.getTemp(),
-                "finger", lastReading.getFinger() != null && lastReading.getFinger()
+                "heartRate", lastReading.heartRate(),
+                "spo2", lastReading.spo2(),
+                "temperature", lastReading.temp(),
+                "finger", lastReading.finger() != null && lastReading.finger()
         ));
         return result;
     }
@@ -0,0 +1,18 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/** Interner partagé (module wire-schema) : une instance pour tout le service, suivie en métrique */
+@Configuration
+public class DeviceInterningConfig {
+
+    @Bean
+    public DeviceIdInterner deviceIdInterner(MeterRegistry meters) {
+        DeviceIdInterner interner = new DeviceIdInterner();
+        meters.gauge("sensor.devices.interned", interner, DeviceIdInterner::size);
+        return interner;
+    }
+}
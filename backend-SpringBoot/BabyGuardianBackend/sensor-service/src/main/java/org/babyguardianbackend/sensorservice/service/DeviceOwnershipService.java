@@ -6,6 +6,7 @@ import org.babyguardianbackend.sensorservice.dao.DeviceRepository;
 import org.babyguardianbackend.sensorservice.entities.Device;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.NoSuchElementException;
@@ -18,18 +19,23 @@ import java.util.Set;
 public class DeviceOwnershipService {
 
     private final DeviceRepository deviceRepo;
+    private final DeviceRegistry deviceRegistry;
 
     /* ========= Méthodes attendues par AlertsController ========= */
 
-    /** Liste (Set) des deviceId appartenant à l’utilisateur */
-    @Transactional(readOnly = true)
+    /** Liste (Set) des deviceId appartenant à l’utilisateur (index mémoire, base tant qu'il n'est pas chargé) */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Set<String> findDeviceIdsByOwner(String userId) {
+        if (deviceRegistry.isLoaded()) return deviceRegistry.findDeviceIdsByOwner(userId);
         return deviceRepo.findDeviceIdsByOwnerUserId(userId);
     }
 
     /** true si l’utilisateur est propriétaire du deviceId donné */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean isOwner(String userId, String deviceId) {
+        if (deviceRegistry.isLoaded()) {
+            return deviceRegistry.findOwner(deviceId).map(userId::equals).orElse(false);
+        }
         return deviceRepo.findByDeviceId(deviceId)
                 .map(d -> Objects.equals(userId, d.getOwnerUserId()))
                 .orElse(false);
@@ -47,7 +53,9 @@ public class DeviceOwnershipService {
             throw new IllegalStateException("Device déjà attribué à un autre utilisateur");
         }
         d.setOwnerUserId(userId);
-        return deviceRepo.save(d);
+        Device saved = deviceRepo.save(d);
+        deviceRegistry.putAfterCommit(saved);
+        return saved;
     }
 
     /** L’app (mobile) détache l’ownership */
@@ -59,7 +67,9 @@ public class DeviceOwnershipService {
             throw new IllegalStateException("Vous n'êtes pas propriétaire de ce device");
         }
         d.setOwnerUserId(null);
-        return deviceRepo.save(d);
+        Device saved = deviceRepo.save(d);
+        deviceRegistry.putAfterCommit(saved);
+        return saved;
     }
 
     /** Synchronisation côté device (topic MQTT app/owner/<deviceId>) */
@@ -68,9 +78,11 @@ public class DeviceOwnershipService {
                 .orElseGet(() -> {
                     Device nd = new Device();
                     nd.setDeviceId(deviceId);
+                    nd.setMacAddress(DeviceRegistry.macFromDeviceId(deviceId)); // colonne non nulle
                     return nd;
                 });
+        if (Objects.equals(d.getOwnerUserId(), ownerUserId)) return; // retained MQTT rejoué : rien à écrire
         d.setOwnerUserId(ownerUserId);
-        deviceRepo.save(d);
+        deviceRegistry.putAfterCommit(deviceRepo.save(d));
     }
 }
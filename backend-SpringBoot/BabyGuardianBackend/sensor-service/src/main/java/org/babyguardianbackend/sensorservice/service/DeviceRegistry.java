@@ -0,0 +1,245 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.babyguardianbackend.sensorservice.dao.DeviceRepository;
+import org.babyguardianbackend.sensorservice.entities.Device;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.babyguardianbackend.wire.device.DeviceStateTable;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Cache mémoire des devices connus (index DeviceIdInterner -> Device).
+ * - chargé depuis la table devices au démarrage
+ * - un device inconnu est créé via INSERT ... ON CONFLICT DO NOTHING (pas de course sur uk_devices_device_id)
+ * - en régime établi, l'ingestion ne fait plus aucune lecture DB pour obtenir le Device
+ * - index inverse ownerUserId -> deviceIds, tenu à jour par put() (bind/unbind/setOwnerFromDevice)
+ *   et, pour les changements commités par un autre réplica, par applyRemoteOwner() (DeviceOwnershipSync)
+ *
+ * Concurrence : chaque device a un Slot (créé une fois, jamais retiré) ; toute mise à jour du device
+ * se fait sous le moniteur de son slot, et l'index devicesByOwner n'est modifié que sous ce moniteur.
+ * Ordre de verrous unique slot -> devicesByOwner (register() compris, qui garde le moniteur pendant
+ * l'INSERT : un seul enregistrement par device, sans bloquer les autres devices).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceRegistry {
+
+    private static final String INSERT_IF_ABSENT_SQL =
+            "insert into devices (id, device_id, mac_address, version, registered_at) " +
+            "values (?, ?, ?, 0, now()) on conflict do nothing";
+
+    private final DeviceRepository deviceRepo;
+    private final JdbcTemplate jdbc;
+    private final DeviceIdInterner interner;
+
+    private final DeviceStateTable<Slot> devices = new DeviceStateTable<>();
+    private final ConcurrentMap<String, Set<String>> devicesByOwner = new ConcurrentHashMap<>();
+
+    // false tant que le chargement initial n'est pas terminé : les lectures d'ownership passent par la base
+    private volatile boolean loaded;
+
+    // notifié après commit d'un changement d'ownership fait par ce réplica (diffusion aux autres)
+    private volatile Consumer<Device> ownershipListener = d -> {};
+
+    public void onOwnershipCommitted(Consumer<Device> listener) {
+        this.ownershipListener = listener;
+    }
+
+    /** Device d'un index ; lectures sans verrou, écritures sous le moniteur du slot */
+    private static final class Slot {
+        volatile Device device;
+    }
+
+    private Slot slot(int device) {
+        return devices.computeIfAbsent(device, k -> new Slot());
+    }
+
+    // avant DeviceOwnershipSync : la relecture du topic ne garde que les versions plus récentes que ce chargement
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        int[] count = {0};
+        // un device déjà mis à jour (bind commité, premier message) est plus récent que l'instantané findAll
+        deviceRepo.findAll().forEach(d -> {
+            int device = interner.id(d.getDeviceId());
+            if (device == DeviceIdInterner.UNKNOWN) return;
+            Slot slot = slot(device);
+            synchronized (slot) {
+                if (slot.device != null) return;
+                reindexOwner(interner.name(device), null, d.getOwnerUserId());
+                slot.device = d;
+            }
+            count[0]++;
+        });
+        loaded = true;
+        log.info("[REGISTRY] {} devices chargés, {} propriétaires", count[0], devicesByOwner.size());
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Device connu ou créé à la volée (appelé à chaque mesure) */
+    public Device getOrRegister(String deviceId) {
+        int device = interner.id(deviceId);
+        if (device == DeviceIdInterner.UNKNOWN) throw new IllegalArgumentException("deviceId vide");
+        Slot slot = slot(device);
+        Device d = slot.device;
+        if (d != null) return d;
+        synchronized (slot) {
+            if (slot.device == null) slot.device = register(interner.name(device));
+            return slot.device;
+        }
+    }
+
+    /** Lecture seule (requêtes HTTP) : n'enregistre jamais un id inconnu dans l'interner */
+    public Optional<Device> find(String deviceId) {
+        return Optional.ofNullable(get(deviceId));
+    }
+
+    private Device get(String deviceId) {
+        Slot slot = devices.get(interner.find(deviceId));
+        return slot != null ? slot.device : null;
+    }
+
+    /** Write-through après une modification du device (ownership...) */
+    public void put(Device d) {
+        if (d == null || d.getDeviceId() == null) return;
+        int device = interner.id(d.getDeviceId());
+        if (device == DeviceIdInterner.UNKNOWN) return;
+        Slot slot = slot(device);
+        synchronized (slot) {
+            Device prev = slot.device;
+            reindexOwner(interner.name(device), prev != null ? prev.getOwnerUserId() : null, d.getOwnerUserId());
+            slot.device = d;
+        }
+    }
+
+    /**
+     * put() différé au commit de la transaction courante : un rollback (ex: conflit @Version)
+     * ne laisse pas dans l'index un ownership jamais écrit en base. Sans transaction : put() immédiat.
+     */
+    public void putAfterCommit(Device d) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed(d);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committed(d);
+            }
+        });
+    }
+
+    private void committed(Device d) {
+        put(d);
+        ownershipListener.accept(d);
+    }
+
+    /**
+     * Changement d'ownership commité par un autre réplica : appliqué seulement s'il est plus récent
+     * (@Version) que l'état local, ce qui rend l'ordre d'arrivée et nos propres events sans effet.
+     * Device encore inconnu ici : relu en base (l'event n'est publié qu'après commit).
+     */
+    public boolean applyRemoteOwner(String deviceId, String ownerUserId, long version) {
+        int device = interner.id(deviceId);
+        if (device == DeviceIdInterner.UNKNOWN) return false;
+        Slot slot = slot(device);
+        synchronized (slot) {
+            Device cur = slot.device;
+            Device next;
+            if (cur != null) {
+                if (cur.getVersion() != null && cur.getVersion() >= version) return false;
+                // copie : les lecteurs sans verrou ne voient jamais un Device à moitié modifié
+                next = copyOf(cur);
+                next.setOwnerUserId(ownerUserId);
+                next.setVersion(version);
+            } else {
+                next = deviceRepo.findByDeviceId(interner.name(device)).orElse(null);
+                if (next == null) return false;
+            }
+            reindexOwner(interner.name(device), cur != null ? cur.getOwnerUserId() : null, next.getOwnerUserId());
+            slot.device = next;
+            return true;
+        }
+    }
+
+    private static Device copyOf(Device d) {
+        Device c = new Device();
+        c.setId(d.getId());
+        c.setDeviceId(d.getDeviceId());
+        c.setMacAddress(d.getMacAddress());
+        c.setVersion(d.getVersion());
+        c.setOwnerUserId(d.getOwnerUserId());
+        c.setRegisteredAt(d.getRegisteredAt());
+        return c;
+    }
+
+    /* ================== Ownership (lectures mémoire O(1)) ================== */
+
+    public Optional<String> findOwner(String deviceId) {
+        Device d = get(deviceId);
+        return d == null ? Optional.empty() : Optional.ofNullable(d.getOwnerUserId());
+    }
+
+    /** Vue non modifiable des devices de l'utilisateur */
+    public Set<String> findDeviceIdsByOwner(String userId) {
+        Set<String> ids = devicesByOwner.get(userId);
+        return ids == null ? Set.of() : Collections.unmodifiableSet(ids);
+    }
+
+    private void reindexOwner(String deviceId, String oldOwner, String newOwner) {
+        if (Objects.equals(oldOwner, newOwner)) return;
+        if (oldOwner != null && !oldOwner.isBlank()) {
+            devicesByOwner.computeIfPresent(oldOwner, (k, set) -> {
+                set.remove(deviceId);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        if (newOwner != null && !newOwner.isBlank()) {
+            devicesByOwner.computeIfAbsent(newOwner, k -> ConcurrentHashMap.newKeySet()).add(deviceId);
+        }
+    }
+
+    private Device register(String deviceId) {
+        int inserted = jdbc.update(INSERT_IF_ABSENT_SQL, UUID.randomUUID(), deviceId, macFromDeviceId(deviceId));
+        if (inserted > 0) log.info("[REGISTRY] nouveau device {}", deviceId);
+
+        // une seule lecture, au premier message du device
+        Device d = deviceRepo.findByDeviceId(deviceId)
+                .orElseThrow(() -> new IllegalStateException("Device non enregistrable (conflit mac ?): " + deviceId));
+        // ligne déjà présente (ex: créée par un autre réplica) : elle peut avoir un propriétaire
+        // (appelé sous le moniteur du slot : même verrou que put())
+        reindexOwner(deviceId, null, d.getOwnerUserId());
+        return d;
+    }
+
+    static String macFromDeviceId(String deviceId) {
+        int idx = deviceId.indexOf("-");
+        String hex = (idx >= 0 ? deviceId.substring(idx + 1) : deviceId);
+        hex = hex.replace(":", "").trim().toUpperCase();
+        if (hex.length() != 12) return hex;
+
+        return hex.substring(0,2)+":"+hex.substring(2,4)+":"+hex.substring(4,6)+":"+
+                hex.substring(6,8)+":"+hex.substring(8,10)+":"+hex.substring(10,12);
+    }
+}
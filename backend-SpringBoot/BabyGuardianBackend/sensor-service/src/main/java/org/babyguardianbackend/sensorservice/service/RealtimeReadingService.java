@@ -0,0 +1,86 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.babyguardianbackend.sensorservice.entities.SensorReading;
+import org.babyguardianbackend.sensorservice.mqttConfig.MqttGateway;
+import org.babyguardianbackend.sensorservice.mqttConfig.MqttInboundHandler;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure "à la demande" (bouton measure now) avec coalescing :
+ * - les demandes simultanées pour un même device partagent UNE commande MQTT et UNE réponse
+ * - maxAgeMs : renvoie la dernière mesure realtime si elle est assez récente, sans contacter le device
+ */
+@Slf4j
+@Service
+public class RealtimeReadingService {
+
+    private static final long TIMEOUT_SECONDS = 6;
+
+    private final MqttGateway mqttGateway;
+    private final MqttInboundHandler inboundHandler;
+
+    // deviceId -> commande en vol
+    private final ConcurrentMap<String, CompletableFuture<SensorReading>> inflight = new ConcurrentHashMap<>();
+
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter coalesced;
+    private final Counter commands;
+
+    public RealtimeReadingService(MqttGateway mqttGateway, MqttInboundHandler inboundHandler, MeterRegistry meters) {
+        this.mqttGateway = mqttGateway;
+        this.inboundHandler = inboundHandler;
+        this.cacheHits   = meters.counter("sensor.realtime.cache", "result", "hit");
+        this.cacheMisses = meters.counter("sensor.realtime.cache", "result", "miss");
+        this.coalesced   = meters.counter("sensor.realtime.coalesced");
+        this.commands    = meters.counter("sensor.realtime.commands");
+    }
+
+    /** Future complétée avec la mesure, ou null si le device ne répond pas à temps */
+    public CompletableFuture<SensorReading> requestReading(String deviceId, Long maxAgeMs) {
+        String id = deviceId.trim().toLowerCase();
+
+        if (maxAgeMs != null) {
+            MqttInboundHandler.RealtimeSnapshot last = inboundHandler.getLastRealtimeReading(id);
+            if (last != null && System.currentTimeMillis() - last.receivedAtMillis() <= maxAgeMs) {
+                cacheHits.increment();
+                return CompletableFuture.completedFuture(last.reading());
+            }
+            cacheMisses.increment();
+        }
+
+        CompletableFuture<SensorReading> mine = new CompletableFuture<>();
+        CompletableFuture<SensorReading> current = inflight.putIfAbsent(id, mine);
+        if (current != null) {
+            // une commande est déjà en vol : on se greffe dessus
+            coalesced.increment();
+            return current;
+        }
+
+        // waiter enregistré avant la commande pour ne pas rater une réponse rapide
+        inboundHandler.awaitRealtimeReading(id, TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .whenComplete((r, e) -> {
+                    inflight.remove(id, mine);
+                    if (e != null) mine.completeExceptionally(e);
+                    else mine.complete(r);
+                });
+
+        try {
+            mqttGateway.sendToMqtt("read", "iot/commands/" + id);
+            commands.increment();
+        } catch (Exception e) {
+            log.warn("[REALTIME] envoi commande échoué device={} err={}", id, e.toString());
+            inflight.remove(id, mine);
+            mine.completeExceptionally(e);
+        }
+        return mine;
+    }
+}
@@ -0,0 +1,94 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.babyguardianbackend.sensorservice.dao.SensorReadingRepository;
+import org.babyguardianbackend.sensorservice.entities.SensorReading;
+import org.babyguardianbackend.sensorservice.service.RecentReadingsStore.RecentReading;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Lecture des mesures récentes : mémoire d'abord (RecentReadingsStore),
+ * base uniquement pour la partie de la plage plus ancienne que l'anneau.
+ * Plage bornée (app.recent.max-window-minutes) et réponse limitée à app.recent.max-results mesures :
+ * pour la suite, rappeler avec from = createdAt de la dernière mesure reçue.
+ */
+@Service
+@RequiredArgsConstructor
+public class RecentReadingsService {
+
+    private final RecentReadingsStore store;
+    private final SensorReadingRepository readingRepo;
+
+    @Value("${app.recent.max-window-minutes:1440}")
+    private long maxWindowMinutes;
+
+    @Value("${app.recent.max-results:7200}")
+    private int maxResults;
+
+    public Optional<RecentReading> latest(String deviceId) {
+        Optional<RecentReading> hot = store.latest(deviceId);
+        if (hot.isPresent()) return hot;
+        // rien en mémoire (redémarrage, device silencieux) => dernière ligne en base
+        return readingRepo.findFirstByDevice_DeviceIdOrderByCreatedAtDesc(deviceId).map(r -> fromEntity(deviceId, r));
+    }
+
+    /**
+     * Au plus max-results mesures de [from, to], de la plus ancienne à la plus récente.
+     * @throws IllegalArgumentException plage inversée ou plus large que max-window-minutes
+     */
+    public List<RecentReading> range(String deviceId, LocalDateTime from, LocalDateTime to) {
+        if (from.isAfter(to)) throw new IllegalArgumentException("from postérieur à to");
+        if (Duration.between(from, to).toMinutes() > maxWindowMinutes) {
+            throw new IllegalArgumentException("plage limitée à " + maxWindowMinutes + " minutes");
+        }
+
+        long fromMs = toMillis(from);
+        long toMs = toMillis(to);
+        long coveredSince = store.coveredSinceMillis(deviceId);
+
+        if (fromMs >= coveredSince) return store.range(deviceId, fromMs, toMs, maxResults);
+
+        // début de plage hors mémoire : base pour [from, coveredSince[, mémoire pour le reste
+        List<RecentReading> out = new ArrayList<>();
+        LocalDateTime dbTo = coveredSince == Long.MAX_VALUE ? to : toLocal(coveredSince - 1);
+        for (SensorReading r : readingRepo.findByDevice_DeviceIdAndCreatedAtBetweenOrderByCreatedAtAsc(
+                deviceId, from, dbTo, Limit.of(maxResults))) {
+            out.add(fromEntity(deviceId, r));
+        }
+        int remaining = maxResults - out.size();
+        if (coveredSince != Long.MAX_VALUE && remaining > 0) {
+            out.addAll(store.range(deviceId, coveredSince, toMs, remaining));
+        }
+        return out;
+    }
+
+    private static RecentReading fromEntity(String deviceId, SensorReading r) {
+        return new RecentReading(
+                deviceId,
+                r.getHeartRate() == null ? 0 : r.getHeartRate(),
+                r.getSpo2() == null ? 0 : r.getSpo2(),
+                r.getTemp() == null ? 0 : r.getTemp(),
+                r.getFinger(),
+                r.getCreatedAt(),
+                r.getMeasuredAt()
+        );
+    }
+
+    private static long toMillis(LocalDateTime t) {
+        return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocal(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,133 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.babyguardianbackend.wire.device.DeviceStateTable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Dernières mesures de chaque device, en mémoire (alimenté à l'ingestion).
+ * Stockage en colonnes de types primitifs dans un anneau de app.recent.capacity mesures :
+ *
+ *   createdAt long (8) + measuredAt long (8) + hr short (2) + spo2 byte (1) + temp short en 1/100 °C (2) + finger byte (1)
+ *   = 22 octets / mesure  =>  capacité 7200 (2 h à 1 Hz) ≈ 155 Ko par device actif
+ *
+ * L'anneau n'est alloué qu'à la première mesure du device.
+ */
+@Component
+public class RecentReadingsStore {
+
+    public record RecentReading(
+            String deviceId,
+            int heartRate,
+            int spo2,
+            double temp,
+            Boolean finger,
+            LocalDateTime createdAt,
+            LocalDateTime measuredAt
+    ) {}
+
+    @Value("${app.recent.capacity:7200}")
+    private int capacity;
+
+    private final DeviceIdInterner interner;
+    private final DeviceStateTable<Ring> rings = new DeviceStateTable<>(); // index = DeviceIdInterner
+
+    public RecentReadingsStore(DeviceIdInterner interner) {
+        this.interner = interner;
+    }
+
+    public void record(int device, long createdAtMillis, long measuredAtMillis,
+                       int hr, int spo2, double temp, Boolean finger) {
+        Ring r = rings.computeIfAbsent(device, k -> new Ring(Math.max(1, capacity)));
+        synchronized (r) {
+            int i = r.head;
+            r.createdAt[i] = createdAtMillis;
+            r.measuredAt[i] = measuredAtMillis;
+            r.hr[i] = (short) hr;
+            r.spo2[i] = (byte) spo2;
+            r.tempCenti[i] = (short) Math.round(temp * 100);
+            r.finger[i] = finger == null ? -1 : (byte) (finger ? 1 : 0);
+            r.head = (i + 1) % r.size;
+            if (r.count < r.size) r.count++;
+        }
+    }
+
+    public Optional<RecentReading> latest(String deviceId) {
+        Ring r = rings.get(interner.find(deviceId));
+        if (r == null) return Optional.empty();
+        synchronized (r) {
+            if (r.count == 0) return Optional.empty();
+            return Optional.of(r.read(deviceId, Math.floorMod(r.head - 1, r.size)));
+        }
+    }
+
+    /**
+     * Début (epoch ms, createdAt) de la période couverte en mémoire pour ce device, ou Long.MAX_VALUE si vide.
+     * Avant cette date, il faut lire la base.
+     */
+    public long coveredSinceMillis(String deviceId) {
+        Ring r = rings.get(interner.find(deviceId));
+        if (r == null) return Long.MAX_VALUE;
+        synchronized (r) {
+            return r.count == 0 ? Long.MAX_VALUE : r.createdAt[r.oldest()];
+        }
+    }
+
+    /** Au plus limit mesures avec fromMillis <= createdAt <= toMillis, de la plus ancienne à la plus récente */
+    public List<RecentReading> range(String deviceId, long fromMillis, long toMillis, int limit) {
+        Ring r = rings.get(interner.find(deviceId));
+        if (r == null) return List.of();
+        List<RecentReading> out = new ArrayList<>();
+        synchronized (r) {
+            for (int n = 0, i = r.oldest(); n < r.count; n++, i = (i + 1) % r.size) {
+                long t = r.createdAt[i];
+                if (t < fromMillis) continue;
+                if (t > toMillis || out.size() >= limit) break;
+                out.add(r.read(deviceId, i));
+            }
+        }
+        return out;
+    }
+
+    private static final class Ring {
+        final int size;
+        final long[] createdAt, measuredAt;
+        final short[] hr;
+        final byte[] spo2;
+        final short[] tempCenti; // 1/100 °C
+        final byte[] finger; // -1 absent | 0 | 1
+        int head, count;
+
+        Ring(int size) {
+            this.size = size;
+            createdAt = new long[size];
+            measuredAt = new long[size];
+            hr = new short[size];
+            spo2 = new byte[size];
+            tempCenti = new short[size];
+            finger = new byte[size];
+        }
+
+        int oldest() {
+            return count < size ? 0 : head;
+        }
+
+        RecentReading read(String deviceId, int i) {
+            return new RecentReading(deviceId, hr[i], Byte.toUnsignedInt(spo2[i]), tempCenti[i] / 100.0,
+                    finger[i] < 0 ? null : finger[i] == 1,
+                    toLocal(createdAt[i]), toLocal(measuredAt[i]));
+        }
+    }
+
+    private static LocalDateTime toLocal(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,56 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.babyguardianbackend.sensorservice.cleaning.VitalClean;
+import org.babyguardianbackend.sensorservice.webSocket.handler.VitalWsHandler;
+import org.babyguardianbackend.wire.VitalsEvent;
+import org.babyguardianbackend.wire.WireCodec;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Diffusion d'une mesure nettoyée : un encodage par format, partagé par tous les consommateurs de ce format.
+ * - Kafka reçoit le binaire compact de wire-schema (WireCodec), lu tel quel par alert-service
+ * - les sessions WebSocket reçoivent toutes la même TextMessage JSON (immuable), éventuellement conflatée ;
+ *   ce JSON n'est produit que s'il y a au moins un abonné
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VitalsFanout {
+
+    private final ObjectMapper om;
+    private final VitalsProducer vitalsProducer;
+    private final VitalWsHandler wsHandler;
+
+    /** device = index DeviceIdInterner de deviceId (routage WebSocket) */
+    public void publish(String deviceId, int device, VitalClean clean) {
+        byte[] event;
+        try {
+            event = WireCodec.encode(new VitalsEvent(
+                    clean.deviceId(), clean.temperatureC(), clean.spo2(), clean.heartRate(),
+                    clean.timestamp(), clean.quality()));
+        } catch (IllegalArgumentException e) {
+            // seulement possible en mode TEST (pas de bornes) : pas d'event Kafka plutôt qu'une valeur tronquée
+            log.warn("[KAFKA] vitals non publiées device={} err={}", deviceId, e.getMessage());
+            event = null;
+        }
+        if (event != null) vitalsProducer.sendCleanVitals(deviceId, event);
+
+        if (wsHandler.hasSubscribers(device)) {
+            byte[] json = encode(clean); // ne plus modifier : buffer partagé
+            wsHandler.sendToDevice(device, clean, new TextMessage(json));
+        }
+    }
+
+    private byte[] encode(VitalClean clean) {
+        try {
+            return om.writeValueAsBytes(clean);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize VitalClean to JSON", e);
+        }
+    }
+}
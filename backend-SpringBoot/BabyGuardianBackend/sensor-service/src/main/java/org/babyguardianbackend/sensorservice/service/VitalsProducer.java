@@ -1,29 +1,216 @@
 package org.babyguardianbackend.sensorservice.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
-import org.babyguardianbackend.sensorservice.cleaning.VitalClean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.utils.Utils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaProducerException;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publication des mesures nettoyées sur Kafka.
+ * - profil débit (app.kafka.vitals.*) : idempotence, linger/batch, compression, valeurs byte[]
+ * - suivi asynchrone de chaque envoi : latence et erreurs par partition
+ * - envoi en échec (après les retries du producteur) => spool disque, rejoué quand le broker répond
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class VitalsProducer {
 
-    private final ObjectMapper om;
-    private final KafkaTemplate<String, String> kafka;
+    // valeur = VitalsEvent déjà encodé (WireCodec) par VitalsFanout : envoyé tel quel (ByteArraySerializer)
+    private final KafkaTemplate<String, byte[]> kafka;
+    private final VitalsProducerProperties p;
+    private final MeterRegistry meters;
+    private final VitalsSpool spool; // null si désactivé
 
-    @Value("${app.kafka.topic.vitalsCleaned:iot.vitals.cleaned}")
+    @Value("${app.kafka.topic.vitals-cleaned:iot.vitals.cleaned}")
     private String vitalsCleanedTopic;
 
-    public void sendCleanVitals(String deviceId, VitalClean vitalClean) {
+    private final ConcurrentMap<Integer, Timer> sendLatency = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> sendErrors = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter spooled;
+    private final Counter dropped;
+    private final Counter replayed;
+    private final Counter tornBytes;
+
+    // thread dédié : partitionsFor() et la relecture du spool peuvent bloquer (max-block-ms, disque),
+    // ils ne doivent pas retenir le scheduler partagé (flush reorder, rollups, partitions...)
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "kafka-vitals-spool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // nombre de partitions du topic, rafraîchi hors thread réseau (partition d'un envoi en échec)
+    private volatile int partitionCount;
+    private volatile long lastFailureMs;
+
+    public VitalsProducer(ProducerFactory<String, byte[]> producerFactory,
+                          VitalsProducerProperties p,
+                          MeterRegistry meters) {
+        this.kafka = new KafkaTemplate<>(producerFactory, overrides(p));
+        this.p = p;
+        this.meters = meters;
+        this.spool = p.getSpool().isEnabled()
+                ? new VitalsSpool(Path.of(p.getSpool().getDir()), p.getSpool().getMaxBytes())
+                : null;
+
+        Gauge.builder("sensor.kafka.vitals.inflight", inFlight, AtomicInteger::get)
+                .description("Envois Kafka en attente d'acquittement")
+                .register(meters);
+        if (spool != null) {
+            Gauge.builder("sensor.kafka.vitals.spool.bytes", spool, VitalsSpool::size)
+                    .description("Taille du spool disque des envois en échec")
+                    .register(meters);
+        }
+        spooled  = meters.counter("sensor.kafka.vitals.fallback", "result", "spooled");
+        dropped  = meters.counter("sensor.kafka.vitals.fallback", "result", "dropped");
+        replayed = meters.counter("sensor.kafka.vitals.fallback", "result", "replayed");
+        tornBytes = meters.counter("sensor.kafka.vitals.spool.torn.bytes");
+    }
+
+    @PostConstruct
+    void start() {
+        long interval = p.getSpool().getReplayIntervalMs();
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                maintain();
+            } catch (RuntimeException e) {
+                // une exception annulerait les exécutions suivantes
+                log.error("[KAFKA] maintenance spool échouée: {}", e.toString());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static Map<String, Object> overrides(VitalsProducerProperties p) {
+        Map<String, Object> m = new HashMap<>();
+        m.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        m.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, p.isIdempotence());
+        if (p.isIdempotence()) {
+            m.put(ProducerConfig.ACKS_CONFIG, "all");
+            m.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        }
+        m.put(ProducerConfig.LINGER_MS_CONFIG, p.getLingerMs());
+        m.put(ProducerConfig.BATCH_SIZE_CONFIG, p.getBatchSize());
+        m.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, p.getCompression());
+        m.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, p.getDeliveryTimeoutMs());
+        m.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, p.getMaxBlockMs());
+        return m;
+    }
+
+    public void sendCleanVitals(String deviceId, byte[] encoded) {
+        send(deviceId, encoded); // key=deviceId ✅
+    }
+
+    private void send(String key, byte[] value) {
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        try {
+            // callback exécuté sur le thread réseau du producteur : aucun appel bloquant ici
+            kafka.send(vitalsCleanedTopic, key, value).whenComplete((result, ex) -> {
+                inFlight.decrementAndGet();
+                if (ex == null) {
+                    latency(result.getRecordMetadata().partition())
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                } else {
+                    onFailure(key, value, ex);
+                }
+            });
+        } catch (RuntimeException e) {
+            // buffer plein au-delà de max-block-ms, sérialisation...
+            inFlight.decrementAndGet();
+            onFailure(key, value, e);
+        }
+    }
+
+    private void onFailure(String key, byte[] value, Throwable ex) {
+        lastFailureMs = System.currentTimeMillis();
+        Throwable cause = ex;
+        while ((cause instanceof CompletionException || cause instanceof KafkaProducerException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        errors(partitionOf(key), cause.getClass().getSimpleName()).increment();
+
+        if (spool != null && spool.append(key, value)) {
+            spooled.increment();
+        } else {
+            dropped.increment();
+            log.warn("[KAFKA] mesure perdue device={} err={}", key, cause.toString());
+        }
+    }
+
+    /**
+     * Rafraîchit le nombre de partitions et rejoue le spool quand le broker semble joignable
+     * (métadonnées obtenues et aucun échec depuis un intervalle complet).
+     */
+    void maintain() {
+        boolean reachable;
         try {
-            String json = om.writeValueAsString(vitalClean);
-            kafka.send(vitalsCleanedTopic, deviceId, json); // key=deviceId ✅
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Failed to serialize VitalClean to JSON", e);
+            partitionCount = kafka.partitionsFor(vitalsCleanedTopic).size();
+            reachable = true;
+        } catch (RuntimeException e) {
+            reachable = false;
         }
+
+        if (spool == null || spool.size() == 0 || !reachable) return;
+        if (System.currentTimeMillis() - lastFailureMs < p.getSpool().getReplayIntervalMs()) return;
+
+        log.info("[KAFKA] replay du spool ({} octets)", spool.size());
+        VitalsSpool.ReplayResult r = spool.replay((key, value) -> {
+            replayed.increment();
+            send(key, value);
+        });
+        tornBytes.increment(r.tornBytes());
+        if (r.quarantined() > 0) log.error("[KAFKA] {} fichier(s) spool illisible(s) renommé(s) en .bad", r.quarantined());
+    }
+
+    @PreDestroy
+    void close() {
+        maintenance.shutdownNow();
+        // attend les acquittements en cours : les échecs finaux passent encore par le spool
+        kafka.flush();
+        if (spool != null) spool.close();
+    }
+
+    private String partitionOf(String key) {
+        int n = partitionCount;
+        if (key == null || n <= 0) return "unknown";
+        // même calcul que le partitionneur par défaut pour une clé non nulle
+        return Integer.toString(Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % n);
+    }
+
+    private Timer latency(int partition) {
+        return sendLatency.computeIfAbsent(partition, k -> Timer.builder("sensor.kafka.vitals.send")
+                .description("Latence d'acquittement Kafka par partition")
+                .tag("partition", Integer.toString(k))
+                .register(meters));
+    }
+
+    private Counter errors(String partition, String reason) {
+        return sendErrors.computeIfAbsent(partition + '|' + reason, k -> meters.counter(
+                "sensor.kafka.vitals.errors", "partition", partition, "reason", reason));
     }
 }
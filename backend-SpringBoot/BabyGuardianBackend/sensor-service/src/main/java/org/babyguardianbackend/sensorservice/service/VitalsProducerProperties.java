@@ -0,0 +1,41 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Profil producteur du topic des mesures nettoyées (débit élevé, pas de perte silencieuse).
+ * Appliqué en surcharge du ProducerFactory global, uniquement pour VitalsProducer.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.kafka.vitals")
+public class VitalsProducerProperties {
+
+    // idempotence (acks=all, retries illimités dans delivery-timeout-ms) : pas de doublon sur retry
+    private boolean idempotence = true;
+
+    // attente max avant envoi d'un batch partiel / taille max d'un batch par partition
+    private int lingerMs = 10;
+    private int batchSize = 64 * 1024;
+
+    // none | lz4 | zstd | snappy | gzip
+    private String compression = "lz4";
+
+    // délai total (retries compris) avant qu'un envoi soit déclaré en échec (>= linger-ms + request.timeout.ms)
+    private int deliveryTimeoutMs = 60_000;
+
+    // buffer producteur plein / métadonnées absentes : attente max du thread d'ingestion avant spool
+    private int maxBlockMs = 1_000;
+
+    // envois en échec écrits sur disque puis rejoués quand le broker répond à nouveau
+    private Spool spool = new Spool();
+
+    @Data
+    public static class Spool {
+        private boolean enabled = true;
+        private String dir = "./spool/vitals";
+        // au-delà, les nouveaux échecs sont comptés et abandonnés
+        private long maxBytes = 256L * 1024 * 1024;
+        private long replayIntervalMs = 10_000;
+    }
+}
@@ -0,0 +1,203 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Spool disque des mesures que Kafka n'a pas acceptées.
+ * Format : suite de [short len clé][clé UTF-8][int len valeur][valeur], un fichier par segment
+ * (fermé au replay ou au-delà de SEGMENT_BYTES). Seuls les fichiers fermés sont relus.
+ *
+ * Un fichier n'est jamais relu deux fois : après replay il est supprimé, même si sa fin est tronquée
+ * (arrêt brutal pendant l'écriture, seuls les enregistrements complets sont renvoyés) ; en cas d'erreur
+ * de lecture il est renommé en .bad et mis de côté.
+ */
+@Slf4j
+class VitalsSpool {
+
+    private static final String SUFFIX = ".spool";
+    private static final String OPEN = ".open";
+    private static final String QUARANTINE = ".bad";
+    static final long SEGMENT_BYTES = 16L * 1024 * 1024;
+
+    /** Bilan d'un replay */
+    record ReplayResult(int files, long records, long tornBytes, int quarantined) {}
+
+    private record FileResult(long validBytes, long records) {}
+
+    private final Path dir;
+    private final long maxBytes;
+
+    private DataOutputStream out; // protégé par this
+    private long segment;         // octets du fichier courant
+    private long bytes;           // taille totale sur disque (fichiers fermés + courant)
+
+    VitalsSpool(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(dir);
+            sealOpenFiles(); // fichier resté ouvert lors d'un arrêt brutal
+            for (Path f : closedFiles()) bytes += Files.size(f);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Spool Kafka inutilisable: " + dir, e);
+        }
+    }
+
+    /** @return false si le spool est plein ou en erreur (mesure perdue) */
+    synchronized boolean append(String key, byte[] value) {
+        byte[] k = key == null ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+        long size = 2L + k.length + 4L + value.length;
+        if (bytes + size > maxBytes) return false;
+        try {
+            if (out != null && segment >= SEGMENT_BYTES) rotate();
+            if (out == null) {
+                Path f = dir.resolve(System.currentTimeMillis() + "-" + System.nanoTime() + SUFFIX + OPEN);
+                out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(f, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)));
+                segment = 0;
+            }
+            out.writeShort(k.length);
+            out.write(k);
+            out.writeInt(value.length);
+            out.write(value);
+            // échecs rares : flush par enregistrement, un arrêt brutal ne tronque que le dernier
+            out.flush();
+            segment += size;
+            bytes += size;
+            return true;
+        } catch (IOException e) {
+            log.error("[KAFKA] écriture spool échouée: {}", e.toString());
+            return false;
+        }
+    }
+
+    synchronized long size() {
+        return bytes;
+    }
+
+    /**
+     * Ferme le fichier courant puis relit tous les fichiers fermés, dans l'ordre d'écriture.
+     * Chaque enregistrement est validé (longueurs cohérentes avec la taille restante) avant d'être remis
+     * au producteur ; les échecs d'envoi suivants reviennent au spool dans un nouveau fichier.
+     */
+    ReplayResult replay(BiConsumer<String, byte[]> send) {
+        rotate();
+        List<Path> files;
+        try {
+            files = closedFiles();
+        } catch (IOException e) {
+            log.error("[KAFKA] lecture spool impossible: {}", e.toString());
+            return new ReplayResult(0, 0, 0, 0);
+        }
+
+        long records = 0, torn = 0;
+        int quarantined = 0;
+        for (Path f : files) {
+            long size;
+            try {
+                size = Files.size(f);
+            } catch (IOException e) {
+                continue;
+            }
+            try {
+                FileResult r = replayFile(f, size, send);
+                records += r.records();
+                if (r.validBytes() < size) {
+                    torn += size - r.validBytes();
+                    log.warn("[KAFKA] spool {} tronqué : {} octets de fin ignorés", f.getFileName(), size - r.validBytes());
+                }
+                Files.delete(f);
+            } catch (IOException e) {
+                log.error("[KAFKA] replay spool {} interrompu, fichier mis de côté: {}", f.getFileName(), e.toString());
+                quarantine(f);
+                quarantined++;
+            }
+            synchronized (this) {
+                bytes -= size;
+            }
+        }
+        return new ReplayResult(files.size(), records, torn, quarantined);
+    }
+
+    /** Octets correspondant à des enregistrements complets (tous remis à send) et leur nombre */
+    private FileResult replayFile(Path f, long size, BiConsumer<String, byte[]> send) throws IOException {
+        long pos = 0;
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(f)))) {
+            while (size - pos >= 2) {
+                int kl = in.readUnsignedShort();
+                if (size - pos - 2 < kl + 4L) break;
+                byte[] k = in.readNBytes(kl);
+                int vl = in.readInt();
+                if (vl < 0 || size - pos - 2 - kl - 4 < vl) break;
+                byte[] value = in.readNBytes(vl);
+                if (k.length != kl || value.length != vl) break; // fichier modifié pendant la lecture
+
+                send.accept(kl == 0 ? null : new String(k, StandardCharsets.UTF_8), value);
+                pos += 2L + kl + 4L + vl;
+                count++;
+            }
+        }
+        return new FileResult(pos, count);
+    }
+
+    synchronized void close() {
+        rotate();
+    }
+
+    private synchronized void rotate() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.error("[KAFKA] fermeture spool échouée: {}", e.toString());
+        }
+        out = null;
+        try {
+            sealOpenFiles();
+        } catch (IOException e) {
+            log.error("[KAFKA] rotation spool échouée: {}", e.toString());
+        }
+    }
+
+    private void sealOpenFiles() throws IOException {
+        try (DirectoryStream<Path> open = Files.newDirectoryStream(dir, "*" + SUFFIX + OPEN)) {
+            for (Path f : open) {
+                String name = f.getFileName().toString();
+                Files.move(f, f.resolveSibling(name.substring(0, name.length() - OPEN.length())));
+            }
+        }
+    }
+
+    private void quarantine(Path f) {
+        try {
+            Files.move(f, f.resolveSibling(f.getFileName() + QUARANTINE));
+        } catch (IOException e) {
+            log.error("[KAFKA] impossible de mettre {} de côté: {}", f.getFileName(), e.toString());
+        }
+    }
+
+    private List<Path> closedFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            ds.forEach(files::add);
+        }
+        files.sort(null); // préfixe horodaté : ordre d'écriture
+        return files;
+    }
+}
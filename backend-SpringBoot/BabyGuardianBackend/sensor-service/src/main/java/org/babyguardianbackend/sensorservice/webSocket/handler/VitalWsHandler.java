@@ -2,80 +2,356 @@ package org.babyguardianbackend.sensorservice.webSocket.handler;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.babyguardianbackend.sensorservice.cleaning.VitalClean;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.babyguardianbackend.wire.device.DeviceStateTable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * WebSocket /ws/vitals.
+ * Messages client :
+ * - {"action":"subscribe","deviceId":"..."} ou {"action":"subscribe","deviceIds":["a","b"]}
+ *   options : "maxHz": 0.5 (au plus 1 message / 2s) ou "mode":"latest" (défaut : monitoring.ws.latest-default-hz),
+ *             "aggregate": true (min/max des mesures conflatées)
+ * - {"action":"unsubscribe","deviceId":"..."} (sans deviceId : tout)
+ * Sans maxHz/mode, chaque mesure est envoyée (comportement historique).
+ */
+@Slf4j
 @Component
 public class VitalWsHandler extends TextWebSocketHandler {
 
-    // deviceId -> sessions abonnés
-    private final ConcurrentMap<String, Set<WebSocketSession>> subs = new ConcurrentHashMap<>();
-    // sessionId -> deviceId (si 1 device par session)
-    private final ConcurrentMap<String, String> sessionDevice = new ConcurrentHashMap<>();
+    // device (index DeviceIdInterner) -> abonnements (sessions décorées, jamais la session brute) ;
+    // le set reste en place une fois créé
+    private final DeviceStateTable<Set<DeviceSub>> subs = new DeviceStateTable<>();
+    // sessionId -> (deviceId canonique -> abonnement) : plusieurs devices par session
+    private final ConcurrentMap<String, Map<String, DeviceSub>> sessionDevices = new ConcurrentHashMap<>();
+    // sessionId -> session thread-safe (envois concurrents sérialisés + tampon borné)
+    private final ConcurrentMap<String, ConcurrentWebSocketSessionDecorator> sessions = new ConcurrentHashMap<>();
 
     private final ObjectMapper om = new ObjectMapper();
+    private final DeviceIdInterner interner;
+
+    /** Envoi différé des mesures conflatées (fin d'intervalle) */
+    private final ScheduledExecutorService conflationTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ws-conflation");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // durée max d'un envoi en cours avant de considérer la session comme bloquée
+    @Value("${monitoring.ws.send-time-limit-ms:5000}")
+    private int sendTimeLimitMs;
+
+    // octets max en attente par session
+    @Value("${monitoring.ws.buffer-size-limit:524288}")
+    private int bufferSizeLimit;
+
+    // TERMINATE : session lente fermée | DROP : on jette les plus anciens messages en attente
+    @Value("${monitoring.ws.overflow:TERMINATE}")
+    private OverflowStrategy overflow;
+
+    // fréquence appliquée à mode:"latest" quand maxHz est absent
+    @Value("${monitoring.ws.latest-default-hz:1}")
+    private double latestDefaultHz;
+
+    // nombre max de devices par session
+    @Value("${monitoring.ws.max-devices-per-session:16}")
+    private int maxDevicesPerSession;
+
+    private final Timer sendLatency;
+    private final DistributionSummary bufferSize;
+    private final Counter closedSlow;
+    private final Counter closedError;
+    private final Counter conflated;
+
+    public VitalWsHandler(MeterRegistry meters, DeviceIdInterner interner) {
+        this.interner = interner;
+        this.sendLatency = meters.timer("sensor.ws.send.latency");
+        this.bufferSize = DistributionSummary.builder("sensor.ws.session.buffer")
+                .baseUnit("bytes")
+                .register(meters);
+        this.closedSlow = meters.counter("sensor.ws.forced.closes", "reason", "limit");
+        this.closedError = meters.counter("sensor.ws.forced.closes", "reason", "error");
+        this.conflated = meters.counter("sensor.ws.conflated");
+        meters.gaugeMapSize("sensor.ws.sessions", Tags.empty(), sessions);
+    }
+
+    /** Abonnement d'une session à un device, avec son rythme de livraison */
+    private final class DeviceSub {
+        final WebSocketSession session;
+        final int device;
+        final String deviceId;
+        final long intervalMs;   // 0 => chaque mesure
+        final boolean aggregate;
+
+        // état de conflation (protégé par this)
+        long lastSentMillis;
+        TextMessage pending;     // dernière mesure non envoyée
+        VitalClean pendingClean;
+        int skipped;
+        boolean flushScheduled;
+        int hrMin, hrMax, spo2Min, spo2Max;
+        double tempMin, tempMax;
+
+        DeviceSub(WebSocketSession session, int device, long intervalMs, boolean aggregate) {
+            this.session = session;
+            this.device = device;
+            this.deviceId = interner.name(device);
+            this.intervalMs = intervalMs;
+            this.aggregate = aggregate;
+            resetAggregates();
+        }
+
+        void offer(VitalClean clean, TextMessage frame) {
+            if (intervalMs <= 0) {
+                send(session, frame);
+                return;
+            }
+
+            TextMessage now = null;
+            long delay = 0;
+            synchronized (this) {
+                long t = System.currentTimeMillis();
+                accumulate(clean);
+                if (pending == null && t - lastSentMillis >= intervalMs) {
+                    // front montant : l'intervalle est écoulé, on envoie tout de suite
+                    lastSentMillis = t;
+                    now = frame;
+                    resetAggregates();
+                } else {
+                    if (pending != null) {
+                        skipped++;
+                        conflated.increment();
+                    }
+                    pending = frame;
+                    pendingClean = clean;
+                    if (!flushScheduled) {
+                        flushScheduled = true;
+                        delay = Math.max(0, lastSentMillis + intervalMs - t);
+                    } else {
+                        return;
+                    }
+                }
+            }
+            if (now != null) {
+                send(session, now);
+            } else {
+                conflationTimer.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void flush() {
+            TextMessage out;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pending == null) return;
+                out = aggregate ? aggregateFrame() : pending;
+                pending = null;
+                pendingClean = null;
+                skipped = 0;
+                lastSentMillis = System.currentTimeMillis();
+                resetAggregates();
+            }
+            if (session.isOpen()) send(session, out);
+        }
+
+        private void accumulate(VitalClean c) {
+            if (!aggregate) return;
+            hrMin = Math.min(hrMin, c.heartRate());
+            hrMax = Math.max(hrMax, c.heartRate());
+            spo2Min = Math.min(spo2Min, c.spo2());
+            spo2Max = Math.max(spo2Max, c.spo2());
+            tempMin = Math.min(tempMin, c.temperatureC());
+            tempMax = Math.max(tempMax, c.temperatureC());
+        }
+
+        private void resetAggregates() {
+            hrMin = spo2Min = Integer.MAX_VALUE;
+            hrMax = spo2Max = Integer.MIN_VALUE;
+            tempMin = Double.POSITIVE_INFINITY;
+            tempMax = Double.NEGATIVE_INFINITY;
+        }
+
+        /** Dernière mesure + min/max de l'intervalle (mesures sautées incluses) */
+        private TextMessage aggregateFrame() {
+            String latest = new String(pending.asBytes(), StandardCharsets.UTF_8);
+            return new TextMessage("{\"type\":\"vitals-conflated\",\"deviceId\":\"" + deviceId + "\""
+                    + ",\"skipped\":" + skipped
+                    + ",\"latest\":" + latest
+                    + ",\"hr\":{\"min\":" + hrMin + ",\"max\":" + hrMax + "}"
+                    + ",\"spo2\":{\"min\":" + spo2Min + ",\"max\":" + spo2Max + "}"
+                    + ",\"temp\":{\"min\":" + tempMin + ",\"max\":" + tempMax + "}}");
+        }
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
-        // rien: pas encore abonné
+        // rien: pas encore abonné, mais la session est déjà protégée pour les envois
+        sessions.put(session.getId(),
+                new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferSizeLimit, overflow));
+        sessionDevices.put(session.getId(), new ConcurrentHashMap<>());
     }
 
     @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+    protected void handleTextMessage(WebSocketSession raw, TextMessage message) throws Exception {
+        WebSocketSession session = sessions.get(raw.getId());
+        Map<String, DeviceSub> mine = sessionDevices.get(raw.getId());
+        if (session == null || mine == null) return;
+
         JsonNode j = om.readTree(message.getPayload());
         String action = j.path("action").asText("");
 
         if ("subscribe".equalsIgnoreCase(action)) {
-            String deviceId = j.path("deviceId").asText(null);
-            if (deviceId == null || deviceId.isBlank()) return;
+            List<String> deviceIds = deviceIds(j);
+            if (deviceIds.isEmpty()) return;
 
-            // si la session était abonnée à un ancien device, on nettoie
-            String prev = sessionDevice.put(session.getId(), deviceId);
-            if (prev != null) removeSub(prev, session);
+            long intervalMs = intervalMs(j);
+            boolean aggregate = j.path("aggregate").asBoolean(false);
 
-            // on ajoute l'abonnement
-            subs.computeIfAbsent(deviceId, k -> ConcurrentHashMap.newKeySet()).add(session);
+            for (String requested : deviceIds) {
+                // même interning que l'ingestion MQTT : VitalsFanout retrouve les abonnés par index
+                int device = interner.id(requested);
+                if (device == DeviceIdInterner.UNKNOWN) continue;
+                String deviceId = interner.name(device);
+                if (!mine.containsKey(deviceId) && mine.size() >= maxDevicesPerSession) {
+                    send(session, new TextMessage("{\"type\":\"error\",\"reason\":\"too many devices\",\"deviceId\":\"" + deviceId + "\"}"));
+                    continue;
+                }
+                // ré-abonnement : remplace l'ancien rythme
+                DeviceSub sub = new DeviceSub(session, device, intervalMs, aggregate);
+                DeviceSub prev = mine.put(deviceId, sub);
+                if (prev != null) removeSub(prev);
+                subs.computeIfAbsent(device, k -> ConcurrentHashMap.newKeySet()).add(sub);
 
-            session.sendMessage(new TextMessage("{\"type\":\"subscribed\",\"deviceId\":\"" + deviceId + "\"}"));
+                send(session, new TextMessage("{\"type\":\"subscribed\",\"deviceId\":\"" + deviceId
+                        + "\",\"intervalMs\":" + intervalMs + "}"));
+            }
         }
 
         if ("unsubscribe".equalsIgnoreCase(action)) {
-            String prev = sessionDevice.remove(session.getId());
-            if (prev != null) removeSub(prev, session);
+            List<String> deviceIds = deviceIds(j);
+            if (deviceIds.isEmpty()) deviceIds = new ArrayList<>(mine.keySet());
+            for (String requested : deviceIds) {
+                String deviceId = interner.name(interner.find(requested));
+                DeviceSub prev = deviceId != null ? mine.remove(deviceId) : null;
+                if (prev != null) removeSub(prev);
+            }
+        }
+    }
+
+    private List<String> deviceIds(JsonNode j) {
+        List<String> out = new ArrayList<>();
+        String one = j.path("deviceId").asText(null);
+        if (one != null && !one.isBlank()) out.add(one);
+        for (JsonNode n : j.path("deviceIds")) {
+            String id = n.asText(null);
+            if (id != null && !id.isBlank() && !out.contains(id)) out.add(id);
         }
+        return out;
+    }
+
+    /** maxHz explicite, sinon mode "latest" à la fréquence par défaut, sinon 0 (tout envoyer) */
+    private long intervalMs(JsonNode j) {
+        double hz = j.path("maxHz").asDouble(0);
+        if (hz <= 0 && "latest".equalsIgnoreCase(j.path("mode").asText(""))) hz = latestDefaultHz;
+        return hz > 0 ? Math.round(1000.0 / hz) : 0;
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        String prev = sessionDevice.remove(session.getId());
-        if (prev != null) removeSub(prev, session);
+        sessions.remove(session.getId());
+        dropSubscriptions(session.getId());
     }
 
-    private void removeSub(String deviceId, WebSocketSession session) {
-        Set<WebSocketSession> set = subs.get(deviceId);
-        if (set != null) {
-            set.remove(session);
-            if (set.isEmpty()) subs.remove(deviceId);
-        }
+    private void dropSubscriptions(String sessionId) {
+        Map<String, DeviceSub> mine = sessionDevices.remove(sessionId);
+        if (mine != null) mine.values().forEach(this::removeSub);
+    }
+
+    private void removeSub(DeviceSub sub) {
+        Set<DeviceSub> set = subs.get(sub.device);
+        if (set != null) set.remove(sub);
     }
 
-    // Appelée quand tu reçois une mesure (Kafka/MQTT)
-    public void sendToDevice(String deviceId, String jsonVitals) {
-        Set<WebSocketSession> set = subs.get(deviceId);
+    /** device = index DeviceIdInterner */
+    public boolean hasSubscribers(int device) {
+        Set<DeviceSub> set = subs.get(device);
+        return set != null && !set.isEmpty();
+    }
+
+    /**
+     * Appelée quand tu reçois une mesure (Kafka/MQTT).
+     * Même message (immuable) pour toutes les sessions : aucune allocation par abonné,
+     * sauf pour les trames agrégées des abonnements conflatés.
+     */
+    public void sendToDevice(int device, VitalClean clean, TextMessage frame) {
+        Set<DeviceSub> set = subs.get(device);
         if (set == null) return;
 
-        for (WebSocketSession s : set) {
-            if (s.isOpen()) {
-                try { s.sendMessage(new TextMessage(jsonVitals)); }
-                catch (Exception ignored) {}
+        for (DeviceSub sub : set) {
+            if (sub.session.isOpen()) sub.offer(clean, frame);
+        }
+    }
+
+    /**
+     * Envoi non bloquant pour l'appelant : si un autre thread écrit déjà sur la session,
+     * le message est mis en tampon et on rend la main. Au-delà des limites (temps d'envoi
+     * ou taille du tampon), la session est fermée au lieu de freiner l'ingestion.
+     */
+    private void send(WebSocketSession session, TextMessage message) {
+        long start = System.nanoTime();
+        try {
+            session.sendMessage(message);
+        } catch (SessionLimitExceededException ex) {
+            closedSlow.increment();
+            log.warn("[WS] session {} trop lente ({}), fermeture", session.getId(), ex.getMessage());
+            forceClose(session, ex.getStatus());
+        } catch (IOException | RuntimeException ex) {
+            closedError.increment();
+            log.debug("[WS] envoi échoué session {} : {}", session.getId(), ex.toString());
+            forceClose(session, CloseStatus.SERVER_ERROR);
+        } finally {
+            sendLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (session instanceof ConcurrentWebSocketSessionDecorator d) {
+                bufferSize.record(d.getBufferSize());
             }
         }
     }
+
+    private void forceClose(WebSocketSession session, CloseStatus status) {
+        dropSubscriptions(session.getId());
+        try { session.close(status); } catch (Exception ignore) {}
+    }
+
+    @PreDestroy
+    void shutdownConflation() {
+        conflationTimer.shutdownNow();
+    }
 }
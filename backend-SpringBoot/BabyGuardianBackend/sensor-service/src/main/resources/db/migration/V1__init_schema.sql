@@ -0,0 +1,26 @@
+-- Schéma initial (identique à celui généré jusqu'ici par ddl-auto=update).
+-- IF NOT EXISTS : s'applique aussi aux bases existantes (baseline-on-migrate).
+
+create table if not exists devices (
+    id            uuid         not null primary key,
+    device_id     varchar(100) not null,
+    mac_address   varchar(64)  not null,
+    version       bigint       not null,
+    owner_user_id varchar(255),
+    registered_at timestamp(6),
+    constraint uk_devices_device_id unique (device_id),
+    constraint uk_devices_mac unique (mac_address)
+);
+
+create table if not exists sensor_readings (
+    id          uuid         not null primary key,
+    device_id   varchar(100) not null references devices (device_id),
+    heart_rate  integer,
+    spo2        integer,
+    temp        float(53),
+    finger      boolean,
+    measured_at timestamp(6),
+    created_at  timestamp(6)
+);
+
+alter table sensor_readings add column if not exists measured_at timestamp(6);
@@ -0,0 +1,63 @@
+-- sensor_readings partitionnée par jour sur created_at.
+-- - PK (id, created_at) : la clé de partition doit faire partie de la PK
+-- - index déclarés sur la table parente => créés automatiquement sur chaque partition
+-- - partition DEFAULT : filet de sécurité si la maintenance n'a pas encore créé la partition du jour
+-- - la rétention supprime des partitions entières (ReadingPartitionMaintenance), jamais de DELETE
+
+alter table sensor_readings rename to sensor_readings_legacy;
+alter table sensor_readings_legacy rename constraint sensor_readings_pkey to sensor_readings_legacy_pkey;
+drop index if exists idx_sensor_readings_device_measured;
+
+create table sensor_readings (
+    id          uuid         not null,
+    device_id   varchar(100) not null references devices (device_id),
+    heart_rate  integer,
+    spo2        integer,
+    temp        float(53),
+    finger      boolean,
+    measured_at timestamp(6),
+    created_at  timestamp(6) not null default now(),
+    primary key (id, created_at)
+) partition by range (created_at);
+
+-- dernière mesure d'un device / historique avant une date (findFirst...OrderByCreatedAtDesc, findLastBefore)
+create index idx_sensor_readings_device_created on sensor_readings (device_id, created_at desc);
+-- historique dans l'ordre de mesure
+create index idx_sensor_readings_device_measured on sensor_readings (device_id, measured_at);
+-- balayages par plage de temps (rollups, exports) : index minuscule, données insérées dans l'ordre
+create index idx_sensor_readings_created_brin on sensor_readings using brin (created_at);
+
+create table sensor_readings_default partition of sensor_readings default;
+
+-- Crée (si besoin) la partition [day, day + 1)
+create or replace function sensor_readings_ensure_partition(day date) returns void
+language plpgsql as $$
+declare
+    part text := 'sensor_readings_p' || to_char(day, 'YYYYMMDD');
+begin
+    if to_regclass(part) is null then
+        execute format(
+            'create table %I partition of sensor_readings for values from (%L) to (%L)',
+            part, day::timestamp, (day + 1)::timestamp);
+    end if;
+end;
+$$;
+
+-- Partitions pour l'historique existant + aujourd'hui et les 7 prochains jours
+do $$
+declare
+    d date;
+    first_day date;
+begin
+    select coalesce(min(created_at)::date, current_date) into first_day from sensor_readings_legacy;
+    for d in select generate_series(least(first_day, current_date), current_date + 7, interval '1 day')::date loop
+        perform sensor_readings_ensure_partition(d);
+    end loop;
+end;
+$$;
+
+insert into sensor_readings (id, device_id, heart_rate, spo2, temp, finger, measured_at, created_at)
+select id, device_id, heart_rate, spo2, temp, finger, measured_at, coalesce(created_at, now())
+from sensor_readings_legacy;
+
+drop table sensor_readings_legacy;
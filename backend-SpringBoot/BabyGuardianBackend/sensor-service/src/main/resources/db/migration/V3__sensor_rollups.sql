@@ -0,0 +1,32 @@
+-- Agrégats par device et par minute / heure, alimentés en continu par le sensor-service (RollupAggregator).
+-- count/sum/sumsq => moyenne et écart-type ; first/last (avec leurs instants) => tendance sur le bucket.
+-- bucket_start = heure de mesure (measured_at) tronquée à la minute / à l'heure.
+
+create table sensor_rollups_1m (
+    device_id    varchar(100)     not null,
+    bucket_start timestamp(6)     not null,
+    n            bigint           not null,
+    first_at     timestamp(6)     not null,
+    last_at      timestamp(6)     not null,
+    hr_sum       double precision not null,
+    hr_sumsq     double precision not null,
+    hr_min       double precision not null,
+    hr_max       double precision not null,
+    hr_first     double precision not null,
+    hr_last      double precision not null,
+    spo2_sum     double precision not null,
+    spo2_sumsq   double precision not null,
+    spo2_min     double precision not null,
+    spo2_max     double precision not null,
+    spo2_first   double precision not null,
+    spo2_last    double precision not null,
+    temp_sum     double precision not null,
+    temp_sumsq   double precision not null,
+    temp_min     double precision not null,
+    temp_max     double precision not null,
+    temp_first   double precision not null,
+    temp_last    double precision not null,
+    primary key (device_id, bucket_start)
+);
+
+create table sensor_rollups_1h (like sensor_rollups_1m including all);
@@ -0,0 +1,39 @@
+-- sensor_readings_ensure_partition : si des lignes du jour sont déjà tombées dans la partition DEFAULT
+-- (maintenance en retard, horloge décalée...), "create table ... partition of" échoue car la contrainte
+-- de la DEFAULT serait violée. On détache alors la DEFAULT, on crée la partition, on y déplace les lignes
+-- puis on rattache la DEFAULT. Le tout dans la transaction de l'appel : les insertions concurrentes
+-- attendent le verrou sur sensor_readings au lieu de voir une table sans partition pour ce jour.
+
+create or replace function sensor_readings_ensure_partition(day date) returns void
+language plpgsql as $$
+declare
+    part text := 'sensor_readings_p' || to_char(day, 'YYYYMMDD');
+    lo   timestamp := day::timestamp;
+    hi   timestamp := (day + 1)::timestamp;
+    moved bigint;
+begin
+    if to_regclass(part) is not null then
+        return;
+    end if;
+
+    if not exists (select 1 from sensor_readings_default where created_at >= lo and created_at < hi) then
+        execute format('create table %I partition of sensor_readings for values from (%L) to (%L)', part, lo, hi);
+        return;
+    end if;
+
+    alter table sensor_readings detach partition sensor_readings_default;
+    execute format('create table %I partition of sensor_readings for values from (%L) to (%L)', part, lo, hi);
+
+    with rows as (
+        delete from sensor_readings_default
+        where created_at >= lo and created_at < hi
+        returning id, device_id, heart_rate, spo2, temp, finger, measured_at, created_at
+    )
+    insert into sensor_readings (id, device_id, heart_rate, spo2, temp, finger, measured_at, created_at)
+    select id, device_id, heart_rate, spo2, temp, finger, measured_at, created_at from rows;
+    get diagnostics moved = row_count;
+
+    alter table sensor_readings attach partition sensor_readings_default default;
+    raise notice 'partition % créée, % lignes déplacées depuis sensor_readings_default', part, moved;
+end;
+$$;
@@ -0,0 +1,61 @@
+package org.babyguardianbackend.sensorservice.cleaning;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût par mesure du filtre de Hampel (fenêtre pleine, 3 signaux testés) et allocation (-prof gc).
+ * Lancement (après mvn test-compile) :
+ *   java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *        org.babyguardianbackend.sensorservice.cleaning.HampelFilterBenchmark [-prof gc]
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HampelFilterBenchmark {
+
+    @Param({"11", "31"})
+    public int window;
+
+    private HampelFilter filter;
+    private final double[] hr = new double[1024];
+    private int i;
+
+    @Setup
+    public void setup() {
+        CleaningProperties props = new CleaningProperties();
+        props.getHampel().setWindow(window);
+        filter = new HampelFilter(props);
+        for (int j = 0; j < hr.length; j++) hr[j] = 140 + (j * 7 % 13) - 6;
+        for (int j = 0; j < window; j++) filter.isOutlier(0, hr[j], 97, 36.8);
+    }
+
+    @Benchmark
+    public boolean isOutlier() {
+        i = (i + 1) & (hr.length - 1);
+        return filter.isOutlier(0, hr[i], 97, 36.8);
+    }
+
+    public static void main(String[] args) throws Exception {
+        OptionsBuilder opts = new OptionsBuilder();
+        opts.include(HampelFilterBenchmark.class.getSimpleName());
+        if (args.length == 2 && "-prof".equals(args[0])) opts.addProfiler(args[1]);
+        new Runner(opts.build()).run();
+    }
+}
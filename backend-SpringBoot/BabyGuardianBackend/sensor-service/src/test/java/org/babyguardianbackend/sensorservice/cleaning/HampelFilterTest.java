@@ -0,0 +1,93 @@
+package org.babyguardianbackend.sensorservice.cleaning;
+
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HampelFilterTest {
+
+    private static final double SPO2 = 97, TEMP = 36.8;
+
+    private HampelFilter filter(int window) {
+        CleaningProperties props = new CleaningProperties();
+        props.getHampel().setWindow(window);
+        return new HampelFilter(props);
+    }
+
+    @Test
+    void windowNotYetFullNeverFlags() {
+        HampelFilter f = filter(5);
+
+        // spike pendant le remplissage : pas de décision sur une fenêtre incomplète
+        assertThat(f.isOutlier(0, 140, SPO2, TEMP)).isFalse();
+        assertThat(f.isOutlier(0, 140, SPO2, TEMP)).isFalse();
+        assertThat(f.isOutlier(0, 250, SPO2, TEMP)).isFalse();
+        assertThat(f.isOutlier(0, 140, SPO2, TEMP)).isFalse();
+        assertThat(f.isOutlier(0, 140, SPO2, TEMP)).isFalse();
+
+        // fenêtre pleine : seules les vraies valeurs comptent (pas les cases vides à 0)
+        assertThat(f.isOutlier(0, 141, SPO2, TEMP)).isFalse();
+        assertThat(f.isOutlier(0, 250, SPO2, TEMP)).isTrue();
+    }
+
+    @Test
+    void windowSmallerThanThreeIsRaisedToThree() {
+        HampelFilter f = filter(1);
+
+        assertThat(f.isOutlier(0, 140, SPO2, TEMP)).isFalse();
+        assertThat(f.isOutlier(0, 140, SPO2, TEMP)).isFalse();
+        assertThat(f.isOutlier(0, 140, SPO2, TEMP)).isFalse();
+        assertThat(f.isOutlier(0, 200, SPO2, TEMP)).isTrue();
+    }
+
+    @Test
+    void minDeviationKeepsStableSignalFromFlaggingNoise() {
+        HampelFilter f = filter(5);
+        for (int i = 0; i < 5; i++) f.isOutlier(0, 140, SPO2, TEMP); // MAD = 0
+
+        // k * hrMinDeviation = 15 bpm
+        assertThat(f.isOutlier(0, 154, SPO2, TEMP)).isFalse();
+        assertThat(f.isOutlier(0, 156, SPO2, TEMP)).isTrue();
+    }
+
+    @Test
+    void eachSignalIsTestedOnItsOwnWindow() {
+        HampelFilter f = filter(5);
+        for (int i = 0; i < 5; i++) f.isOutlier(0, 140, SPO2, TEMP);
+
+        assertThat(f.isOutlier(0, 140, 85, TEMP)).isTrue();     // > 6 points de SpO2
+        assertThat(f.isOutlier(0, 140, SPO2, 38.0)).isTrue();   // > 0,9 °C
+        assertThat(f.isOutlier(0, 140, SPO2, 37.0)).isFalse();
+    }
+
+    @Test
+    void sustainedLevelChangeIsAcceptedOnceItHoldsTheMedian() {
+        HampelFilter f = filter(5);
+        for (int i = 0; i < 5; i++) f.isOutlier(0, 140, SPO2, TEMP);
+
+        // la valeur brute reste dans la fenêtre : un vrai changement de niveau finit par passer
+        assertThat(f.isOutlier(0, 180, SPO2, TEMP)).isTrue();
+        assertThat(f.isOutlier(0, 180, SPO2, TEMP)).isTrue();
+        assertThat(f.isOutlier(0, 180, SPO2, TEMP)).isTrue();
+        assertThat(f.isOutlier(0, 180, SPO2, TEMP)).isFalse();
+    }
+
+    @Test
+    void devicesHaveIndependentWindows() {
+        HampelFilter f = filter(3);
+        for (int i = 0; i < 3; i++) f.isOutlier(0, 140, SPO2, TEMP);
+
+        assertThat(f.isOutlier(1, 250, SPO2, TEMP)).isFalse(); // fenêtre du device 1 vide
+        assertThat(f.isOutlier(0, 250, SPO2, TEMP)).isTrue();
+    }
+
+    @Test
+    void unknownDeviceIsNeverFlagged() {
+        HampelFilter f = filter(3);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(f.isOutlier(DeviceIdInterner.UNKNOWN, i == 4 ? 250 : 140, SPO2, TEMP)).isFalse();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.babyguardianbackend.sensorservice.cleaning;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VitalsPayloadDecoder contre l'ancien décodage (String + om.readTree + firstDouble/firstLong).
+ * Lancement (après mvn test-compile) :
+ *   java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *        org.babyguardianbackend.sensorservice.cleaning.VitalsPayloadDecoderBenchmark [-prof gc]
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VitalsPayloadDecoderBenchmark {
+
+    private final byte[] payload = """
+            {"deviceId":"esp32-c00aa81f8a3c","temp":36.81,"spo2":98,"heartRate":142,"timestamp":81234567,"finger":true}"""
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final VitalsPayloadDecoder decoder = new VitalsPayloadDecoder();
+    private final ObjectMapper om = new ObjectMapper();
+
+    @Benchmark
+    public double streaming() throws Exception {
+        VitalRaw raw = decoder.decode(payload);
+        return raw.temperature() + raw.spo2() + raw.heartRate() + raw.timestamp();
+    }
+
+    @Benchmark
+    public double readTree() throws Exception {
+        // chemin d'avant : String du message MQTT puis arbre JsonNode
+        JsonNode j = om.readTree(new String(payload, StandardCharsets.UTF_8));
+        Double temp = firstDouble(j, "temp", "temperature", "tempC");
+        Double spo2 = firstDouble(j, "spo2", "SpO2");
+        Double hr = firstDouble(j, "heartRate", "hr", "bpm");
+        Long ts = firstLong(j, "timestamp", "ts", "time");
+        return temp + spo2 + hr + ts;
+    }
+
+    private static Double firstDouble(JsonNode j, String... keys) {
+        for (String k : keys) {
+            JsonNode n = j.get(k);
+            if (n == null || n.isNull()) continue;
+            if (n.isNumber()) return n.asDouble();
+            if (n.isTextual()) {
+                try { return Double.parseDouble(n.asText().trim()); }
+                catch (Exception ignored) { }
+            }
+        }
+        return null;
+    }
+
+    private static Long firstLong(JsonNode j, String... keys) {
+        for (String k : keys) {
+            JsonNode n = j.get(k);
+            if (n == null || n.isNull()) continue;
+            if (n.isNumber()) return n.asLong();
+            if (n.isTextual()) {
+                try { return Long.parseLong(n.asText().trim()); }
+                catch (Exception ignored) { }
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        OptionsBuilder opts = new OptionsBuilder();
+        opts.include(VitalsPayloadDecoderBenchmark.class.getSimpleName());
+        if (args.length == 2 && "-prof".equals(args[0])) opts.addProfiler(args[1]);
+        new Runner(opts.build()).run();
+    }
+}
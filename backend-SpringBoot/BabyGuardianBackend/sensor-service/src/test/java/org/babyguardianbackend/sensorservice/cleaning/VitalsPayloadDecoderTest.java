@@ -0,0 +1,97 @@
+package org.babyguardianbackend.sensorservice.cleaning;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VitalsPayloadDecoderTest {
+
+    private final VitalsPayloadDecoder decoder = new VitalsPayloadDecoder();
+
+    private VitalRaw decode(String json) throws IOException {
+        return decoder.decode(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decodesFirmwarePayload() throws IOException {
+        VitalRaw raw = decode("""
+                {"deviceId":"esp32-1","temp":36.7,"spo2":98,"heartRate":142,"timestamp":123456,"finger":true,"realtime":true}""");
+
+        assertThat(raw.deviceId()).isEqualTo("esp32-1");
+        assertThat(raw.temperature()).isEqualTo(36.7);
+        assertThat(raw.spo2()).isEqualTo(98);
+        assertThat(raw.heartRate()).isEqualTo(142);
+        assertThat(raw.hasTimestamp()).isTrue();
+        assertThat(raw.timestamp()).isEqualTo(123456L);
+        assertThat(raw.finger()).isTrue();
+        assertThat(raw.realtime()).isTrue();
+        assertThat(raw.isComplete()).isTrue();
+    }
+
+    @Test
+    void preferredAliasWinsWhateverTheKeyOrder() throws IOException {
+        VitalRaw raw = decode("""
+                {"tempC":40.0,"bpm":90,"temp":36.5,"hr":100,"SpO2":95,"spo2":97,"time":1,"ts":2}""");
+
+        assertThat(raw.temperature()).isEqualTo(36.5);
+        assertThat(raw.heartRate()).isEqualTo(100);
+        assertThat(raw.spo2()).isEqualTo(97);
+        assertThat(raw.timestamp()).isEqualTo(2L);
+    }
+
+    @Test
+    void unusableValueFallsBackToNextAlias() throws IOException {
+        VitalRaw raw = decode("""
+                {"temp":"n/a","temperature":"36.9","heartRate":null,"hr":{"v":1},"bpm":"120","timestamp":"abc","ts":" 77 "}""");
+
+        assertThat(raw.temperature()).isEqualTo(36.9);
+        assertThat(raw.heartRate()).isEqualTo(120);
+        assertThat(raw.timestamp()).isEqualTo(77L);
+    }
+
+    @Test
+    void unknownAndNestedFieldsAreSkipped() throws IOException {
+        VitalRaw raw = decode("""
+                {"meta":{"fw":"1.2","deviceId":"nested"},"list":[1,{"temp":99}],"deviceId":"esp32-2","temp":37}""");
+
+        assertThat(raw.deviceId()).isEqualTo("esp32-2");
+        assertThat(raw.temperature()).isEqualTo(37.0);
+        assertThat(raw.isComplete()).isFalse();
+    }
+
+    @Test
+    void absentFieldsStayUnset() throws IOException {
+        VitalRaw raw = decode("{\"deviceId\":\"esp32-1\"}");
+
+        assertThat(Double.isNaN(raw.spo2())).isTrue();
+        assertThat(raw.hasTimestamp()).isFalse();
+        assertThat(raw.finger()).isNull();
+        assertThat(raw.realtime()).isFalse();
+    }
+
+    @Test
+    void holderIsResetBetweenMessagesOnSameThread() throws IOException {
+        VitalRaw first = decode("{\"deviceId\":\"a\",\"temp\":36,\"finger\":false,\"ts\":5,\"realtime\":1}");
+        assertThat(first.finger()).isFalse();
+
+        VitalRaw second = decode("{\"spo2\":90}");
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.deviceId()).isNull();
+        assertThat(Double.isNaN(second.temperature())).isTrue();
+        assertThat(second.finger()).isNull();
+        assertThat(second.hasTimestamp()).isFalse();
+        assertThat(second.realtime()).isFalse();
+        assertThat(second.spo2()).isEqualTo(90);
+    }
+
+    @Test
+    void nonObjectPayloadIsRejected() {
+        assertThatThrownBy(() -> decode("[1,2,3]")).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> decode("{\"temp\":")).isInstanceOf(IOException.class);
+    }
+}
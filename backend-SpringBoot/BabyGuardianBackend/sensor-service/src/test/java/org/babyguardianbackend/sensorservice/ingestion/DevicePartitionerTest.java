@@ -0,0 +1,133 @@
+package org.babyguardianbackend.sensorservice.ingestion;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DevicePartitionerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    private DevicePartitioner replica(String id) {
+        return new DevicePartitioner(true, id, 30_000, 1_000, now::get);
+    }
+
+    @Test
+    void singleInstanceOwnsEveryDevice() {
+        assertThat(new DevicePartitioner(false, "r0", 30_000, 1_000).owns("esp32-1")).isTrue();
+
+        DevicePartitioner alone = replica("r0");
+        alone.membersChanged(List.of("r0"));
+        assertThat(alone.owns("esp32-1")).isTrue();
+    }
+
+    @Test
+    void nothingIsOwnedBeforeJoiningTheView() {
+        DevicePartitioner r = replica("r0");
+        assertThat(r.acceptOrHold("esp32-1", "iot/vitals/esp32-1", new byte[0])).isFalse();
+        assertThat(r.heldCount()).isEqualTo(1);
+    }
+
+    @Test
+    void everyDeviceHasExactlyOneOwner() {
+        List<String> live = List.of("r0", "r1", "r2");
+        DevicePartitioner[] replicas = {replica("r0"), replica("r1"), replica("r2")};
+        for (DevicePartitioner r : replicas) r.membersChanged(live);
+
+        int[] owned = new int[3];
+        for (int d = 0; d < 300; d++) {
+            int owners = 0;
+            for (int i = 0; i < replicas.length; i++) {
+                if (replicas[i].owns("esp32-" + d)) {
+                    owners++;
+                    owned[i]++;
+                }
+            }
+            assertThat(owners).isEqualTo(1);
+        }
+        for (int n : owned) assertThat(n).isBetween(60, 140);
+    }
+
+    @Test
+    void onlyTheDepartedReplicaDevicesMove() {
+        DevicePartitioner r0 = replica("r0"), r1 = replica("r1"), r2 = replica("r2");
+        for (DevicePartitioner r : List.of(r0, r1, r2)) r.membersChanged(List.of("r0", "r1", "r2"));
+        List<Boolean> r0Before = new ArrayList<>();
+        for (int d = 0; d < 300; d++) r0Before.add(r0.owns("esp32-" + d));
+
+        for (DevicePartitioner r : List.of(r0, r1)) r.membersChanged(List.of("r0", "r1"));
+
+        for (int d = 0; d < 300; d++) {
+            String id = "esp32-" + d;
+            if (r0Before.get(d)) assertThat(r0.owns(id)).isTrue(); // r0 garde les siens
+            assertThat(r0.owns(id) ^ r1.owns(id)).isTrue();
+        }
+    }
+
+    @Test
+    void messagesHeldForACrashedReplicaAreReplayedInOrder() {
+        DevicePartitioner r0 = replica("r0");
+        List<String> replayed = new ArrayList<>();
+        r0.onHandover((topic, payload) -> replayed.add(topic + "#" + new String(payload)));
+        r0.membersChanged(List.of("r0", "r1"));
+        String lost = device(r0, false), mine = device(r0, true);
+
+        assertThat(r0.acceptOrHold(mine, "iot/vitals/" + mine, "0".getBytes())).isTrue();
+        for (int seq = 0; seq < 3; seq++) {
+            assertThat(r0.acceptOrHold(lost, "iot/vitals/" + lost, Integer.toString(seq).getBytes())).isFalse();
+        }
+
+        r0.membersChanged(List.of("r0")); // testament de r1
+
+        assertThat(r0.owns(lost)).isTrue();
+        assertThat(replayed).containsExactly(
+                "iot/vitals/" + lost + "#0", "iot/vitals/" + lost + "#1", "iot/vitals/" + lost + "#2");
+        assertThat(r0.heldCount()).isZero();
+    }
+
+    @Test
+    void gracefulLeaveAndJoinReplayNothing() {
+        DevicePartitioner r0 = replica("r0");
+        List<String> replayed = new ArrayList<>();
+        r0.onHandover((topic, payload) -> replayed.add(topic));
+        r0.membersChanged(List.of("r0", "r1"));
+        String lost = device(r0, false);
+        r0.acceptOrHold(lost, "iot/vitals/" + lost, new byte[0]);
+
+        r0.memberLeft(List.of("r0")); // r1 a tout traité avant de partir
+
+        assertThat(replayed).isEmpty();
+        assertThat(r0.heldCount()).isZero();
+    }
+
+    @Test
+    void heldMessagesExpireAfterTheWindow() {
+        DevicePartitioner r0 = replica("r0");
+        List<String> replayed = new ArrayList<>();
+        r0.onHandover((topic, payload) -> replayed.add(topic));
+        r0.membersChanged(List.of("r0", "r1"));
+        String lost = device(r0, false);
+        r0.acceptOrHold(lost, "iot/vitals/" + lost, new byte[0]);
+
+        now.addAndGet(30_001);
+        r0.membersChanged(List.of("r0"));
+
+        assertThat(replayed).isEmpty();
+    }
+
+    @Test
+    void rejectsBlankMemberId() {
+        assertThatThrownBy(() -> new DevicePartitioner(true, " ", 30_000, 1_000)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static String device(DevicePartitioner r, boolean owned) {
+        for (int i = 0; ; i++) {
+            if (r.owns("esp32-" + i) == owned) return "esp32-" + i;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.babyguardianbackend.sensorservice.ingestion;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DuplicateFilterTest {
+
+    private static final byte[] PAYLOAD = "{\"temp\":36.8,\"spo2\":97,\"hr\":140}".getBytes(StandardCharsets.UTF_8);
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final IngestionProperties props = new IngestionProperties();
+
+    private DuplicateFilter filter(int window, long hashTtlMs) {
+        props.getDedup().setWindow(window);
+        props.getDedup().setHashTtlMs(hashTtlMs);
+        return new DuplicateFilter(props, meters);
+    }
+
+    private double count(String result) {
+        return meters.counter("sensor.ingestion.dedup", "result", result).count();
+    }
+
+    @Test
+    void replayedTimestampIsDuplicate() {
+        DuplicateFilter f = filter(64, 10_000);
+
+        assertThat(f.isDuplicate(0, true, 1000, PAYLOAD)).isFalse();
+        assertThat(f.isDuplicate(0, true, 2000, PAYLOAD)).isFalse();
+        assertThat(f.isDuplicate(0, true, 1000, PAYLOAD)).isTrue();
+
+        assertThat(count("unique")).isEqualTo(2);
+        assertThat(count("duplicate")).isEqualTo(1);
+    }
+
+    @Test
+    void oldestKeyLeavesBoundedWindow() {
+        DuplicateFilter f = filter(2, 10_000);
+
+        f.isDuplicate(0, true, 1, PAYLOAD);
+        f.isDuplicate(0, true, 2, PAYLOAD);
+        f.isDuplicate(0, true, 3, PAYLOAD); // écrase la clé 1
+
+        assertThat(f.isDuplicate(0, true, 1, PAYLOAD)).isFalse();
+        assertThat(f.isDuplicate(0, true, 3, PAYLOAD)).isTrue();
+    }
+
+    @Test
+    void payloadHashOnlyMatchesWithinTtl() throws InterruptedException {
+        DuplicateFilter f = filter(64, 200);
+        f.isDuplicate(1, false, 0, PAYLOAD); // chargement des classes hors de la fenêtre mesurée
+
+        assertThat(f.isDuplicate(0, false, 0, PAYLOAD)).isFalse();
+        assertThat(f.isDuplicate(0, false, 0, PAYLOAD.clone())).isTrue();
+        assertThat(f.isDuplicate(0, false, 0, "{\"temp\":36.9}".getBytes(StandardCharsets.UTF_8))).isFalse();
+
+        // même mesure légitimement répétée plus tard (signal stable, pas de timestamp)
+        Thread.sleep(250);
+        assertThat(f.isDuplicate(0, false, 0, PAYLOAD)).isFalse();
+    }
+
+    @Test
+    void defaultHashTtlIsBelowFirmwarePeriod() {
+        // code-prototype.ino : une mesure toutes les 4 s ; deux mesures stables successives ne sont pas des doublons
+        assertThat(new IngestionProperties().getDedup().getHashTtlMs()).isLessThan(4000);
+    }
+
+    @Test
+    void identicalConsecutiveReadingsWithoutTimestampAreKept() throws InterruptedException {
+        DuplicateFilter f = filter(64, 100); // TTL réduit pour le test, même rapport à la période d'envoi
+        f.isDuplicate(1, false, 0, PAYLOAD); // chargement des classes hors de la fenêtre mesurée
+
+        assertThat(f.isDuplicate(0, false, 0, PAYLOAD)).isFalse();
+        Thread.sleep(150); // période d'envoi > TTL
+        assertThat(f.isDuplicate(0, false, 0, PAYLOAD)).isFalse();
+        Thread.sleep(150);
+        assertThat(f.isDuplicate(0, false, 0, PAYLOAD)).isFalse();
+        assertThat(count("duplicate")).isZero();
+    }
+
+    @Test
+    void deviceRebootClearsWindowSoRestartedMillisAreKept() {
+        DuplicateFilter f = filter(64, 3000);
+        props.getDedup().setClockResetMs(10_000);
+
+        // première session : millis() de 4 000 à 60 000
+        for (long ts = 4000; ts <= 60_000; ts += 4000) f.isDuplicate(0, true, ts, PAYLOAD);
+
+        // reboot : millis() repart de 0 et retombe sur des clés encore en fenêtre
+        assertThat(f.isDuplicate(0, true, 4000, PAYLOAD)).isFalse();
+        assertThat(f.isDuplicate(0, true, 8000, PAYLOAD)).isFalse();
+        assertThat(meters.counter("sensor.ingestion.dedup.clock.resets").count()).isEqualTo(1);
+
+        // les replays de la nouvelle session restent détectés
+        assertThat(f.isDuplicate(0, true, 8000, PAYLOAD)).isTrue();
+    }
+
+    @Test
+    void smallBackwardsStepIsStillAReplay() {
+        DuplicateFilter f = filter(64, 3000);
+        props.getDedup().setClockResetMs(10_000);
+
+        f.isDuplicate(0, true, 100_000, PAYLOAD);
+        f.isDuplicate(0, true, 104_000, PAYLOAD);
+        f.isDuplicate(0, true, 108_000, PAYLOAD);
+
+        // redelivery QoS1 d'une mesure récente : recul < clock-reset-ms
+        assertThat(f.isDuplicate(0, true, 100_000, PAYLOAD)).isTrue();
+        assertThat(meters.counter("sensor.ingestion.dedup.clock.resets").count()).isZero();
+    }
+
+    @Test
+    void timestampKeyDoesNotExpireWithTime() throws InterruptedException {
+        DuplicateFilter f = filter(64, 10);
+
+        f.isDuplicate(0, true, 1000, PAYLOAD);
+        Thread.sleep(30);
+
+        assertThat(f.isDuplicate(0, true, 1000, PAYLOAD)).isTrue();
+    }
+
+    @Test
+    void devicesHaveIndependentWindows() {
+        DuplicateFilter f = filter(64, 10_000);
+
+        assertThat(f.isDuplicate(0, true, 1000, PAYLOAD)).isFalse();
+        assertThat(f.isDuplicate(1, true, 1000, PAYLOAD)).isFalse();
+        assertThat(f.isDuplicate(1, true, 1000, PAYLOAD)).isTrue();
+    }
+
+    @Test
+    void disabledOrUnknownDeviceNeverDuplicates() {
+        DuplicateFilter f = filter(64, 10_000);
+        assertThat(f.isDuplicate(DeviceIdInterner.UNKNOWN, true, 1000, PAYLOAD)).isFalse();
+        assertThat(f.isDuplicate(DeviceIdInterner.UNKNOWN, true, 1000, PAYLOAD)).isFalse();
+
+        props.getDedup().setEnabled(false);
+        assertThat(f.isDuplicate(0, true, 1000, PAYLOAD)).isFalse();
+        assertThat(f.isDuplicate(0, true, 1000, PAYLOAD)).isFalse();
+    }
+}
@@ -0,0 +1,117 @@
+package org.babyguardianbackend.sensorservice.ingestion;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionedIngestionExecutorTest {
+
+    private final IngestionProperties props = new IngestionProperties();
+
+    private PartitionedIngestionExecutor executor(int lanes, int capacity) {
+        props.setLanes(lanes);
+        props.setQueueCapacity(capacity);
+        PartitionedIngestionExecutor e = new PartitionedIngestionExecutor(props, new SimpleMeterRegistry());
+        e.start();
+        return e;
+    }
+
+    @Test
+    void tasksOfOneDeviceRunInSubmissionOrder() {
+        PartitionedIngestionExecutor e = executor(4, 10_000);
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < 5_000; i++) {
+            String device = "esp32-" + (i % 10);
+            int seq = i / 10;
+            e.execute(device, () -> seen.computeIfAbsent(device, k -> new CopyOnWriteArrayList<>()).add(seq));
+        }
+        e.stop();
+
+        assertThat(seen).hasSize(10);
+        List<Integer> expected = new ArrayList<>();
+        for (int s = 0; s < 500; s++) expected.add(s);
+        seen.values().forEach(l -> assertThat(l).containsExactlyElementsOf(expected));
+    }
+
+    @Test
+    void stopDrainsQueuedTasksBeforeReturning() throws InterruptedException {
+        PartitionedIngestionExecutor e = executor(1, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger done = new AtomicInteger();
+
+        e.execute("esp32-1", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            done.incrementAndGet();
+        });
+        for (int i = 0; i < 50; i++) e.execute("esp32-1", done::incrementAndGet);
+
+        Thread stopper = new Thread(e::stop);
+        stopper.start();
+        Thread.sleep(50);
+        assertThat(done).hasValue(0); // la lane est bloquée, stop() attend
+        release.countDown();
+        stopper.join(5000);
+
+        assertThat(stopper.isAlive()).isFalse();
+        assertThat(done).hasValue(51);
+    }
+
+    @Test
+    void taskSubmittedAfterStopRunsOnCaller() {
+        PartitionedIngestionExecutor e = executor(2, 100);
+        e.stop();
+
+        List<Thread> ranOn = new ArrayList<>();
+        e.execute("esp32-1", () -> ranOn.add(Thread.currentThread()));
+
+        assertThat(ranOn).containsExactly(Thread.currentThread());
+    }
+
+    @Test
+    void noTaskIsLostWhenStopRacesWithSubmitters() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            PartitionedIngestionExecutor e = executor(4, 10_000);
+            AtomicInteger submitted = new AtomicInteger();
+            AtomicInteger ran = new AtomicInteger();
+            CountDownLatch go = new CountDownLatch(1);
+
+            List<Thread> submitters = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int id = t;
+                Thread th = new Thread(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int i = 0; i < 2_000; i++) {
+                        e.execute("esp32-" + id + "-" + (i % 7), ran::incrementAndGet);
+                        submitted.incrementAndGet();
+                    }
+                });
+                submitters.add(th);
+                th.start();
+            }
+            go.countDown();
+            Thread.sleep(1);
+            e.stop(); // pendant les soumissions
+            for (Thread th : submitters) th.join();
+
+            assertThat(ran).hasValue(submitted.get());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.babyguardianbackend.sensorservice.ingestion;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReorderBufferTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final IngestionProperties props = new IngestionProperties();
+    private final DeviceIdInterner interner = new DeviceIdInterner();
+    private final List<Long> emitted = new CopyOnWriteArrayList<>();
+
+    // exécuteur non démarré : les flush passent inline sur le thread du test
+    private ReorderBuffer buffer(long latenessMs) {
+        props.getReorder().setLatenessMs(latenessMs);
+        return new ReorderBuffer(props, new PartitionedIngestionExecutor(props, meters), interner, meters);
+    }
+
+    private void offer(ReorderBuffer b, int device, long ts) {
+        b.offer(device, ts, measuredAt -> emitted.add(ts));
+    }
+
+    @Test
+    void emitsInDeviceOrderOnceWatermarkPasses() {
+        ReorderBuffer b = buffer(2000);
+        int device = interner.id("esp32-1");
+
+        offer(b, device, 1000);
+        offer(b, device, 3000); // watermark 1000
+        offer(b, device, 2000); // arrivée dans le désordre, encore sous lateness
+        assertThat(emitted).containsExactly(1000L);
+
+        offer(b, device, 5000); // watermark 3000
+        assertThat(emitted).containsExactly(1000L, 2000L, 3000L);
+        assertThat(meters.counter("sensor.ingestion.reorder", "result", "reordered").count()).isEqualTo(1);
+    }
+
+    @Test
+    void dropsReadingOlderThanLastEmitted() {
+        ReorderBuffer b = buffer(1000);
+        int device = interner.id("esp32-1");
+
+        offer(b, device, 1000);
+        offer(b, device, 3000); // émet 1000 (watermark 2000)
+        offer(b, device, 900);
+
+        assertThat(emitted).containsExactly(1000L);
+        assertThat(meters.counter("sensor.ingestion.reorder", "result", "late_dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    void idleFlushReleasesSilentDeviceAfterLateness() throws InterruptedException {
+        ReorderBuffer b = buffer(50);
+        int device = interner.id("esp32-1");
+
+        offer(b, device, 1000);
+        offer(b, device, 1020);
+        b.flushIdle(); // device encore actif
+        assertThat(emitted).isEmpty();
+
+        Thread.sleep(80);
+        b.flushIdle();
+        assertThat(emitted).containsExactly(1000L, 1020L);
+
+        b.flushIdle(); // rien en attente : aucune nouvelle émission
+        assertThat(emitted).hasSize(2);
+    }
+
+    @Test
+    void zeroLatenessEmitsImmediately() {
+        ReorderBuffer b = buffer(0);
+        int device = interner.id("esp32-1");
+
+        offer(b, device, 1000);
+        offer(b, device, 2000);
+
+        assertThat(emitted).containsExactly(1000L, 2000L);
+    }
+
+    @Test
+    void clockResetDrainsPreviousSession() {
+        ReorderBuffer b = buffer(2000);
+        int device = interner.id("esp32-1");
+
+        offer(b, device, 100_000);
+        offer(b, device, 500); // millis() repart de zéro après un reboot
+
+        assertThat(emitted).containsExactly(100_000L);
+        assertThat(meters.counter("sensor.ingestion.reorder", "result", "clock_reset").count()).isEqualTo(1);
+    }
+}
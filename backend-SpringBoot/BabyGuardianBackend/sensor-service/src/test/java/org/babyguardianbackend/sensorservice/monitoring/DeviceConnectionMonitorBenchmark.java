@@ -0,0 +1,100 @@
+package org.babyguardianbackend.sensorservice.monitoring;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.babyguardianbackend.sensorservice.presence.DevicePresenceService;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Coût d'un event device (emit) avec 10k abonnés SSE répartis sur 5k devices (2 abonnés par device) :
+ * - indexed : abonnés à liste blanche, indexés par deviceId (addAlertEmitterWhitelisted)
+ * - predicate : mêmes abonnés via un Predicate, évalué pour chaque abonné à chaque event (ancien chemin)
+ * Dans les deux cas l'event est remis aux 2 mêmes abonnés : seule la recherche des destinataires diffère.
+ * Lancement (après mvn test-compile) :
+ *   java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *        org.babyguardianbackend.sensorservice.monitoring.DeviceConnectionMonitorBenchmark [-prof gc]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceConnectionMonitorBenchmark {
+
+    private static final int SUBSCRIBERS = 10_000;
+    private static final int DEVICES = 5_000;
+
+    @Param({"indexed", "predicate"})
+    public String routing;
+
+    private DeviceConnectionMonitor monitor;
+    private String[] deviceIds;
+    private int i;
+
+    /** Client SSE qui accepte tout sans I/O */
+    private static final class NullEmitter extends SseEmitter {
+        @Override
+        public void send(SseEventBuilder builder) {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        monitor = new DeviceConnectionMonitor(new SimpleMeterRegistry(), mock(DevicePresenceService.class), new DeviceIdInterner());
+        ReflectionTestUtils.setField(monitor, "sseQueueCapacity", 64);
+        ReflectionTestUtils.setField(monitor, "sseOverflow", "DROP");
+
+        deviceIds = new String[DEVICES];
+        for (int d = 0; d < DEVICES; d++) deviceIds[d] = "esp32-" + d;
+
+        for (int s = 0; s < SUBSCRIBERS; s++) {
+            String id = deviceIds[s % DEVICES];
+            if ("indexed".equals(routing)) {
+                monitor.addAlertEmitterWhitelisted(new NullEmitter(), Set.of(id));
+            } else {
+                Set<String> allowed = Set.of(id);
+                monitor.addAlertEmitter(new NullEmitter(), allowed::contains);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        monitor.shutdownDispatcher();
+    }
+
+    @Benchmark
+    public void emit() {
+        i = (i + 1) % DEVICES;
+        monitor.emit(deviceIds[i], "ping", "{\"type\":\"PING\"}");
+    }
+
+    public static void main(String[] args) throws Exception {
+        OptionsBuilder opts = new OptionsBuilder();
+        opts.include(DeviceConnectionMonitorBenchmark.class.getSimpleName());
+        if (args.length == 2 && "-prof".equals(args[0])) opts.addProfiler(args[1]);
+        new Runner(opts.build()).run();
+    }
+}
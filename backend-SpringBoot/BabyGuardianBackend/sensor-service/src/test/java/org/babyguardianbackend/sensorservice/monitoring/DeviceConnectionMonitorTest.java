@@ -0,0 +1,183 @@
+package org.babyguardianbackend.sensorservice.monitoring;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.babyguardianbackend.sensorservice.presence.DevicePresenceService;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class DeviceConnectionMonitorTest {
+
+    // 1000,5 s : à mi-tick, pour vérifier que l'échéance tombe bien sur le tick suivant le timeout
+    private final AtomicLong clock = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(1_000_500));
+    private final DevicePresenceService presence = mock(DevicePresenceService.class);
+    private DeviceConnectionMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        monitor = new DeviceConnectionMonitor(new SimpleMeterRegistry(), presence, new DeviceIdInterner());
+        ReflectionTestUtils.setField(monitor, "deviceTimeoutSeconds", 30L);
+        ReflectionTestUtils.setField(monitor, "sseQueueCapacity", 64);
+        ReflectionTestUtils.setField(monitor, "sseOverflow", "DROP");
+        ReflectionTestUtils.setField(monitor, "pingIntervalMs", 5000L);
+        monitor.nanoClock = clock::get;
+        monitor.initWheel();
+    }
+
+    @AfterEach
+    void tearDown() {
+        monitor.shutdownDispatcher();
+    }
+
+    private void advanceMillis(long ms) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(ms));
+        monitor.checkTimeouts();
+    }
+
+    @Test
+    void silentDeviceIsDisconnectedOnFirstTickAfterTimeout() {
+        monitor.recordDeviceActivity("esp32-1");
+        verify(presence).publishConnection("esp32-1", true);
+
+        advanceMillis(30_000); // 1030,5 s : 30 s tout juste, pas encore expiré
+        advanceMillis(400);    // 1030,9 s : tick 1031 pas encore atteint
+        verify(presence, never()).publishConnection("esp32-1", false);
+
+        advanceMillis(100);    // 1031,0 s : 30,5 s sans activité
+        verify(presence).publishConnection("esp32-1", false);
+
+        advanceMillis(60_000); // sorti de la roue : pas de seconde alerte
+        verify(presence, times(1)).publishConnection("esp32-1", false);
+    }
+
+    @Test
+    void activeDeviceIsRescheduledInsteadOfExpiring() {
+        monitor.recordDeviceActivity("esp32-1");
+        for (int i = 0; i < 12; i++) {
+            advanceMillis(10_000);
+            monitor.recordDeviceActivity("esp32-1");
+        }
+        verify(presence, never()).publishConnection("esp32-1", false);
+
+        advanceMillis(31_000);
+        verify(presence).publishConnection("esp32-1", false);
+    }
+
+    @Test
+    void lwtDisconnectLeavesTheWheelWithoutSecondAlert() {
+        monitor.recordDeviceActivity("esp32-1");
+        monitor.markDisconnected("esp32-1");
+        verify(presence).publishConnection("esp32-1", false);
+
+        advanceMillis(40_000);
+        verify(presence, times(1)).publishConnection("esp32-1", false);
+    }
+
+    @Test
+    void reconnectAfterTimeoutIsTrackedAgain() {
+        monitor.recordDeviceActivity("esp32-1");
+        advanceMillis(31_000);
+        verify(presence).publishConnection("esp32-1", false);
+
+        monitor.recordDeviceActivity("esp32-1");
+        verify(presence, times(2)).publishConnection("esp32-1", true);
+
+        advanceMillis(31_000);
+        verify(presence, times(2)).publishConnection("esp32-1", false);
+    }
+
+    @Test
+    void missedTicksAreCaughtUpForAllDevices() {
+        for (int i = 0; i < 1000; i++) monitor.recordDeviceActivity("esp32-" + i);
+
+        // planificateur bloqué 5 min : un seul passage rattrape tous les slots échus
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        monitor.checkTimeouts();
+
+        verify(presence, times(1000)).publishConnection(anyString(), eq(false));
+    }
+
+    /* ---- routage par deviceId (index des abonnés à liste blanche) ---- */
+
+    /** Émetteur SSE hors MVC : garde les données envoyées, ou échoue comme un client fermé */
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<String> received = new CopyOnWriteArrayList<>();
+        volatile boolean broken;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (broken) throw new IOException("client fermé");
+            StringBuilder sb = new StringBuilder();
+            builder.build().forEach(d -> sb.append(d.getData()));
+            received.add(sb.toString());
+        }
+    }
+
+    private static void awaitReceived(RecordingEmitter em, int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (em.received.size() < n && System.currentTimeMillis() < deadline) Thread.sleep(10);
+    }
+
+    @Test
+    void deviceEventReachesOnlyWhitelistedSubscribers() throws InterruptedException {
+        RecordingEmitter a = new RecordingEmitter();
+        RecordingEmitter ab = new RecordingEmitter();
+        RecordingEmitter c = new RecordingEmitter();
+        RecordingEmitter filtered = new RecordingEmitter();
+        monitor.addAlertEmitterWhitelisted(a, Set.of("esp32-a"));
+        monitor.addAlertEmitterWhitelisted(ab, Set.of("esp32-a", "esp32-b"));
+        monitor.addAlertEmitterWhitelisted(c, Set.of("esp32-c"));
+        monitor.addAlertEmitter(filtered, id -> id.endsWith("-b"));
+
+        monitor.emit("esp32-a", "ping", "A");
+        monitor.emit("esp32-b", "ping", "B");
+        monitor.emit("esp32-z", "ping", "Z");
+
+        awaitReceived(ab, 2);
+        awaitReceived(filtered, 1);
+        Thread.sleep(50); // laisse passer un éventuel envoi en trop
+        assertThat(a.received).hasSize(1).allSatisfy(d -> assertThat(d).contains("A"));
+        assertThat(ab.received).hasSize(2);
+        assertThat(c.received).isEmpty();
+        assertThat(filtered.received).hasSize(1).allSatisfy(d -> assertThat(d).contains("B"));
+    }
+
+    @Test
+    void brokenSubscriberIsRemovedFromDeviceIndex() throws InterruptedException {
+        RecordingEmitter broken = new RecordingEmitter();
+        RecordingEmitter ok = new RecordingEmitter();
+        broken.broken = true;
+        monitor.addAlertEmitterWhitelisted(broken, Set.of("esp32-a", "esp32-b"));
+        monitor.addAlertEmitterWhitelisted(ok, Set.of("esp32-a"));
+
+        monitor.emit("esp32-a", "ping", "A");
+        awaitReceived(ok, 1);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        @SuppressWarnings("unchecked")
+        Map<String, Set<?>> index = (Map<String, Set<?>>) ReflectionTestUtils.getField(monitor, "subscribersByDevice");
+        while (index.containsKey("esp32-b") && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertThat(index).containsOnlyKeys("esp32-a");
+        assertThat(index.get("esp32-a")).hasSize(1);
+    }
+}
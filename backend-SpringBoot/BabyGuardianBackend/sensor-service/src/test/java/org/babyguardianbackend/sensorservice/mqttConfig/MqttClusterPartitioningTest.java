@@ -0,0 +1,317 @@
+package org.babyguardianbackend.sensorservice.mqttConfig;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import org.babyguardianbackend.sensorservice.cleaning.CleaningProperties;
+import org.babyguardianbackend.sensorservice.cleaning.DataCleaningService;
+import org.babyguardianbackend.sensorservice.cleaning.HampelFilter;
+import org.babyguardianbackend.sensorservice.cleaning.VitalsPayloadDecoder;
+import org.babyguardianbackend.sensorservice.entities.Device;
+import org.babyguardianbackend.sensorservice.entities.SensorReading;
+import org.babyguardianbackend.sensorservice.ingestion.DevicePartitioner;
+import org.babyguardianbackend.sensorservice.ingestion.DuplicateFilter;
+import org.babyguardianbackend.sensorservice.ingestion.IngestionProperties;
+import org.babyguardianbackend.sensorservice.ingestion.PartitionedIngestionExecutor;
+import org.babyguardianbackend.sensorservice.ingestion.ReorderBuffer;
+import org.babyguardianbackend.sensorservice.monitoring.DeviceConnectionMonitor;
+import org.babyguardianbackend.sensorservice.persistence.RollupAggregator;
+import org.babyguardianbackend.sensorservice.persistence.SensorReadingWriter;
+import org.babyguardianbackend.sensorservice.presence.DevicePresenceService;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.babyguardianbackend.sensorservice.service.DeviceOwnershipService;
+import org.babyguardianbackend.sensorservice.service.DeviceRegistry;
+import org.babyguardianbackend.sensorservice.service.RecentReadingsStore;
+import org.babyguardianbackend.sensorservice.service.VitalsFanout;
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Deux réplicas abonnés en broadcast au même broker (Moquette embarqué), vue des réplicas vivants
+ * tenue par ClusterMembership : chaque device est traité et persisté par un seul réplica, dans l'ordre ;
+ * une réponse /realtime complète les waiters des deux ; un réplica tué ne fait perdre aucune mesure.
+ * Le client Paho remplace ici l'adaptateur Spring Integration (même topic, même header RECEIVED_TOPIC).
+ */
+class MqttClusterPartitioningTest {
+
+    private static final int DEVICES = 20;
+    private static final int PER_DEVICE = 10;
+
+    private Server broker;
+    private String uri;
+    private final List<MqttClient> clients = new ArrayList<>();
+    private final List<ClusterMembership> memberships = new ArrayList<>();
+
+    /** Un réplica : vrai MqttInboundHandler, écritures capturées par device (heartRate = numéro de séquence) */
+    private final class Replica {
+        final String id;
+        final MqttInboundHandler handler;
+        final DevicePartitioner partitioner;
+        final DeviceIdInterner interner = new DeviceIdInterner();
+        final Map<String, List<Integer>> written = new ConcurrentHashMap<>();
+        ClusterMembership membership;
+        MqttClient data;
+
+        Replica(String id) {
+            this.id = id;
+            SensorReadingWriter writer = mock(SensorReadingWriter.class);
+            when(writer.write(any())).thenAnswer(inv -> {
+                SensorReading r = inv.getArgument(0);
+                written.computeIfAbsent(r.getDevice().getDeviceId(), k -> new CopyOnWriteArrayList<>()).add(r.getHeartRate());
+                return r;
+            });
+            DeviceRegistry registry = mock(DeviceRegistry.class);
+            when(registry.getOrRegister(anyString())).thenAnswer(inv -> {
+                Device d = new Device();
+                d.setDeviceId(inv.getArgument(0));
+                return d;
+            });
+            // remise en ordre hors sujet ici : émission immédiate
+            ReorderBuffer reorder = mock(ReorderBuffer.class);
+            doAnswer(inv -> {
+                inv.<LongConsumer>getArgument(2).accept(inv.getArgument(1));
+                return null;
+            }).when(reorder).offer(anyInt(), anyLong(), any());
+
+            SimpleMeterRegistry meters = new SimpleMeterRegistry();
+            IngestionProperties ingestion = new IngestionProperties();
+            CleaningProperties cleaning = new CleaningProperties();
+            partitioner = new DevicePartitioner(true, id, 30_000, 100_000);
+            handler = new MqttInboundHandler(
+                    registry, writer, mock(RollupAggregator.class), mock(RecentReadingsStore.class),
+                    mock(DeviceConnectionMonitor.class),
+                    new DataCleaningService(cleaning, new HampelFilter(cleaning)),
+                    new VitalsPayloadDecoder(),
+                    new DuplicateFilter(ingestion, meters),
+                    reorder,
+                    mock(VitalsFanout.class),
+                    new PartitionedIngestionExecutor(ingestion, meters), // non démarré : traitement inline
+                    mock(DevicePresenceService.class),
+                    interner,
+                    partitioner,
+                    mock(DeviceOwnershipService.class));
+            handler.registerHandover();
+        }
+
+        /** abonnement aux mesures puis annonce dans la vue (comme au démarrage : lanes, membership, adaptateur) */
+        void start() throws Exception {
+            MqttConnectOptions opts = new MqttConnectOptions();
+            opts.setServerURIs(new String[]{uri});
+            DefaultMqttPahoClientFactory factory = new DefaultMqttPahoClientFactory();
+            factory.setPersistence(new MemoryPersistence());
+            factory.setConnectionOptions(opts);
+            membership = new ClusterMembership(partitioner, factory);
+            memberships.add(membership);
+            membership.start();
+
+            data = connect("data-" + id);
+            data.subscribe(new String[]{"iot/vitals/+", "iot/vitals/+/realtime"}, new int[]{1, 1},
+                    new IMqttMessageListener[]{
+                            (topic, m) -> handler.handle(message(topic, m.getPayload())),
+                            (topic, m) -> handler.handle(message(topic, m.getPayload()))});
+        }
+
+        /** kill -9 : connexions coupées sans DISCONNECT, le broker publie le testament */
+        void kill() throws Exception {
+            ReflectionTestUtils.setField(membership, "running", false);
+            MqttClient members = (MqttClient) ReflectionTestUtils.getField(membership, "client");
+            members.disconnectForcibly(0, 0, false);
+            data.disconnectForcibly(0, 0, false);
+        }
+
+        int writes() {
+            return written.values().stream().mapToInt(List::size).sum();
+        }
+    }
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        Properties props = new Properties();
+        props.setProperty("host", "127.0.0.1");
+        props.setProperty("port", Integer.toString(port));
+        props.setProperty("allow_anonymous", "true");
+        props.setProperty("persistence_enabled", "false");
+        props.setProperty("telemetry_enabled", "false");
+        broker = new Server();
+        broker.startServer(new MemoryConfig(props));
+        uri = "tcp://127.0.0.1:" + port;
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        memberships.forEach(ClusterMembership::stop);
+        for (MqttClient c : clients) {
+            if (c.isConnected()) c.disconnect();
+            c.close();
+        }
+        broker.stopServer();
+    }
+
+    private MqttClient connect(String id) throws Exception {
+        MqttClient c = new MqttClient(uri, id, new MemoryPersistence());
+        MqttConnectOptions opts = new MqttConnectOptions();
+        opts.setCleanSession(true);
+        c.connect(opts);
+        clients.add(c);
+        return c;
+    }
+
+    private static Message<byte[]> message(String topic, byte[] payload) {
+        return MessageBuilder.withPayload(payload).setHeader(MqttHeaders.RECEIVED_TOPIC, topic).build();
+    }
+
+    private static byte[] vitals(int seq) {
+        return ("{\"temp\":37.0,\"spo2\":97,\"hr\":" + (100 + seq) + ",\"ts\":" + (1000L * (seq + 1)) + "}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void await(BooleanSupplier done) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!done.getAsBoolean() && System.currentTimeMillis() < deadline) Thread.sleep(20);
+    }
+
+    /** vue convergée : chaque device a exactement un propriétaire parmi les réplicas */
+    private static void awaitView(Replica... replicas) throws InterruptedException {
+        await(() -> IntStream.range(0, DEVICES).allMatch(d ->
+                Arrays.stream(replicas).filter(r -> r.partitioner.owns("esp32-" + d)).count() == 1));
+    }
+
+    private static String deviceOwnedBy(Replica replica) {
+        for (int i = 0; ; i++) {
+            if (replica.partitioner.owns("esp32-" + i)) return "esp32-" + i;
+        }
+    }
+
+    private static List<Integer> sequences(int from, int to) {
+        List<Integer> seqs = new ArrayList<>();
+        for (int seq = from; seq < to; seq++) seqs.add(100 + seq);
+        return seqs;
+    }
+
+    private static List<Integer> persisted(Replica a, Replica b, String device) {
+        List<Integer> all = new ArrayList<>(a.written.getOrDefault(device, List.of()));
+        all.addAll(b.written.getOrDefault(device, List.of()));
+        return all;
+    }
+
+    private void publishAll(MqttClient publisher, int from, int to) throws Exception {
+        for (int seq = from; seq < to; seq++) {
+            for (int d = 0; d < DEVICES; d++) publisher.publish("iot/vitals/esp32-" + d, vitals(seq), 1, false);
+        }
+    }
+
+    @Test
+    void eachDeviceIsPersistedByExactlyOneReplicaInOrder() throws Exception {
+        Replica a = new Replica("replica-0"), b = new Replica("replica-1");
+        a.start();
+        b.start();
+        awaitView(a, b);
+
+        publishAll(connect("publisher"), 0, PER_DEVICE);
+        await(() -> a.writes() + b.writes() == DEVICES * PER_DEVICE);
+
+        assertThat(a.writes() + b.writes()).isEqualTo(DEVICES * PER_DEVICE);
+        assertThat(a.written).isNotEmpty();
+        assertThat(b.written).isNotEmpty();
+        assertThat(a.written.keySet()).doesNotContainAnyElementsOf(b.written.keySet());
+
+        for (Replica r : List.of(a, b)) {
+            r.written.values().forEach(seqs -> assertThat(seqs).containsExactlyElementsOf(sequences(0, PER_DEVICE)));
+            // les devices des autres réplicas ne sont pas internés
+            assertThat(r.interner.size()).isEqualTo(r.written.size());
+        }
+    }
+
+    @Test
+    void realtimeIsPersistedOnceAndAnswersWaitersOnEveryReplica() throws Exception {
+        Replica owner = new Replica("replica-0"), other = new Replica("replica-1");
+        owner.start();
+        other.start();
+        awaitView(owner, other);
+        String device = deviceOwnedBy(owner);
+
+        CompletableFuture<SensorReading> onOwner = owner.handler.awaitRealtimeReading(device, 5, TimeUnit.SECONDS);
+        CompletableFuture<SensorReading> onOther = other.handler.awaitRealtimeReading(device, 5, TimeUnit.SECONDS);
+        MqttClient publisher = connect("publisher");
+        publisher.publish("iot/vitals/" + device + "/realtime", vitals(7), 1, false);
+
+        assertThat(onOwner.get(5, TimeUnit.SECONDS).getHeartRate()).isEqualTo(107);
+        assertThat(onOther.get(5, TimeUnit.SECONDS).getHeartRate()).isEqualTo(107);
+
+        // mesure non sollicitée : persistée quand même, par le seul propriétaire
+        publisher.publish("iot/vitals/" + device + "/realtime", vitals(8), 1, false);
+        await(() -> owner.writes() == 2);
+
+        assertThat(owner.written.get(device)).containsExactly(107, 108);
+        assertThat(other.written).isEmpty();
+    }
+
+    @Test
+    void killedReplicaDevicesAreTakenOverWithoutLoss() throws Exception {
+        Replica a = new Replica("replica-0"), b = new Replica("replica-1");
+        a.start();
+        b.start();
+        awaitView(a, b);
+        List<String> devicesOfA = IntStream.range(0, DEVICES).mapToObj(d -> "esp32-" + d)
+                .filter(a.partitioner::owns).toList();
+        assertThat(devicesOfA).isNotEmpty();
+
+        MqttClient publisher = connect("publisher");
+        publishAll(publisher, 0, PER_DEVICE / 2);
+        await(() -> a.writes() + b.writes() == DEVICES * PER_DEVICE / 2);
+
+        a.kill();
+        // publié avant que b ne voie le testament : gardé par b puis rejoué à la reprise
+        publishAll(publisher, PER_DEVICE / 2, PER_DEVICE);
+        await(() -> IntStream.range(0, DEVICES).allMatch(d -> persisted(a, b, "esp32-" + d).containsAll(sequences(0, PER_DEVICE))));
+
+        assertThat(devicesOfA).allMatch(b.partitioner::owns);
+        for (int d = 0; d < DEVICES; d++) {
+            String device = "esp32-" + d;
+            assertThat(persisted(a, b, device)).as(device).containsAll(sequences(0, PER_DEVICE));
+        }
+        // la suite des devices repris arrive dans l'ordre (au moins une fois : la reprise peut
+        // rejouer des mesures que le réplica tué avait déjà persistées)
+        for (String device : devicesOfA) {
+            assertThat(b.written.get(device)).as(device).containsSubsequence(sequences(PER_DEVICE / 2, PER_DEVICE));
+        }
+    }
+}
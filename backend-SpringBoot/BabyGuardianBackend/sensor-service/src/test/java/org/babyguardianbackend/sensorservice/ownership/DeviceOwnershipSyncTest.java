@@ -0,0 +1,170 @@
+package org.babyguardianbackend.sensorservice.ownership;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.babyguardianbackend.sensorservice.dao.DeviceRepository;
+import org.babyguardianbackend.sensorservice.entities.Device;
+import org.babyguardianbackend.sensorservice.service.DeviceOwnershipService;
+import org.babyguardianbackend.sensorservice.service.DeviceRegistry;
+import org.babyguardianbackend.wire.OwnershipEvent;
+import org.babyguardianbackend.wire.WireCodec;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Deux réplicas (registre + sync chacun) derrière la même base et le même topic :
+ * un changement d'ownership commité sur A doit être servi par B.
+ */
+class DeviceOwnershipSyncTest {
+
+    private static final String TOPIC = "iot.device.ownership";
+
+    /** Ligne devices partagée (la "base"), version incrémentée à chaque save comme @Version */
+    private final Device row = device("esp32-1", "alice", 1L);
+    private final DeviceRepository repo = mock(DeviceRepository.class);
+
+    /** Topic compacté simulé : events publiés, dans l'ordre */
+    private final List<ConsumerRecord<String, byte[]>> topic = new CopyOnWriteArrayList<>();
+
+    private static Device device(String id, String owner, long version) {
+        Device d = new Device();
+        d.setDeviceId(id);
+        d.setMacAddress("AA:BB");
+        d.setOwnerUserId(owner);
+        d.setVersion(version);
+        return d;
+    }
+
+    private static Device copy(Device d) {
+        return device(d.getDeviceId(), d.getOwnerUserId(), d.getVersion());
+    }
+
+    private final class Replica {
+        final DeviceRegistry registry = new DeviceRegistry(repo, mock(JdbcTemplate.class), new DeviceIdInterner());
+        final DeviceOwnershipSync sync;
+        final DeviceOwnershipService service = new DeviceOwnershipService(repo, registry);
+
+        @SuppressWarnings("unchecked")
+        Replica() {
+            KafkaTemplate<String, byte[]> kafka = mock(KafkaTemplate.class);
+            when(kafka.send(anyString(), anyString(), any(byte[].class))).thenAnswer(inv -> {
+                topic.add(new ConsumerRecord<>(TOPIC, 0, topic.size(), inv.getArgument(1), inv.getArgument(2)));
+                return CompletableFuture.completedFuture(null);
+            });
+            sync = new DeviceOwnershipSync(registry, kafka, () -> null);
+            ReflectionTestUtils.setField(sync, "enabled", true);
+            ReflectionTestUtils.setField(sync, "ownershipTopic", TOPIC);
+            registry.put(copy(row)); // état chargé au démarrage
+            ReflectionTestUtils.setField(registry, "loaded", true); // lectures d'ownership en mémoire
+        }
+
+        /** relit le topic depuis le début, comme le reader */
+        void replay() {
+            topic.forEach(sync::onOwnership);
+        }
+    }
+
+    private void stubRepository() {
+        when(repo.findByDeviceId("esp32-1")).thenAnswer(inv -> Optional.of(copy(row)));
+        when(repo.save(any(Device.class))).thenAnswer(inv -> {
+            Device d = inv.getArgument(0);
+            row.setOwnerUserId(d.getOwnerUserId());
+            row.setVersion(row.getVersion() + 1);
+            return copy(row);
+        });
+    }
+
+    @Test
+    void unbindAndBindOnOneReplicaAreServedByTheOther() {
+        stubRepository();
+        Replica a = new Replica();
+        Replica b = new Replica();
+
+        a.service.unbindDeviceFromUser("esp32-1", "alice");
+        a.replay();
+        b.replay();
+
+        // B ne sert plus SSE/statuts à l'ancien propriétaire
+        assertThat(b.registry.findOwner("esp32-1")).isEmpty();
+        assertThat(b.registry.findDeviceIdsByOwner("alice")).isEmpty();
+        assertThat(b.service.isOwner("alice", "esp32-1")).isFalse();
+
+        b.service.bindDeviceToUser("esp32-1", "bob");
+        a.replay();
+        b.replay();
+
+        // un bind fait sur B n'est plus refusé (403) sur A
+        assertThat(a.service.isOwner("bob", "esp32-1")).isTrue();
+        assertThat(a.registry.findDeviceIdsByOwner("bob")).containsExactly("esp32-1");
+        assertThat(b.registry.findOwner("esp32-1")).contains("bob");
+    }
+
+    @Test
+    void olderEventDoesNotOverwriteNewerState() {
+        Replica b = new Replica();
+        b.registry.put(device("esp32-1", "bob", 5L));
+
+        b.sync.onOwnership(new ConsumerRecord<>(TOPIC, 0, 0, "esp32-1",
+                WireCodec.encode(new OwnershipEvent("esp32-1", "alice", 4L))));
+
+        assertThat(b.registry.findOwner("esp32-1")).contains("bob");
+        assertThat(b.registry.findDeviceIdsByOwner("alice")).isEmpty();
+    }
+
+    @Test
+    void deviceUnknownLocallyIsReadFromTheDatabase() {
+        Device other = device("esp32-2", "carol", 3L);
+        when(repo.findByDeviceId("esp32-2")).thenReturn(Optional.of(other));
+        Replica b = new Replica();
+
+        b.sync.onOwnership(new ConsumerRecord<>(TOPIC, 0, 0, "esp32-2",
+                WireCodec.encode(new OwnershipEvent("esp32-2", "carol", 3L))));
+
+        assertThat(b.registry.findDeviceIdsByOwner("carol")).containsExactly("esp32-2");
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "deprecation"})
+    void readerReplaysTheCompactedTopicFromTheBeginning() throws InterruptedException {
+        MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        TopicPartition p0 = new TopicPartition(TOPIC, 0);
+        consumer.updatePartitions(TOPIC, List.of(new PartitionInfo(TOPIC, 0, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(p0, 0L));
+        consumer.schedulePollTask(() -> consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, 0, "esp32-1",
+                WireCodec.encode(new OwnershipEvent("esp32-1", null, 2L)))));
+
+        DeviceRegistry registry = new DeviceRegistry(repo, mock(JdbcTemplate.class), new DeviceIdInterner());
+        registry.put(copy(row));
+        DeviceOwnershipSync sync = new DeviceOwnershipSync(registry, mock(KafkaTemplate.class), () -> consumer);
+        ReflectionTestUtils.setField(sync, "enabled", true);
+        ReflectionTestUtils.setField(sync, "ownershipTopic", TOPIC);
+
+        sync.start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (registry.findOwner("esp32-1").isPresent() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+            assertThat(registry.findOwner("esp32-1")).isEmpty();
+            assertThat(consumer.subscription()).isEmpty(); // assign manuel : pas de consumer group
+        } finally {
+            sync.stop();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.babyguardianbackend.sensorservice.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReadingPartitionMaintenanceTest {
+
+    private static final String ENSURE = "select sensor_readings_ensure_partition(?)";
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final ReadingPartitionMaintenance maintenance = new ReadingPartitionMaintenance(jdbc);
+
+    @Test
+    void failingDayDoesNotSkipTheFollowingDays() {
+        ReflectionTestUtils.setField(maintenance, "aheadDays", 3);
+        Date tomorrow = Date.valueOf(LocalDate.now().plusDays(1));
+        when(jdbc.queryForList(ENSURE, tomorrow)).thenThrow(new DataIntegrityViolationException("default partition"));
+
+        maintenance.maintain();
+
+        for (int i = 0; i <= 3; i++) {
+            verify(jdbc).queryForList(ENSURE, Date.valueOf(LocalDate.now().plusDays(i)));
+        }
+    }
+
+    @Test
+    void firstPassRunsBeforeMqttIngestion() {
+        maintenance.start();
+
+        assertThat(maintenance.isRunning()).isTrue();
+        assertThat(maintenance.getPhase()).isLessThan(0); // ingestion : 0, adaptateur MQTT : Integer.MAX_VALUE / 2
+        verify(jdbc).queryForList(ENSURE, Date.valueOf(LocalDate.now()));
+        verify(jdbc, never()).execute(anyString()); // pas de rétention par défaut
+    }
+}
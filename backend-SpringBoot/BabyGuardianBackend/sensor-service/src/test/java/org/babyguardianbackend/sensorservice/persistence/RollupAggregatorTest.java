@@ -0,0 +1,238 @@
+package org.babyguardianbackend.sensorservice.persistence;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.api.Assumptions.assumeThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RollupAggregatorTest {
+
+    // 2026-03-01 10:59:50 locale : les mesures suivantes chevauchent une minute et une heure
+    private static final long T0 = LocalDateTime.of(2026, 3, 1, 10, 59, 50)
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final RollupAggregator aggregator = new RollupAggregator(jdbc, meters);
+
+    /** Lignes liées par table, telles que passées au PreparedStatement (index 1..23) */
+    private final Map<String, List<Object[]>> written = Map.of("1m", new ArrayList<>(), "1h", new ArrayList<>());
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(aggregator, "enabled", true);
+        when(jdbc.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(inv -> {
+                    if (failuresLeft.getAndDecrement() > 0) throw new TransientDataAccessResourceException("base indisponible");
+                    String sql = inv.getArgument(0);
+                    List<Object[]> rows = written.get(sql.contains("sensor_rollups_1m") ? "1m" : "1h");
+                    ParameterizedPreparedStatementSetter<Object> setter = inv.getArgument(3);
+                    for (Object item : (Collection<Object>) inv.getArgument(1)) {
+                        Object[] row = new Object[24];
+                        PreparedStatement ps = mock(PreparedStatement.class);
+                        doAnswer(a -> row[(int) a.getArgument(0)] = a.getArgument(1)).when(ps).setString(anyInt(), anyString());
+                        doAnswer(a -> row[(int) a.getArgument(0)] = a.getArgument(1)).when(ps).setTimestamp(anyInt(), any());
+                        doAnswer(a -> row[(int) a.getArgument(0)] = a.getArgument(1)).when(ps).setLong(anyInt(), anyLong());
+                        doAnswer(a -> row[(int) a.getArgument(0)] = a.getArgument(1)).when(ps).setDouble(anyInt(), anyDouble());
+                        setter.setValues(ps, item);
+                        rows.add(row);
+                    }
+                    return new int[0][];
+                });
+    }
+
+    private static LocalDateTime at(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private static Object ts(LocalDateTime t) {
+        return Timestamp.valueOf(t);
+    }
+
+    private Object[] row(String table, LocalDateTime bucket) {
+        return written.get(table).stream()
+                .filter(r -> r[2].equals(ts(bucket)))
+                .findFirst().orElseThrow();
+    }
+
+    /* colonnes : 1 device, 2 bucket, 3 n, 4 first_at, 5 last_at, puis par métrique sum, sumsq, min, max, first, last */
+    private static double metric(Object[] row, int metric, int field) {
+        return (double) row[6 + metric * 6 + field];
+    }
+
+    @Test
+    void mergeMathAccumulatesCountSumSquaresExtremesAndFirstLast() {
+        // reçues dans le désordre : first/last suivent measured_at, pas l'ordre d'arrivée
+        aggregator.record("esp32-1", T0 + 2_000, 150, 95, 37.0);
+        aggregator.record("esp32-1", T0, 140, 97, 36.8);
+        aggregator.record("esp32-1", T0 + 4_000, 130, 99, 36.6);
+        aggregator.flush();
+
+        Object[] r = row("1m", at(T0).truncatedTo(ChronoUnit.MINUTES));
+        assertThat(r[1]).isEqualTo("esp32-1");
+        assertThat(r[3]).isEqualTo(3L);
+        assertThat(r[4]).isEqualTo(ts(at(T0)));
+        assertThat(r[5]).isEqualTo(ts(at(T0 + 4_000)));
+
+        // hr
+        assertThat(metric(r, 0, 0)).isEqualTo(420);
+        assertThat(metric(r, 0, 1)).isEqualTo(140 * 140 + 150 * 150 + 130 * 130);
+        assertThat(metric(r, 0, 2)).isEqualTo(130);
+        assertThat(metric(r, 0, 3)).isEqualTo(150);
+        assertThat(metric(r, 0, 4)).isEqualTo(140);
+        assertThat(metric(r, 0, 5)).isEqualTo(130);
+        // spo2
+        assertThat(metric(r, 1, 2)).isEqualTo(95);
+        assertThat(metric(r, 1, 3)).isEqualTo(99);
+        // temp
+        assertThat(metric(r, 2, 0)).isCloseTo(110.4, within(1e-9));
+        assertThat(metric(r, 2, 1)).isCloseTo(36.8 * 36.8 + 37.0 * 37.0 + 36.6 * 36.6, within(1e-9));
+        assertThat(metric(r, 2, 4)).isEqualTo(36.8);
+        assertThat(metric(r, 2, 5)).isEqualTo(36.6);
+    }
+
+    @Test
+    void readingsAreBucketedByMinuteAndByHourOfMeasuredAt() {
+        aggregator.record("esp32-1", T0, 140, 97, 36.8);            // 10:59:50
+        aggregator.record("esp32-1", T0 + 5_000, 141, 97, 36.8);    // 10:59:55
+        aggregator.record("esp32-1", T0 + 15_000, 142, 97, 36.8);   // 11:00:05
+        aggregator.record("esp32-2", T0, 150, 97, 36.8);
+        aggregator.flush();
+
+        LocalDateTime m1059 = LocalDateTime.of(2026, 3, 1, 10, 59);
+        LocalDateTime m1100 = LocalDateTime.of(2026, 3, 1, 11, 0);
+        assertThat(written.get("1m")).hasSize(3);
+        assertThat(written.get("1h")).hasSize(3);
+        assertThat(written.get("1m").stream().filter(r -> "esp32-1".equals(r[1])).map(r -> r[2]))
+                .containsExactlyInAnyOrder(ts(m1059), ts(m1100));
+        assertThat(written.get("1h").stream().filter(r -> "esp32-1".equals(r[1])).map(r -> r[2]))
+                .containsExactlyInAnyOrder(ts(LocalDateTime.of(2026, 3, 1, 10, 0)), ts(m1100));
+        assertThat(written.get("1m").stream().filter(r -> "esp32-1".equals(r[1]) && r[2].equals(ts(m1059))).findFirst().orElseThrow()[3])
+                .isEqualTo(2L);
+    }
+
+    @Test
+    void failedFlushKeepsDeltasAndMergesThemWithLaterReadings() {
+        aggregator.record("esp32-1", T0, 140, 97, 36.8);
+        aggregator.record("esp32-1", T0 + 2_000, 160, 95, 37.2);
+        failuresLeft.set(1); // le 1m échoue, le 1h passe
+        aggregator.flush();
+        assertThat(written.get("1m")).isEmpty();
+        assertThat(meters.counter("sensor.rollups.rows", "result", "retried").count()).isEqualTo(1);
+
+        aggregator.record("esp32-1", T0 + 4_000, 120, 99, 36.4);
+        aggregator.flush();
+
+        Object[] r = row("1m", at(T0).truncatedTo(ChronoUnit.MINUTES));
+        assertThat(r[3]).isEqualTo(3L);
+        assertThat(r[4]).isEqualTo(ts(at(T0)));
+        assertThat(r[5]).isEqualTo(ts(at(T0 + 4_000)));
+        assertThat(metric(r, 0, 0)).isEqualTo(420);
+        assertThat(metric(r, 0, 1)).isEqualTo(140 * 140 + 160 * 160 + 120 * 120);
+        assertThat(metric(r, 0, 2)).isEqualTo(120);
+        assertThat(metric(r, 0, 3)).isEqualTo(160);
+        assertThat(metric(r, 0, 4)).isEqualTo(140);
+        assertThat(metric(r, 0, 5)).isEqualTo(120);
+    }
+
+    @Test
+    void upsertSqlBindsOneParameterPerColumnAndMergesEveryColumn() {
+        String sql = RollupAggregator.upsertSql("sensor_rollups_1m");
+
+        assertThat(sql.chars().filter(c -> c == '?').count()).isEqualTo(23);
+        assertThat(sql).contains("on conflict (device_id, bucket_start) do update set ");
+        for (String m : new String[]{"hr", "spo2", "temp"}) {
+            assertThat(sql)
+                    .contains(m + "_sum = t." + m + "_sum + excluded." + m + "_sum")
+                    .contains(m + "_sumsq = t." + m + "_sumsq + excluded." + m + "_sumsq")
+                    .contains(m + "_min = least(")
+                    .contains(m + "_max = greatest(")
+                    .contains(m + "_first = case when excluded.first_at < t.first_at")
+                    .contains(m + "_last = case when excluded.last_at >= t.last_at");
+        }
+    }
+
+    /**
+     * Upsert réel sur PostgreSQL (schéma V3 créé dans un schéma jetable) :
+     *   mvn test -Dtest=RollupAggregatorTest -Drollups.it.url=jdbc:postgresql://localhost:5432/postgres?user=postgres
+     */
+    @Test
+    void upsertMergesSuccessiveDeltasInPostgres() throws Exception {
+        String url = System.getProperty("rollups.it.url");
+        assumeThat(url).as("rollups.it.url non fourni").isNotNull();
+
+        SingleConnectionDataSource ds = new SingleConnectionDataSource(url, true);
+        JdbcTemplate pg = new JdbcTemplate(ds);
+        String schema = "rollups_it_" + System.nanoTime();
+        try {
+            pg.execute("create schema " + schema);
+            pg.execute("set search_path to " + schema);
+            ScriptUtils.executeSqlScript(ds.getConnection(), new ClassPathResource("db/migration/V3__sensor_rollups.sql"));
+
+            RollupAggregator real = new RollupAggregator(pg, meters);
+            ReflectionTestUtils.setField(real, "enabled", true);
+
+            // deux flush sur le même bucket, le second contient une mesure antérieure (first) et une postérieure (last)
+            real.record("esp32-1", T0 + 2_000, 150, 95, 37.0);
+            real.flush();
+            real.record("esp32-1", T0, 140, 97, 36.8);
+            real.record("esp32-1", T0 + 4_000, 130, 99, 36.6);
+            real.flush();
+
+            Map<String, Object> r = pg.queryForMap(
+                    "select * from sensor_rollups_1m where device_id = ? and bucket_start = ?",
+                    "esp32-1", ts(at(T0).truncatedTo(ChronoUnit.MINUTES)));
+            assertThat(r.get("n")).isEqualTo(3L);
+            assertThat(r.get("first_at")).isEqualTo(ts(at(T0)));
+            assertThat(r.get("last_at")).isEqualTo(ts(at(T0 + 4_000)));
+            assertThat(r.get("hr_sum")).isEqualTo(420.0);
+            assertThat(r.get("hr_sumsq")).isEqualTo(140.0 * 140 + 150 * 150 + 130 * 130);
+            assertThat(r.get("hr_min")).isEqualTo(130.0);
+            assertThat(r.get("hr_max")).isEqualTo(150.0);
+            assertThat(r.get("hr_first")).isEqualTo(140.0);
+            assertThat(r.get("hr_last")).isEqualTo(130.0);
+            assertThat(r.get("spo2_min")).isEqualTo(95.0);
+            assertThat(r.get("spo2_max")).isEqualTo(99.0);
+            assertThat(r.get("temp_first")).isEqualTo(36.8);
+            assertThat(r.get("temp_last")).isEqualTo(36.6);
+
+            assertThat(pg.queryForObject("select n from sensor_rollups_1h", Long.class)).isEqualTo(3L);
+        } finally {
+            pg.execute("drop schema if exists " + schema + " cascade");
+            ds.destroy();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.babyguardianbackend.sensorservice.persistence;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.babyguardianbackend.sensorservice.dao.SensorReadingRepository;
+import org.babyguardianbackend.sensorservice.entities.Device;
+import org.babyguardianbackend.sensorservice.entities.SensorReading;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SensorReadingWriterTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private SensorReadingWriter writer;
+
+    /** device_id des lignes effectivement passées au setter ligne par ligne */
+    private final List<String> rowInserts = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        WriteBehindProperties p = new WriteBehindProperties();
+        p.setEnabled(true);
+        p.setBatchSize(10);
+        p.setFlushIntervalMs(60_000); // flush uniquement au stop()
+        writer = new SensorReadingWriter(p, mock(SensorReadingRepository.class), jdbc, meters);
+        writer.start();
+    }
+
+    private static SensorReading reading(String deviceId) {
+        Device d = new Device();
+        d.setDeviceId(deviceId);
+        SensorReading r = new SensorReading();
+        r.setDevice(d);
+        r.setHeartRate(140);
+        r.setSpo2(97);
+        r.setTemp(36.8);
+        r.setFinger(true);
+        r.setMeasuredAt(LocalDateTime.now());
+        return r;
+    }
+
+    private double rows(String result) {
+        return meters.counter("sensor.readings.writebehind.rows", "result", result).count();
+    }
+
+    /** jdbc.update(sql, setter) : rejoue le setter et échoue pour le device "bad" */
+    private void rowInsertRejects(String badDevice) throws Exception {
+        when(jdbc.update(anyString(), any(PreparedStatementSetter.class))).thenAnswer(inv -> {
+            PreparedStatement ps = mock(PreparedStatement.class);
+            List<String> devices = new CopyOnWriteArrayList<>();
+            doAnswer(a -> devices.add(a.getArgument(1))).when(ps).setString(eq(2), anyString());
+            inv.<PreparedStatementSetter>getArgument(1).setValues(ps);
+            String device = devices.get(0);
+            if (badDevice.equals(device)) throw new DataIntegrityViolationException("device inconnu");
+            rowInserts.add(device);
+            return 1;
+        });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchFailingTwiceFallsBackToRowByRowAndDropsOnlyTheBadRow() throws Exception {
+        when(jdbc.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new DataIntegrityViolationException("batch rejeté"));
+        rowInsertRejects("esp32-bad");
+
+        writer.write(reading("esp32-1"));
+        writer.write(reading("esp32-bad"));
+        writer.write(reading("esp32-2"));
+        writer.stop();
+
+        verify(jdbc, times(2)).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        assertThat(rowInserts).containsExactly("esp32-1", "esp32-2");
+        assertThat(rows("ok")).isEqualTo(2);
+        assertThat(rows("failed")).isEqualTo(1);
+        assertThat(meters.counter("sensor.readings.writebehind.batch.retries").count()).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void transientBatchFailureIsRetriedOnceWithoutRowByRow() {
+        when(jdbc.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new TransientDataAccessResourceException("connexion perdue"))
+                .thenReturn(new int[][]{{1, 1, 1}});
+
+        writer.write(reading("esp32-1"));
+        writer.write(reading("esp32-2"));
+        writer.write(reading("esp32-3"));
+        writer.stop();
+
+        verify(jdbc, times(2)).batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+        verify(jdbc, never()).update(anyString(), any(PreparedStatementSetter.class));
+        assertThat(rows("ok")).isEqualTo(3);
+        assertThat(rows("failed")).isZero();
+    }
+
+    @Test
+    void writeAssignsIdAndCreatedAtBeforeFlush() {
+        SensorReading r = writer.write(reading("esp32-1"));
+
+        assertThat(r.getId()).isNotNull();
+        assertThat(r.getCreatedAt()).isNotNull();
+        writer.stop();
+    }
+}
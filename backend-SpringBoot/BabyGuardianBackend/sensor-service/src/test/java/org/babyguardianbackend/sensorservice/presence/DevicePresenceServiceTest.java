@@ -0,0 +1,114 @@
+package org.babyguardianbackend.sensorservice.presence;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.babyguardianbackend.wire.PresenceEvent;
+import org.babyguardianbackend.wire.WireCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class DevicePresenceServiceTest {
+
+    private static final String TOPIC = "iot.device.presence";
+    private static final TopicPartition P0 = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition P1 = new TopicPartition(TOPIC, 1);
+
+    @SuppressWarnings("deprecation")
+    private final MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    private DevicePresenceService service;
+
+    @SuppressWarnings("unchecked")
+    private DevicePresenceService service(long timeoutMs) {
+        consumer.updatePartitions(TOPIC, List.of(
+                new PartitionInfo(TOPIC, 0, null, null, null),
+                new PartitionInfo(TOPIC, 1, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(P0, 0L, P1, 0L));
+
+        service = new DevicePresenceService(mock(KafkaTemplate.class), () -> consumer, new ObjectMapper());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "presenceTopic", TOPIC);
+        ReflectionTestUtils.setField(service, "bootstrapTimeoutMs", timeoutMs);
+        return service;
+    }
+
+    private static ConsumerRecord<String, byte[]> record(TopicPartition tp, long offset, String deviceId, boolean connected) {
+        return new ConsumerRecord<>(tp.topic(), tp.partition(), offset, deviceId,
+                WireCodec.encode(new PresenceEvent(deviceId, connected, "online", offset + 1)));
+    }
+
+    @AfterEach
+    void stop() {
+        if (service != null) service.stop();
+    }
+
+    @Test
+    void startReturnsOnceEndOffsetsAreReached() {
+        DevicePresenceService s = service(5000);
+        consumer.updateEndOffsets(Map.of(P0, 2L, P1, 1L));
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(record(P0, 0, "esp32-a", true));
+            consumer.addRecord(record(P1, 0, "esp32-b", true));
+        });
+        consumer.schedulePollTask(() -> consumer.addRecord(record(P0, 1, "esp32-a", false)));
+
+        s.start();
+
+        assertThat(s.isReady()).isTrue();
+        assertThat(s.getAllStatuses()).containsOnly(Map.entry("esp32-a", false), Map.entry("esp32-b", true));
+        assertThat(consumer.assignment()).containsExactlyInAnyOrder(P0, P1);
+        assertThat(consumer.subscription()).isEmpty(); // assign manuel : pas de consumer group
+    }
+
+    @Test
+    void notReadyUntilCaughtUpWhenBootstrapTimesOut() throws InterruptedException {
+        DevicePresenceService s = service(200);
+        consumer.updateEndOffsets(Map.of(P0, 1L, P1, 0L));
+
+        s.start(); // rien à lire avant le timeout
+
+        assertThat(s.isReady()).isFalse();
+        assertThat(new PresenceHealthIndicator(s).health().getStatus().getCode()).isEqualTo("OUT_OF_SERVICE");
+
+        consumer.schedulePollTask(() -> consumer.addRecord(record(P0, 0, "esp32-a", true)));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!s.isReady() && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertThat(s.isReady()).isTrue();
+        assertThat(s.isConnected("esp32-a")).isTrue();
+        assertThat(new PresenceHealthIndicator(s).health().getStatus().getCode()).isEqualTo("UP");
+    }
+
+    @Test
+    void emptyTopicIsReadyImmediately() {
+        DevicePresenceService s = service(5000);
+        consumer.updateEndOffsets(Map.of(P0, 0L, P1, 0L));
+
+        s.start();
+
+        assertThat(s.isReady()).isTrue();
+        assertThat(s.getAllStatuses()).isEmpty();
+    }
+
+    @Test
+    void readerConfigHasNoGroupAndNoCommit() {
+        Map<String, Object> cfg = DevicePresenceService.readerConfig(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092",
+                ConsumerConfig.GROUP_ID_CONFIG, "sensor-service-group"));
+
+        assertThat(cfg).doesNotContainKey(ConsumerConfig.GROUP_ID_CONFIG)
+                .containsEntry(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false)
+                .containsEntry(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+    }
+}
@@ -0,0 +1,86 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import org.babyguardianbackend.sensorservice.dao.DeviceRepository;
+import org.babyguardianbackend.sensorservice.entities.Device;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class DeviceRegistryTest {
+
+    private final DeviceIdInterner interner = new DeviceIdInterner();
+    private final DeviceRegistry registry = new DeviceRegistry(mock(DeviceRepository.class), mock(JdbcTemplate.class), interner);
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static Device device(String id, String owner) {
+        Device d = new Device();
+        d.setDeviceId(id);
+        d.setOwnerUserId(owner);
+        return d;
+    }
+
+    @Test
+    void putMovesDeviceBetweenOwners() {
+        registry.put(device("esp32-1", "alice"));
+        registry.put(device("esp32-1", "bob"));
+
+        assertThat(registry.findOwner("esp32-1")).contains("bob");
+        assertThat(registry.findDeviceIdsByOwner("alice")).isEmpty();
+        assertThat(registry.findDeviceIdsByOwner("bob")).containsExactly("esp32-1");
+    }
+
+    @Test
+    void putAfterCommitIsAppliedOnlyOnCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        registry.putAfterCommit(device("esp32-1", "alice"));
+
+        assertThat(registry.findOwner("esp32-1")).isEmpty();
+
+        TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+        assertThat(registry.findOwner("esp32-1")).contains("alice");
+    }
+
+    @Test
+    void putAfterCommitIsDroppedOnRollback() {
+        registry.put(device("esp32-1", "alice"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        registry.putAfterCommit(device("esp32-1", "bob"));
+        TransactionSynchronizationUtils.invokeAfterCompletion(
+                TransactionSynchronizationManager.getSynchronizations(),
+                TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(registry.findOwner("esp32-1")).contains("alice");
+        assertThat(registry.findDeviceIdsByOwner("bob")).isEmpty();
+    }
+
+    @Test
+    void putAfterCommitWithoutTransactionIsImmediate() {
+        registry.putAfterCommit(device("esp32-1", "alice"));
+        assertThat(registry.findDeviceIdsByOwner("alice")).containsExactly("esp32-1");
+    }
+
+    @Test
+    void lookupsUseTheInternedIdWithoutRegisteringUnknownIds() {
+        registry.put(device("ESP32-1", "alice"));
+
+        assertThat(registry.find(" esp32-1 ")).isPresent();
+        assertThat(registry.findDeviceIdsByOwner("alice")).containsExactly("esp32-1");
+
+        assertThat(registry.find("esp32-2")).isEmpty();
+        assertThat(interner.size()).isEqualTo(1);
+    }
+}
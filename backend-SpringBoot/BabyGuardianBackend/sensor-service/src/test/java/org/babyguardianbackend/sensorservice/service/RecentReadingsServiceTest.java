@@ -0,0 +1,89 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import org.babyguardianbackend.sensorservice.dao.SensorReadingRepository;
+import org.babyguardianbackend.sensorservice.service.RecentReadingsStore.RecentReading;
+import org.babyguardianbackend.wire.device.DeviceIdInterner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class RecentReadingsServiceTest {
+
+    private final DeviceIdInterner interner = new DeviceIdInterner();
+    private final RecentReadingsStore store = new RecentReadingsStore(interner);
+    private final SensorReadingRepository repo = mock(SensorReadingRepository.class);
+    private final RecentReadingsService service = new RecentReadingsService(store, repo);
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void limits() {
+        ReflectionTestUtils.setField(store, "capacity", 100);
+        ReflectionTestUtils.setField(service, "maxWindowMinutes", 60L);
+        ReflectionTestUtils.setField(service, "maxResults", 3);
+    }
+
+    private static long millis(LocalDateTime t) {
+        return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Test
+    void rejectsWindowWiderThanLimit() {
+        assertThatThrownBy(() -> service.range("esp32-1", now.minusDays(365), now))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.range("esp32-1", now, now.minusMinutes(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void memoryRangeIsLimitedToMaxResults() {
+        int device = interner.id("esp32-1");
+        for (int i = 0; i < 5; i++) {
+            long t = millis(now.minusMinutes(10).plusSeconds(i));
+            store.record(device, t, t, 120, 98, 37.0, true);
+        }
+
+        List<RecentReading> out = service.range("esp32-1", now.minusMinutes(10), now);
+
+        assertThat(out).hasSize(3);
+        assertThat(out.get(0).createdAt()).isBefore(out.get(2).createdAt());
+    }
+
+    @Test
+    void databaseQueryIsLimited() {
+        when(repo.findByDevice_DeviceIdAndCreatedAtBetweenOrderByCreatedAtAsc(eq("esp32-2"), any(), any(), any()))
+                .thenReturn(List.of());
+
+        service.range("esp32-2", now.minusMinutes(30), now);
+
+        verify(repo).findByDevice_DeviceIdAndCreatedAtBetweenOrderByCreatedAtAsc(
+                "esp32-2", now.minusMinutes(30), now, Limit.of(3));
+    }
+
+    @Test
+    void spo2IsReadBackUnsigned() {
+        int device = interner.id("esp32-1");
+        long t = millis(now);
+        store.record(device, t, t, 250, 200, 37.0, null);
+
+        RecentReading r = store.latest("esp32-1").orElseThrow();
+
+        assertThat(r.spo2()).isEqualTo(200);
+        assertThat(r.heartRate()).isEqualTo(250);
+    }
+}
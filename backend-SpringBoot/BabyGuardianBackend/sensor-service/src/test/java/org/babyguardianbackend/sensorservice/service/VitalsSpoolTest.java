@@ -0,0 +1,97 @@
+package org.babyguardianbackend.sensorservice.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VitalsSpoolTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<String> sent = new ArrayList<>();
+
+    private void send(String key, byte[] value) {
+        sent.add(key + "=" + new String(value));
+    }
+
+    @Test
+    void replaysRecordsInOrderThenDeletesFiles() throws IOException {
+        VitalsSpool spool = new VitalsSpool(dir, 1 << 20);
+        spool.append("dev-1", "a".getBytes());
+        spool.append("dev-2", "bb".getBytes());
+        spool.append(null, "c".getBytes());
+
+        VitalsSpool.ReplayResult r = spool.replay(this::send);
+
+        assertThat(sent).containsExactly("dev-1=a", "dev-2=bb", "null=c");
+        assertThat(r.records()).isEqualTo(3);
+        assertThat(r.tornBytes()).isZero();
+        assertThat(spool.size()).isZero();
+        assertThat(files()).isEmpty();
+    }
+
+    @Test
+    void truncatedTailIsSkippedAndFileIsNotReplayedTwice() throws IOException {
+        VitalsSpool spool = new VitalsSpool(dir, 1 << 20);
+        spool.append("dev-1", "first".getBytes());
+        spool.append("dev-1", "second".getBytes());
+        spool.close();
+
+        // arrêt brutal au milieu du dernier enregistrement
+        Path f = files().get(0);
+        long full = Files.size(f);
+        try (FileChannel ch = FileChannel.open(f, StandardOpenOption.WRITE)) {
+            ch.truncate(full - 3);
+        }
+
+        // redémarrage : le spool relit le répertoire
+        VitalsSpool restarted = new VitalsSpool(dir, 1 << 20);
+        VitalsSpool.ReplayResult r = restarted.replay(this::send);
+
+        assertThat(sent).containsExactly("dev-1=first");
+        assertThat(r.tornBytes()).isPositive();
+        assertThat(files()).isEmpty();
+
+        restarted.replay(this::send);
+        assertThat(sent).hasSize(1);
+    }
+
+    @Test
+    void corruptedLengthStopsBeforeSending() throws IOException {
+        Path f = dir.resolve("1-1.spool");
+        // clé de 5 octets puis longueur de valeur absurde
+        byte[] bytes = {0, 5, 'd', 'e', 'v', '-', '1', 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 'x'};
+        Files.write(f, bytes);
+
+        VitalsSpool spool = new VitalsSpool(dir, 1 << 20);
+        VitalsSpool.ReplayResult r = spool.replay(this::send);
+
+        assertThat(sent).isEmpty();
+        assertThat(r.tornBytes()).isEqualTo(bytes.length);
+        assertThat(files()).isEmpty();
+    }
+
+    @Test
+    void refusesAppendBeyondMaxBytes() {
+        VitalsSpool spool = new VitalsSpool(dir, 20);
+        assertThat(spool.append("d", new byte[8])).isTrue();  // 2 + 1 + 4 + 8 = 15
+        assertThat(spool.append("d", new byte[8])).isFalse();
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.sorted().toList();
+        }
+    }
+}
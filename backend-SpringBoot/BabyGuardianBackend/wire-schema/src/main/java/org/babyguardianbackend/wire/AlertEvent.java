@@ -1,4 +1,4 @@
-package com.example.alertservice.rules;
+package org.babyguardianbackend.wire;
 
 public record AlertEvent(
         String deviceId,
@@ -9,4 +9,3 @@ public record AlertEvent(
         double threshold,
         long timestamp
 ) {}
-
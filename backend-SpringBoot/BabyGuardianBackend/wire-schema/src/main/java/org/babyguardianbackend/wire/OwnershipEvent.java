@@ -0,0 +1,8 @@
+package org.babyguardianbackend.wire;
+
+// Propriétaire courant d'un device (topic compacté => seul le dernier event par deviceId est conservé)
+public record OwnershipEvent(
+        String deviceId,
+        String ownerUserId, // null => device détaché
+        long version        // @Version de la ligne devices après commit : la plus grande l'emporte entre réplicas
+) {}
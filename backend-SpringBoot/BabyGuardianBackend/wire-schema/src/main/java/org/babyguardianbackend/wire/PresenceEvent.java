@@ -0,0 +1,9 @@
+package org.babyguardianbackend.wire;
+
+// État complet d'un device (topic compacté => seul le dernier event par deviceId est conservé)
+public record PresenceEvent(
+        String deviceId,
+        boolean connected,
+        String mqttStatus, // ONLINE | OFFLINE | unknown
+        long timestamp     // epoch ms, last-writer-wins entre réplicas
+) {}
@@ -0,0 +1,11 @@
+package org.babyguardianbackend.wire;
+
+// Mesure nettoyée publiée sur iot.vitals.cleaned (clé = deviceId)
+public record VitalsEvent(
+        String deviceId,
+        double temperatureC, // transporté en centièmes de degré
+        int spo2,
+        int heartRate,
+        long timestamp,
+        String quality       // OK | CLAMPED | TEST | OUTLIER
+) {}
@@ -0,0 +1,252 @@
+package org.babyguardianbackend.wire;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec binaire à disposition fixe des events Kafka (big-endian).
+ *
+ * En-tête commun (3 octets) : MAGIC, type, version du layout.
+ * - VITALS v1   : timestamp(8) tempCenti(2) spo2(1) heartRate(2) quality(code) deviceId(str8)
+ * - ALERT v1    : timestamp(8) value(8) threshold(8) type(code) severity(code) deviceId(str8) message(str16)
+ * - PRESENCE v1 : timestamp(8) connected(1) mqttStatus(code) deviceId(str8)
+ * - OWNERSHIP v1 : version(8) deviceId(str8) ownerUserId(str8, vide => null)
+ *
+ * Les champs à valeurs connues sont un octet d'index dans une table ; une valeur hors table est écrite
+ * en clair après l'octet RAW. Toute évolution du layout incrémente la version : un décodeur refuse une
+ * version qu'il ne connaît pas plutôt que de mal lire les octets.
+ *
+ * Une valeur qui ne tient pas dans son champ (spo2 hors 0..255, heartRate hors 0..65535, température
+ * hors ±327.67 °C) est refusée à l'encodage (IllegalArgumentException) plutôt que tronquée en silence.
+ *
+ * Un payload JSON commence par '{' (0x7B), jamais par MAGIC : isWire() permet aux consommateurs
+ * de lire encore les anciens messages JSON pendant une migration.
+ */
+public final class WireCodec {
+
+    public static final byte MAGIC = (byte) 0xB6;
+
+    public static final byte TYPE_VITALS = 1;
+    public static final byte TYPE_ALERT = 2;
+    public static final byte TYPE_PRESENCE = 3;
+    public static final byte TYPE_OWNERSHIP = 4;
+
+    public static final byte VITALS_VERSION = 1;
+    public static final byte ALERT_VERSION = 1;
+    public static final byte PRESENCE_VERSION = 1;
+    public static final byte OWNERSHIP_VERSION = 1;
+
+    private static final int HEADER = 3;
+    private static final int RAW = 0xFF;
+
+    // l'ordre fait partie du format : ajouter en fin de table uniquement
+    private static final String[] QUALITIES = {"OK", "CLAMPED", "TEST", "OUTLIER"};
+    private static final String[] ALERT_TYPES = {"HIGH_TEMP", "LOW_SPO2", "HIGH_HR", "LOW_HR"};
+    private static final String[] SEVERITIES = {"LOW", "MEDIUM", "HIGH"};
+    private static final String[] MQTT_STATUSES = {"ONLINE", "OFFLINE", "unknown"};
+
+    private WireCodec() {}
+
+    public static boolean isWire(byte[] data) {
+        return data != null && data.length >= HEADER && data[0] == MAGIC;
+    }
+
+    /** Type du message (TYPE_*), ou 0 si ce n'est pas un payload binaire */
+    public static byte typeOf(byte[] data) {
+        return isWire(data) ? data[1] : 0;
+    }
+
+    /* ================== Vitals ================== */
+
+    public static byte[] encode(VitalsEvent v) {
+        byte[] id = utf8(v.deviceId());
+        ByteBuffer b = ByteBuffer.allocate(HEADER + 8 + 2 + 1 + 2 + codeSize(v.quality(), QUALITIES) + 1 + id.length);
+        header(b, TYPE_VITALS, VITALS_VERSION);
+        b.putLong(v.timestamp());
+        b.putShort(centi(v.temperatureC()));
+        b.put((byte) checkRange("spo2", v.spo2(), 0xFF));
+        b.putShort((short) checkRange("heartRate", v.heartRate(), 0xFFFF));
+        putCode(b, v.quality(), QUALITIES);
+        putStr8(b, id);
+        return b.array();
+    }
+
+    public static VitalsEvent decodeVitals(byte[] data) {
+        ByteBuffer b = open(data, TYPE_VITALS, VITALS_VERSION);
+        try {
+            long ts = b.getLong();
+            double temp = b.getShort() / 100.0;
+            int spo2 = Byte.toUnsignedInt(b.get());
+            int hr = Short.toUnsignedInt(b.getShort());
+            String quality = getCode(b, QUALITIES);
+            return new VitalsEvent(getStr8(b), temp, spo2, hr, ts, quality);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Vitals tronqué (" + data.length + " octets)", e);
+        }
+    }
+
+    /* ================== Alert ================== */
+
+    public static byte[] encode(AlertEvent a) {
+        byte[] id = utf8(a.deviceId());
+        byte[] msg = utf8(a.message());
+        if (msg.length > 0xFFFF) throw new IllegalArgumentException("message trop long: " + msg.length);
+        ByteBuffer b = ByteBuffer.allocate(HEADER + 8 + 8 + 8
+                + codeSize(a.type(), ALERT_TYPES) + codeSize(a.severity(), SEVERITIES)
+                + 1 + id.length + 2 + msg.length);
+        header(b, TYPE_ALERT, ALERT_VERSION);
+        b.putLong(a.timestamp());
+        b.putDouble(a.value());
+        b.putDouble(a.threshold());
+        putCode(b, a.type(), ALERT_TYPES);
+        putCode(b, a.severity(), SEVERITIES);
+        putStr8(b, id);
+        b.putShort((short) msg.length);
+        b.put(msg);
+        return b.array();
+    }
+
+    public static AlertEvent decodeAlert(byte[] data) {
+        ByteBuffer b = open(data, TYPE_ALERT, ALERT_VERSION);
+        try {
+            long ts = b.getLong();
+            double value = b.getDouble();
+            double threshold = b.getDouble();
+            String type = getCode(b, ALERT_TYPES);
+            String severity = getCode(b, SEVERITIES);
+            String deviceId = getStr8(b);
+            String message = getStr(b, Short.toUnsignedInt(b.getShort()));
+            return new AlertEvent(deviceId, type, severity, message, value, threshold, ts);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Alert tronqué (" + data.length + " octets)", e);
+        }
+    }
+
+    /* ================== Presence ================== */
+
+    public static byte[] encode(PresenceEvent p) {
+        byte[] id = utf8(p.deviceId());
+        ByteBuffer b = ByteBuffer.allocate(HEADER + 8 + 1 + codeSize(p.mqttStatus(), MQTT_STATUSES) + 1 + id.length);
+        header(b, TYPE_PRESENCE, PRESENCE_VERSION);
+        b.putLong(p.timestamp());
+        b.put((byte) (p.connected() ? 1 : 0));
+        putCode(b, p.mqttStatus(), MQTT_STATUSES);
+        putStr8(b, id);
+        return b.array();
+    }
+
+    public static PresenceEvent decodePresence(byte[] data) {
+        ByteBuffer b = open(data, TYPE_PRESENCE, PRESENCE_VERSION);
+        try {
+            long ts = b.getLong();
+            boolean connected = b.get() != 0;
+            String status = getCode(b, MQTT_STATUSES);
+            return new PresenceEvent(getStr8(b), connected, status, ts);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Presence tronqué (" + data.length + " octets)", e);
+        }
+    }
+
+    /* ================== Ownership ================== */
+
+    public static byte[] encode(OwnershipEvent o) {
+        byte[] id = utf8(o.deviceId());
+        byte[] owner = utf8(o.ownerUserId());
+        ByteBuffer b = ByteBuffer.allocate(HEADER + 8 + 1 + id.length + 1 + owner.length);
+        header(b, TYPE_OWNERSHIP, OWNERSHIP_VERSION);
+        b.putLong(o.version());
+        putStr8(b, id);
+        putStr8(b, owner);
+        return b.array();
+    }
+
+    public static OwnershipEvent decodeOwnership(byte[] data) {
+        ByteBuffer b = open(data, TYPE_OWNERSHIP, OWNERSHIP_VERSION);
+        try {
+            long version = b.getLong();
+            String deviceId = getStr8(b);
+            String owner = getStr8(b);
+            return new OwnershipEvent(deviceId, owner.isEmpty() ? null : owner, version);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Ownership tronqué (" + data.length + " octets)", e);
+        }
+    }
+
+    /* ================== Primitives ================== */
+
+    private static void header(ByteBuffer b, byte type, byte version) {
+        b.put(MAGIC).put(type).put(version);
+    }
+
+    private static ByteBuffer open(byte[] data, byte type, byte maxVersion) {
+        if (!isWire(data)) throw new IllegalArgumentException("Payload non binaire");
+        if (data[1] != type) throw new IllegalArgumentException("Type " + data[1] + " reçu, " + type + " attendu");
+        if (data[2] < 1 || data[2] > maxVersion) {
+            throw new IllegalArgumentException("Version " + data[2] + " non supportée (max " + maxVersion + ")");
+        }
+        return ByteBuffer.wrap(data, HEADER, data.length - HEADER);
+    }
+
+    private static short centi(double celsius) {
+        long c = Math.round(celsius * 100);
+        if (Double.isNaN(celsius) || c < Short.MIN_VALUE || c > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("temperatureC hors format: " + celsius);
+        }
+        return (short) c;
+    }
+
+    private static int checkRange(String field, int value, int max) {
+        if (value < 0 || value > max) throw new IllegalArgumentException(field + " hors format [0, " + max + "]: " + value);
+        return value;
+    }
+
+    private static int indexOf(String value, String[] table) {
+        for (int i = 0; i < table.length; i++) {
+            if (table[i].equals(value)) return i;
+        }
+        return -1;
+    }
+
+    private static int codeSize(String value, String[] table) {
+        return indexOf(value, table) >= 0 ? 1 : 1 + 1 + utf8(value).length;
+    }
+
+    private static void putCode(ByteBuffer b, String value, String[] table) {
+        int i = indexOf(value, table);
+        if (i >= 0) {
+            b.put((byte) i);
+        } else {
+            b.put((byte) RAW);
+            putStr8(b, utf8(value));
+        }
+    }
+
+    private static String getCode(ByteBuffer b, String[] table) {
+        int i = Byte.toUnsignedInt(b.get());
+        if (i == RAW) return getStr8(b);
+        if (i >= table.length) throw new IllegalArgumentException("Code " + i + " inconnu");
+        return table[i];
+    }
+
+    // chaîne courte : longueur sur 1 octet (null transporté comme chaîne vide)
+    private static void putStr8(ByteBuffer b, byte[] s) {
+        if (s.length > 0xFF) throw new IllegalArgumentException("chaîne trop longue: " + s.length + " octets");
+        b.put((byte) s.length);
+        b.put(s);
+    }
+
+    private static String getStr8(ByteBuffer b) {
+        return getStr(b, Byte.toUnsignedInt(b.get()));
+    }
+
+    private static String getStr(ByteBuffer b, int len) {
+        byte[] s = new byte[len];
+        b.get(s);
+        return new String(s, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,27 @@
+package org.babyguardianbackend.wire;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * value.deserializer Kafka : renvoie le record correspondant au type de l'en-tête
+ * (VitalsEvent, AlertEvent ou PresenceEvent). Un payload non binaire (ancien JSON) est rejeté :
+ * les consommateurs qui doivent encore relire du JSON lisent des byte[] et testent WireCodec.isWire().
+ */
+public class WireDeserializer implements Deserializer<Object> {
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        if (data == null) return null; // tombstone (topic compacté)
+        try {
+            return switch (WireCodec.typeOf(data)) {
+                case WireCodec.TYPE_VITALS -> WireCodec.decodeVitals(data);
+                case WireCodec.TYPE_ALERT -> WireCodec.decodeAlert(data);
+                case WireCodec.TYPE_PRESENCE -> WireCodec.decodePresence(data);
+                default -> throw new SerializationException("Payload non reconnu sur " + topic + " (" + data.length + " octets)");
+            };
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Décodage impossible sur " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.babyguardianbackend.wire;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * value.serializer Kafka pour VitalsEvent, AlertEvent et PresenceEvent (un même template peut
+ * publier les trois types). Un byte[] déjà encodé est transmis tel quel.
+ */
+public class WireSerializer implements Serializer<Object> {
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        if (data == null) return null;
+        if (data instanceof byte[] encoded) return encoded;
+        try {
+            return switch (data) {
+                case VitalsEvent v -> WireCodec.encode(v);
+                case AlertEvent a -> WireCodec.encode(a);
+                case PresenceEvent p -> WireCodec.encode(p);
+                default -> throw new SerializationException("Type non supporté: " + data.getClass().getName());
+            };
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Encodage impossible pour le topic " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.babyguardianbackend.wire.device;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interning des deviceId : chaque identifiant normalisé (trim + minuscules) reçoit une fois pour toutes
+ * un index dense (0, 1, 2...). L'état par device est ensuite rangé dans des DeviceStateTable indexées
+ * par cet int au lieu d'une ConcurrentHashMap<String, ...> par composant.
+ *
+ * - id(raw) : à la frontière (topic MQTT...), enregistre le device si besoin ; la forme brute reçue
+ *   est mémorisée comme alias, le message suivant n'est donc ni re-normalisé ni ré-alloué
+ * - find(raw) : lecture seule (requêtes HTTP), n'enregistre jamais un id inconnu
+ * - name(id) : instance String canonique unique, partagée par tous les composants
+ *
+ * Partagé par sensor-service et alert-service (une instance par service, déclarée en bean).
+ */
+public class DeviceIdInterner {
+
+    public static final int UNKNOWN = -1;
+
+    // forme brute ou normalisée -> index dense
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[1024];
+    private int next; // protégé par this
+
+    public static String normalize(String deviceId) {
+        return deviceId == null ? null : deviceId.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public int id(String raw) {
+        if (raw == null) return UNKNOWN;
+        Integer id = ids.get(raw);
+        return id != null ? id : register(raw);
+    }
+
+    public int find(String raw) {
+        if (raw == null) return UNKNOWN;
+        Integer id = ids.get(raw);
+        if (id == null) id = ids.get(normalize(raw));
+        return id != null ? id : UNKNOWN;
+    }
+
+    public String name(int id) {
+        String[] n = names;
+        return id >= 0 && id < n.length ? n[id] : null;
+    }
+
+    /** Forme canonique (instance partagée) ; enregistre le device si besoin */
+    public String canonical(String raw) {
+        return name(id(raw));
+    }
+
+    public synchronized int size() {
+        return next;
+    }
+
+    private synchronized int register(String raw) {
+        Integer id = ids.get(raw);
+        if (id != null) return id;
+
+        String canon = normalize(raw);
+        if (canon.isEmpty()) return UNKNOWN;
+        id = ids.get(canon);
+        if (id == null) {
+            id = next++;
+            if (id >= names.length) names = Arrays.copyOf(names, names.length * 2);
+            names[id] = canon;
+            ids.put(canon, id);
+        }
+        if (!raw.equals(canon)) ids.put(raw, id);
+        return id;
+    }
+}
@@ -0,0 +1,56 @@
+package org.babyguardianbackend.wire.device;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * État par device indexé par l'id dense de DeviceIdInterner : un tableau au lieu d'une map.
+ * Lectures sans verrou ; création et agrandissement (x2) sous verrou, rares.
+ */
+public final class DeviceStateTable<T> {
+
+    private volatile AtomicReferenceArray<T> slots = new AtomicReferenceArray<>(1024);
+
+    public T get(int id) {
+        AtomicReferenceArray<T> s = slots;
+        return id >= 0 && id < s.length() ? s.get(id) : null;
+    }
+
+    public T computeIfAbsent(int id, IntFunction<T> factory) {
+        T v = get(id);
+        if (v != null || id < 0) return v;
+        synchronized (this) {
+            AtomicReferenceArray<T> s = slots;
+            if (id >= s.length()) {
+                int len = s.length();
+                while (len <= id) len *= 2;
+                AtomicReferenceArray<T> bigger = new AtomicReferenceArray<>(len);
+                for (int i = 0; i < s.length(); i++) bigger.set(i, s.get(i));
+                slots = s = bigger;
+            }
+            v = s.get(id);
+            if (v == null) {
+                v = factory.apply(id);
+                s.set(id, v);
+            }
+            return v;
+        }
+    }
+
+    public synchronized void set(int id, T value) {
+        computeIfAbsent(id, k -> value);
+        slots.set(id, value);
+    }
+
+    public interface Visitor<T> {
+        void visit(int id, T value);
+    }
+
+    public void forEach(Visitor<T> visitor) {
+        AtomicReferenceArray<T> s = slots;
+        for (int i = 0; i < s.length(); i++) {
+            T v = s.get(i);
+            if (v != null) visitor.visit(i, v);
+        }
+    }
+}
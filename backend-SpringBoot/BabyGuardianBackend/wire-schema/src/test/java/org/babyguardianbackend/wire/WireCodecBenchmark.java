@@ -0,0 +1,71 @@
+package org.babyguardianbackend.wire;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WireCodec contre l'ancien encodage JSON (Jackson) pour un VitalsEvent.
+ * Lancement (après mvn test-compile) :
+ *   java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *        org.babyguardianbackend.wire.WireCodecBenchmark [-prof gc]
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireCodecBenchmark {
+
+    private final ObjectMapper om = new ObjectMapper();
+    private VitalsEvent event;
+    private byte[] wire;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws Exception {
+        event = new VitalsEvent("esp32-c00aa81f8a3c", 37.25, 98, 142, 1_700_000_000_123L, "OK");
+        wire = WireCodec.encode(event);
+        json = om.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] encodeWire() {
+        return WireCodec.encode(event);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws Exception {
+        return om.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public VitalsEvent decodeWire() {
+        return WireCodec.decodeVitals(wire);
+    }
+
+    @Benchmark
+    public VitalsEvent decodeJson() throws Exception {
+        return om.readValue(json, VitalsEvent.class);
+    }
+
+    public static void main(String[] args) throws Exception {
+        OptionsBuilder opts = new OptionsBuilder();
+        opts.include(WireCodecBenchmark.class.getSimpleName());
+        if (args.length == 2 && "-prof".equals(args[0])) opts.addProfiler(args[1]);
+        new Runner(opts.build()).run();
+    }
+}
@@ -0,0 +1,119 @@
+package org.babyguardianbackend.wire;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WireCodecTest {
+
+    @Test
+    void vitalsRoundTrip() {
+        VitalsEvent v = new VitalsEvent("esp32-c00aa81f8a3c", 37.25, 98, 142, 1_700_000_000_123L, "OUTLIER");
+
+        byte[] data = WireCodec.encode(v);
+
+        assertThat(WireCodec.isWire(data)).isTrue();
+        assertThat(WireCodec.typeOf(data)).isEqualTo(WireCodec.TYPE_VITALS);
+        assertThat(data).hasSize(36); // 3 + 8 + 2 + 1 + 2 + 1 + (1 + 18)
+        assertThat(WireCodec.decodeVitals(data)).isEqualTo(v);
+    }
+
+    @Test
+    void vitalsBoundaryValues() {
+        VitalsEvent max = new VitalsEvent("d", 327.67, 255, 0xFFFF, Long.MAX_VALUE, "OK");
+        VitalsEvent min = new VitalsEvent("d", -327.68, 0, 0, Long.MIN_VALUE, "OK");
+
+        assertThat(WireCodec.decodeVitals(WireCodec.encode(max))).isEqualTo(max);
+        assertThat(WireCodec.decodeVitals(WireCodec.encode(min))).isEqualTo(min);
+    }
+
+    @Test
+    void vitalsOutOfRangeAreRejectedNotClamped() {
+        assertThatThrownBy(() -> WireCodec.encode(new VitalsEvent("d", 37.0, 256, 120, 0, "OK")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("spo2");
+        assertThatThrownBy(() -> WireCodec.encode(new VitalsEvent("d", 37.0, -1, 120, 0, "OK")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("spo2");
+        assertThatThrownBy(() -> WireCodec.encode(new VitalsEvent("d", 37.0, 98, 0x10000, 0, "OK")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("heartRate");
+        assertThatThrownBy(() -> WireCodec.encode(new VitalsEvent("d", 327.68, 98, 120, 0, "OK")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("temperatureC");
+        assertThatThrownBy(() -> WireCodec.encode(new VitalsEvent("d", Double.NaN, 98, 120, 0, "OK")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("temperatureC");
+    }
+
+    @Test
+    void valueOutsideCodeTableIsWrittenInline() {
+        VitalsEvent v = new VitalsEvent("d", 36.6, 97, 120, 1L, "SMOOTHED");
+
+        assertThat(WireCodec.decodeVitals(WireCodec.encode(v)).quality()).isEqualTo("SMOOTHED");
+    }
+
+    @Test
+    void nullStringsTravelAsEmpty() {
+        VitalsEvent v = new VitalsEvent(null, 36.6, 97, 120, 1L, "OK");
+
+        assertThat(WireCodec.decodeVitals(WireCodec.encode(v)).deviceId()).isEmpty();
+    }
+
+    @Test
+    void alertRoundTripWithLongMessage() {
+        String message = "x".repeat(1000);
+        AlertEvent a = new AlertEvent("esp32-1", "LOW_SPO2", "HIGH", message, 85.0, 90.0, 42L);
+
+        assertThat(WireCodec.decodeAlert(WireCodec.encode(a))).isEqualTo(a);
+    }
+
+    @Test
+    void presenceRoundTrip() {
+        PresenceEvent p = new PresenceEvent("esp32-1", true, "ONLINE", 7L);
+
+        assertThat(WireCodec.decodePresence(WireCodec.encode(p))).isEqualTo(p);
+    }
+
+    @Test
+    void ownershipRoundTripWithAndWithoutOwner() {
+        OwnershipEvent bound = new OwnershipEvent("esp32-1", "0b6f5c1e-user", 4L);
+        OwnershipEvent unbound = new OwnershipEvent("esp32-1", null, 5L);
+
+        assertThat(WireCodec.decodeOwnership(WireCodec.encode(bound))).isEqualTo(bound);
+        assertThat(WireCodec.decodeOwnership(WireCodec.encode(unbound))).isEqualTo(unbound);
+        assertThat(WireCodec.typeOf(WireCodec.encode(bound))).isEqualTo(WireCodec.TYPE_OWNERSHIP);
+    }
+
+    @Test
+    void deviceIdLongerThan255BytesIsRejected() {
+        String id = "é".repeat(128); // 256 octets UTF-8
+
+        assertThatThrownBy(() -> WireCodec.encode(new PresenceEvent(id, true, "ONLINE", 0)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void truncatedPayloadIsRejected() {
+        byte[] data = WireCodec.encode(new VitalsEvent("esp32-1", 36.6, 97, 120, 1L, "OK"));
+
+        assertThatThrownBy(() -> WireCodec.decodeVitals(Arrays.copyOf(data, data.length - 1)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("tronqué");
+    }
+
+    @Test
+    void wrongTypeOrUnknownVersionIsRejected() {
+        byte[] presence = WireCodec.encode(new PresenceEvent("esp32-1", false, "OFFLINE", 0));
+        assertThatThrownBy(() -> WireCodec.decodeVitals(presence)).isInstanceOf(IllegalArgumentException.class);
+
+        byte[] vitals = WireCodec.encode(new VitalsEvent("esp32-1", 36.6, 97, 120, 1L, "OK"));
+        vitals[2] = (byte) (WireCodec.VITALS_VERSION + 1);
+        assertThatThrownBy(() -> WireCodec.decodeVitals(vitals))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Version");
+    }
+
+    @Test
+    void jsonIsNotWire() {
+        assertThat(WireCodec.isWire("{\"deviceId\":\"d\"}".getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(WireCodec.typeOf(null)).isZero();
+    }
+}
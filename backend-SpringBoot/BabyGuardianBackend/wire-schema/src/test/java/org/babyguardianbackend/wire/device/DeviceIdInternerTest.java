@@ -0,0 +1,70 @@
+package org.babyguardianbackend.wire.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeviceIdInternerTest {
+
+    private final DeviceIdInterner interner = new DeviceIdInterner();
+
+    @Test
+    void rawFormsShareOneDenseIdAndCanonicalName() {
+        int id = interner.id("ESP32-AB ");
+
+        assertThat(id).isZero();
+        assertThat(interner.id("esp32-ab")).isEqualTo(id);
+        assertThat(interner.id("Esp32-Ab")).isEqualTo(id);
+        assertThat(interner.id("esp32-cd")).isEqualTo(1);
+        assertThat(interner.name(id)).isEqualTo("esp32-ab");
+        assertThat(interner.canonical("ESP32-AB")).isSameAs(interner.name(id));
+        assertThat(interner.size()).isEqualTo(2);
+    }
+
+    @Test
+    void findNeverRegisters() {
+        assertThat(interner.find("esp32-ab")).isEqualTo(DeviceIdInterner.UNKNOWN);
+        assertThat(interner.size()).isZero();
+
+        interner.id("esp32-ab");
+        assertThat(interner.find(" ESP32-AB")).isZero();
+    }
+
+    @Test
+    void nullAndBlankAreUnknown() {
+        assertThat(interner.id(null)).isEqualTo(DeviceIdInterner.UNKNOWN);
+        assertThat(interner.id("   ")).isEqualTo(DeviceIdInterner.UNKNOWN);
+        assertThat(interner.name(DeviceIdInterner.UNKNOWN)).isNull();
+        assertThat(interner.name(5)).isNull();
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+        for (int i = 0; i < 3000; i++) interner.id("esp32-" + i);
+
+        assertThat(interner.name(2999)).isEqualTo("esp32-2999");
+        assertThat(interner.find("esp32-1500")).isEqualTo(1500);
+    }
+
+    @Test
+    void concurrentRegistrationGivesOneIdPerDevice() throws InterruptedException {
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread th = new Thread(() -> {
+                for (int i = 0; i < 500; i++) seen.add(interner.id("ESP32-" + i));
+            });
+            threads.add(th);
+            th.start();
+        }
+        for (Thread th : threads) th.join();
+
+        assertThat(seen).hasSize(500);
+        assertThat(interner.size()).isEqualTo(500);
+    }
+}
@@ -0,0 +1,90 @@
+package org.babyguardianbackend.wire.device;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Heap retenu par l'indexation de l'état par device, avant/après interning, pour N devices simulés
+ * et les 5 composants avec état par device : DeviceConnectionMonitor.devices,
+ * MqttInboundHandler.realtimeWaiters, DeviceRegistry.devices, VitalWsHandler.subs, AlertEvaluator.lastSent.
+ * - avant : une ConcurrentHashMap<String, ...> par composant, clé = norm() recalculé par chaque composant
+ * - après (layout livré) : un DeviceIdInterner (forme canonique + alias brut du topic) et une DeviceStateTable
+ *   par composant ; DeviceRegistry passe par un Slot par device (moniteur de mise à jour), compté ici
+ * La valeur stockée est la même instance partout : seul le coût de l'index est mesuré.
+ *
+ * Lancement (après mvn test-compile) :
+ *   java -Xmx4g -XX:+UseSerialGC -cp target/test-classes:target/classes \
+ *        org.babyguardianbackend.wire.device.DeviceStateFootprint [devices]
+ */
+public class DeviceStateFootprint {
+
+    private static final int STORES = 5;
+    private static final Object STATE = new Object();
+
+    /** Même forme que DeviceRegistry.Slot (un champ référence) */
+    private static final class Slot {
+        volatile Object device = STATE;
+    }
+
+    public static void main(String[] args) {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        List<String> rawIds = new ArrayList<>(devices);
+        HexFormat hex = HexFormat.of().withUpperCase();
+        for (int i = 0; i < devices; i++) {
+            rawIds.add("esp32-" + hex.toHexDigits((long) i * 0x9E3779B1L & 0xFFFFFFFFFFFFL).substring(4));
+        }
+
+        long before = retained(() -> {
+            List<ConcurrentHashMap<String, Object>> stores = new ArrayList<>();
+            for (int s = 0; s < STORES; s++) {
+                ConcurrentHashMap<String, Object> m = new ConcurrentHashMap<>();
+                for (String raw : rawIds) m.put(raw.trim().toLowerCase(Locale.ROOT), STATE);
+                stores.add(m);
+            }
+            return stores;
+        });
+
+        long after = retained(() -> {
+            DeviceIdInterner interner = new DeviceIdInterner();
+            List<DeviceStateTable<Object>> stores = new ArrayList<>();
+            for (int s = 0; s < STORES; s++) stores.add(new DeviceStateTable<>());
+            for (String raw : rawIds) {
+                int id = interner.id(raw);
+                for (int s = 0; s < STORES - 1; s++) stores.get(s).set(id, STATE);
+                stores.get(STORES - 1).set(id, new Slot());
+            }
+            return List.of(interner, stores);
+        });
+
+        System.out.printf("%,d devices, %d composants%n", devices, STORES);
+        System.out.printf("  ConcurrentHashMap<String, ...> x%d : %,d Mo (%d o/device)%n",
+                STORES, before >> 20, before / devices);
+        System.out.printf("  DeviceIdInterner + DeviceStateTable x%d : %,d Mo (%d o/device)%n",
+                STORES, after >> 20, after / devices);
+    }
+
+    private interface Builder {
+        Object build();
+    }
+
+    /** Heap encore utilisé par la structure construite (GC complet avant/après) */
+    private static long retained(Builder builder) {
+        MemoryMXBean mem = ManagementFactory.getMemoryMXBean();
+        long base = used(mem);
+        Object keep = builder.build();
+        long used = used(mem) - base;
+        if (System.identityHashCode(keep) == 42) System.out.print(""); // garde la structure vivante jusqu'à la mesure
+        return used;
+    }
+
+    private static long used(MemoryMXBean mem) {
+        for (int i = 0; i < 3; i++) System.gc();
+        return mem.getHeapMemoryUsage().getUsed();
+    }
+}
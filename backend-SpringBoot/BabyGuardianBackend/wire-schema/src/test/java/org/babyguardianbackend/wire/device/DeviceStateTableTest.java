@@ -0,0 +1,56 @@
+package org.babyguardianbackend.wire.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeviceStateTableTest {
+
+    private final DeviceStateTable<String> table = new DeviceStateTable<>();
+
+    @Test
+    void computeIfAbsentCreatesOnce() {
+        AtomicInteger created = new AtomicInteger();
+
+        String a = table.computeIfAbsent(3, id -> "state-" + id + "-" + created.incrementAndGet());
+        String b = table.computeIfAbsent(3, id -> "other");
+
+        assertThat(a).isEqualTo("state-3-1").isSameAs(b);
+        assertThat(table.get(3)).isSameAs(a);
+        assertThat(created).hasValue(1);
+    }
+
+    @Test
+    void unknownAndOutOfRangeIdsHaveNoState() {
+        assertThat(table.get(DeviceIdInterner.UNKNOWN)).isNull();
+        assertThat(table.computeIfAbsent(DeviceIdInterner.UNKNOWN, id -> "x")).isNull();
+        assertThat(table.get(1_000_000)).isNull();
+    }
+
+    @Test
+    void growsAndKeepsExistingSlots() {
+        table.set(0, "first");
+        table.set(5000, "far");
+
+        assertThat(table.get(0)).isEqualTo("first");
+        assertThat(table.get(5000)).isEqualTo("far");
+
+        table.set(0, "replaced");
+        assertThat(table.get(0)).isEqualTo("replaced");
+    }
+
+    @Test
+    void forEachVisitsOnlyPresentSlots() {
+        table.set(1, "a");
+        table.set(2048, "b");
+
+        Map<Integer, String> visited = new HashMap<>();
+        table.forEach(visited::put);
+
+        assertThat(visited).containsOnly(Map.entry(1, "a"), Map.entry(2048, "b"));
+    }
+}